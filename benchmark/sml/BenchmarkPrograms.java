@@ -0,0 +1,99 @@
+package sml;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Shared set-up for the benchmarks.</p>
+ * The sample programs in resources/ compute the Fibonacci number of the value pushed by "main".
+ * They are scaled by rewriting that value (for execution) or by repeating their methods (for translation).
+ *
+ * @author Queenie Lee
+ */
+final class BenchmarkPrograms {
+    private static final Pattern MAIN_ARGUMENT = Pattern.compile("(@main:\\s*push\\s+)-?\\d+");
+
+    private BenchmarkPrograms() {
+    }
+
+    /**
+     * Returns the translator configured in beans.xml, as used by RunSml.
+     */
+    static TranslatorFactory translator() {
+        BeanFactory factory = new ClassPathXmlApplicationContext("/beans.xml");
+        return (TranslatorFactory) factory.getBean("translator");
+    }
+
+    static InstructionFactory instructionFactory() {
+        BeanFactory factory = new ClassPathXmlApplicationContext("/beans.xml");
+        return (InstructionFactory) factory.getBean("instruction-factory");
+    }
+
+    /**
+     * Writes a copy of a sample program whose "main" method passes the given value.
+     *
+     * @param program name of the program in resources/
+     * @param argument the value passed by "main"
+     * @return the path of the temporary copy
+     */
+    static Path withArgument(String program, int argument) throws IOException {
+        String source = Files.readString(Path.of("resources", program));
+        Matcher matcher = MAIN_ARGUMENT.matcher(source);
+        if (!matcher.find())
+            throw new IllegalArgumentException("No argument pushed by main in " + program);
+        return write(program, matcher.replaceFirst("$1" + argument));
+    }
+
+    /**
+     * Writes a copy of a sample program in which every method other than "main" is repeated
+     * the given number of times under a new name, giving a larger program to translate.
+     *
+     * @param program name of the program in resources/
+     * @param copies number of copies of each method
+     * @return the path of the temporary copy
+     */
+    static Path replicated(String program, int copies) throws IOException {
+        String source = Files.readString(Path.of("resources", program));
+        int methodsStart = source.indexOf('@', source.indexOf("@main:") + 1);
+        String main = source.substring(0, methodsStart);
+        String methods = source.substring(methodsStart);
+        StringBuilder sb = new StringBuilder(main);
+        for (int i = 0; i < copies; i++) {
+            // renames the methods and the invocations referring to them
+            sb.append(methods.replaceAll("@(\\w+)", "@$1_" + i)).append('\n');
+        }
+        return write(program, sb.toString());
+    }
+
+    private static Path write(String program, String source) throws IOException {
+        Path file = Files.createTempFile(program.replace(".sml", ""), ".sml");
+        file.toFile().deleteOnExit();
+        return Files.writeString(file, source);
+    }
+
+    /**
+     * An output sink discarding all values, so that benchmarks do not measure the console.
+     */
+    static final class DiscardingOutputSink implements OutputSink {
+        private int last;
+
+        @Override
+        public void print(int value) {
+            last = value;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        int last() {
+            return last;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+import sml.instruction.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the cost of executing a single instruction of each kind.</p>
+ * Each instruction is the first one of a method and is labelled, so the frame can be reset to it after each
+ * execution. The operands it pops are pushed before, and the value it pushes is popped after.
+ * The baseline benchmark does the same preparation without executing the instruction.
+ *
+ * @author Queenie Lee
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InstructionBenchmark {
+    private static final Label START = new Label("L0");
+
+    @Param({"push", "load", "store", "add", "sub", "mul", "div", "if_cmpeq", "if_cmpgt", "goto", "print"})
+    public String opcode;
+
+    private Machine machine;
+    private Instruction instruction;
+
+    @Setup
+    public void setUp() {
+        instruction = switch (opcode) {
+            case "push" -> new PushInstruction(START, 1);
+            case "load" -> new LoadInstruction(START, "x");
+            case "store" -> new StoreInstruction(START, "x");
+            case "add" -> new AdditionInstruction(START);
+            case "sub" -> new SubtractionInstruction(START);
+            case "mul" -> new MultiplicationInstruction(START);
+            case "div" -> new DivisionInstruction(START);
+            case "if_cmpeq" -> new CompareEqualInstruction(START, START);
+            case "if_cmpgt" -> new CompareGreaterThanInstruction(START, START);
+            case "goto" -> new GotoInstruction(START, START);
+            case "print" -> new PrintInstruction(START);
+            default -> throw new IllegalArgumentException("Unknown opcode " + opcode);
+        };
+        // x is declared as an argument so that it has a slot whichever instruction is measured
+        Method main = new Method(new Method.Identifier("@main"), List.of(new Variable.Identifier("x")),
+                List.of(instruction, new ReturnInstruction(null)));
+        machine = new Machine();
+        machine.setOutput(new BenchmarkPrograms.DiscardingOutputSink());
+        machine.setProgram(List.of(main));
+        machine.frame().variable(new Variable.Identifier("x")).store(7);
+    }
+
+    @Benchmark
+    public Optional<Frame> execute() throws BadProgramError {
+        Frame frame = machine.frame();
+        for (int i = 0; i < instruction.stackPops(); i++)
+            frame.push(i + 2);
+        Optional<Frame> next = instruction.execute(machine);
+        for (int i = 0; i < instruction.stackPushes(); i++)
+            frame.pop();
+        frame.jumpTo(START);
+        return next;
+    }
+
+    @Benchmark
+    public Frame baseline() throws BadProgramError {
+        Frame frame = machine.frame();
+        for (int i = 0; i < instruction.stackPops(); i++)
+            frame.push(i + 2);
+        for (int i = 0; i < instruction.stackPops(); i++)
+            frame.pop();
+        return frame.jumpTo(START);
+    }
+}
@@ -0,0 +1,117 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+import sml.instruction.GotoInstruction;
+import sml.instruction.InvokeInstruction;
+import sml.optimizer.Superinstructions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures executing whole programs, and creating the frame of a method invocation.
+ *
+ * @author Queenie Lee
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    @State(Scope.Thread)
+    public static class ProgramRun {
+        @Param({"test1.sml", "test2.sml"})
+        public String program;
+
+        /**
+         * The value passed by "main", i.e. which Fibonacci number is computed.
+         */
+        @Param({"10", "20", "25"})
+        public int argument;
+
+        @Param({"INTERPRETER", "BYTECODE", "JIT", "CLOSURE", "REGISTER"})
+        public Machine.Engine engine;
+
+        /**
+         * Whether common instruction sequences are fused into superinstructions before executing the program.
+         */
+        @Param({"false", "true"})
+        public boolean superinstructions;
+
+        /**
+         * Created once, so that the forms it caches for the engines (linked code, closures, register code)
+         * are built during the setup and not measured.
+         */
+        Program compiled;
+        Machine machine;
+        BenchmarkPrograms.DiscardingOutputSink output;
+
+        @Setup
+        public void setUp() throws IOException, BadProgramError {
+            Collection<Method> methods = BenchmarkPrograms.translator()
+                    .readAndTranslate(BenchmarkPrograms.withArgument(program, argument).toString());
+            if (superinstructions)
+                methods = Superinstructions.fuse(methods);
+            compiled = new Program(methods);
+            output = new BenchmarkPrograms.DiscardingOutputSink();
+            machine = new Machine();
+            machine.setEngine(engine);
+            machine.setOutput(output);
+            // execute once so that the cached form of the engine is built
+            machine.setProgram(compiled);
+            machine.execute();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Invocation {
+        static final Method.Identifier MAIN = new Method.Identifier("@main");
+        static final Method.Identifier FIB = new Method.Identifier("@fib");
+
+        Machine machine;
+
+        @Setup
+        public void setUp() throws IOException, BadProgramError {
+            List<Method> methods = new ArrayList<>(BenchmarkPrograms.translator()
+                    .readAndTranslate("resources/test1.sml"));
+            // "main" invokes fib and branches back to the invocation, so that every iteration starts from it
+            methods.removeIf(method -> method.name().equals(MAIN));
+            methods.add(new Method(MAIN, List.of(),
+                    List.of(new InvokeInstruction(new Label("L1"), FIB),
+                            new GotoInstruction(null, new Label("L1")))));
+            machine = new Machine();
+            machine.setProgram(methods);
+        }
+    }
+
+    /**
+     * Executes a program from the start: setting the program creates the frame of "main".
+     * The JIT engine starts each execution with a new compiler, so its compilations are measured.
+     */
+    @Benchmark
+    public int execute(ProgramRun program) {
+        program.machine.setProgram(program.compiled);
+        program.machine.execute();
+        return program.output.last();
+    }
+
+    /**
+     * Invokes "fib" from the frame of "main" and returns from it without executing it, so that the frame
+     * is recycled as it is when a program runs. The frame of "main" stays the current frame.
+     */
+    @Benchmark
+    public int newFrameForMethodInvocation(Invocation invocation) throws BadProgramError {
+        Frame main = invocation.machine.frame();
+        main.push(10);
+        Frame fib = invocation.machine.newFrameForMethodInvocation(Invocation.FIB).orElseThrow();
+        invocation.machine.returnFromMethodInvocation(fib, 0);
+        // the return advanced "main" to the goto
+        main.branch();
+        return main.pop();
+    }
+}
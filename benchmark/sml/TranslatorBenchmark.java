@@ -0,0 +1,76 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading programs: translating whole source files, and creating single instructions.
+ *
+ * @author Queenie Lee
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslatorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SourceFile {
+        @Param({"test1.sml", "test2.sml"})
+        public String program;
+
+        @Param({"1", "100", "10000"})
+        public int copies;
+
+        @Param({"false", "true"})
+        public boolean parallel;
+
+        TranslatorFactory translator;
+        String fileName;
+
+        @Setup
+        public void setUp() throws IOException {
+            translator = BenchmarkPrograms.translator();
+            if (translator instanceof SMLTranslator smlTranslator)
+                smlTranslator.setParallel(parallel);
+            Path file = BenchmarkPrograms.replicated(program, copies);
+            fileName = file.toString();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SourceLine {
+        @Param({"load n", "push 1", "if_cmpgt L7", "invoke @fib", "add"})
+        public String line;
+
+        InstructionFactory factory;
+        List<String> words;
+        Label label = new Label("L1");
+
+        @Setup
+        public void setUp() {
+            factory = BenchmarkPrograms.instructionFactory();
+            words = List.of(line.split(" "));
+        }
+    }
+
+    @Benchmark
+    public Collection<Method> readAndTranslate(SourceFile source) throws IOException, BadProgramError {
+        return source.translator.readAndTranslate(source.fileName);
+    }
+
+    /**
+     * The factory consumes the list it is given, so each call gets a fresh copy of the words.
+     */
+    @Benchmark
+    public Instruction createInstruction(SourceLine source) throws BadProgramError {
+        return source.factory.createInstruction(source.label, new ArrayList<>(source.words));
+    }
+}
@@ -0,0 +1,48 @@
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import sml.*;
+import sml.bytecode.ProgramFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+
+public class CompileSml {
+    private static final String USAGE = "CompileSml <file> [<file.smlc>]";
+
+    /**
+     * Translates and links a program and writes it as a compiled program, which RunSml can execute
+     * without translating it again.
+     *
+     * @param args name of the file containing the program text,
+     *             optionally followed by the name of the compiled program
+     *             (by default, the name of the program file with the extension .smlc)
+     */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Incorrect number of arguments - " + USAGE + " - required");
+            System.exit(-1);
+        }
+        String fileName = args[0];
+        String compiledName = args.length == 2
+                ? args[1]
+                : fileName.replaceFirst("\\.sml$", "") + ProgramFile.EXTENSION;
+
+        try {
+            BeanFactory factory = new ClassPathXmlApplicationContext("/beans.xml");
+            TranslatorFactory t = (TranslatorFactory) factory.getBean("translator");
+
+            Collection<Method> methods = t.readAndTranslate(fileName);
+            ProgramFile.write(methods, Path.of(compiledName));
+            System.out.println("Compiled " + fileName + " to " + compiledName);
+        }
+        catch (BadProgramError | MethodNotFoundException | LabelNotFoundException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.out.println("Error reading the program from " + fileName + " or writing it to " + compiledName);
+        }
+    }
+}
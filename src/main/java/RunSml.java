@@ -1,43 +1,230 @@
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import sml.*;
+import sml.bytecode.ProgramFile;
+import sml.optimizer.Optimizer;
+import sml.optimizer.Superinstructions;
 
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
+import java.util.Locale;
 
 import org.springframework.beans.factory.BeanFactory;
 
 
 public class RunSml {
+    private static final String USAGE = "RunSml [--engine=interpreter|bytecode|jit|closure|register] [--trace] [--profile[=<file.json>]] [--sample=<file>[,<microseconds>]] [--parallel] [-O0|-O1|-O2|-O3] [--superinstructions] [--memo=<size>[,lru|fifo]] [--output=<file>|-] <file>|<file.smlc>";
+
     /**
      * Initialises the system and executes the program.
      *
-     * @param args name of the file containing the program text.
+     * @param args name of the file containing the program text, or of a program compiled by CompileSml,
+     *             optionally preceded by --engine=interpreter, --engine=bytecode, --engine=jit
+     *             (the interpreter, compiling hot methods to JVM bytecode), --engine=closure
+     *             or --engine=register,
+     *             --trace to print every instruction before it is executed,
+     *             --profile to print a profile of the execution (see {@link Profiler}) to the standard error
+     *             when the program ends, and also write it in JSON with --profile=file,
+     *             --sample=file to sample the frames of the program every millisecond (or every given
+     *             number of microseconds with --sample=file,interval) and write the stacks in the folded format
+     *             read by flame graph tools (see {@link Sampler}),
+     *             --parallel to translate the methods of the program in parallel,
+     *             -O1, -O2 or -O3 to optimize the program before executing it (see {@link Optimizer}),
+     *             --superinstructions to fuse common instruction sequences before executing the program,
+     *             --memo=size to cache the values returned by pure methods (evicting the least recently used,
+     *             or the oldest with --memo=size,fifo),
+     *             and --output=file to write the printed values to a file instead of the console,
+     *             or --output=- to write them to the standard output in large blocks instead of a line at a time
      */
     public static void main(String... args) {
-        if (args.length != 1) {
-            System.err.println("Incorrect number of arguments - RunSml <file> - required");
+        Machine.Engine engine = Machine.Engine.INTERPRETER;
+        boolean trace = false;
+        boolean profile = false;
+        String profileFile = null;
+        Sampler sampler = null;
+        String sampleFile = null;
+        boolean parallel = false;
+        boolean superinstructions = false;
+        Optimizer optimizer = new Optimizer(0);
+        MemoCache memoCache = null;
+        String outputFile = null;
+        String fileName = null;
+        for (String arg : args) {
+            if (arg.equals("--trace")) {
+                trace = true;
+            }
+            else if (arg.equals("--profile")) {
+                profile = true;
+            }
+            else if (arg.startsWith("--profile=")) {
+                profile = true;
+                profileFile = arg.substring("--profile=".length());
+            }
+            else if (arg.startsWith("--sample=")) {
+                String[] sample = arg.substring("--sample=".length()).split(",", 2);
+                try {
+                    sampleFile = sample[0];
+                    sampler = sample.length == 2
+                            ? new Sampler(Duration.of(Long.parseLong(sample[1]), ChronoUnit.MICROS))
+                            : new Sampler();
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    System.err.println("Invalid sampler " + arg + " - " + USAGE);
+                    System.exit(-1);
+                }
+            }
+            else if (arg.equals("--parallel")) {
+                parallel = true;
+            }
+            else if (arg.startsWith("-O")) {
+                try {
+                    optimizer = new Optimizer(Integer.parseInt(arg.substring("-O".length())));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Unknown optimization level " + arg + " - " + USAGE);
+                    System.exit(-1);
+                }
+            }
+            else if (arg.equals("--superinstructions")) {
+                superinstructions = true;
+            }
+            else if (arg.startsWith("--memo=")) {
+                String[] memo = arg.substring("--memo=".length()).split(",", 2);
+                try {
+                    MemoCache.Eviction eviction = memo.length == 2
+                            ? MemoCache.Eviction.valueOf(memo[1].toUpperCase(Locale.ROOT))
+                            : MemoCache.Eviction.LRU;
+                    memoCache = new MemoCache(Integer.parseInt(memo[0]), eviction);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid memo cache " + arg + " - " + USAGE);
+                    System.exit(-1);
+                }
+            }
+            else if (arg.startsWith("--output=")) {
+                outputFile = arg.substring("--output=".length());
+            }
+            else if (arg.startsWith("--engine=")) {
+                try {
+                    engine = Machine.Engine.valueOf(arg.substring("--engine=".length()).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Unknown engine " + arg + " - " + USAGE);
+                    System.exit(-1);
+                }
+            }
+            else if (fileName == null) {
+                fileName = arg;
+            }
+            else {
+                fileName = null;
+                break;
+            }
+        }
+        if (fileName == null) {
+            System.err.println("Incorrect number of arguments - " + USAGE + " - required");
+            System.exit(-1);
+        }
+        if (trace && engine != Machine.Engine.INTERPRETER) {
+            System.err.println("--trace is only supported by the interpreter engine - " + USAGE);
+            System.exit(-1);
+        }
+        if (profile && engine != Machine.Engine.INTERPRETER) {
+            System.err.println("--profile is only supported by the interpreter engine - " + USAGE);
+            System.exit(-1);
+        }
+        if (profile && trace) {
+            System.err.println("--profile and --trace cannot be combined - " + USAGE);
+            System.exit(-1);
+        }
+        if (sampler != null && engine != Machine.Engine.INTERPRETER && engine != Machine.Engine.JIT) {
+            System.err.println("--sample is only supported by the interpreter and jit engines - " + USAGE);
+            System.exit(-1);
+        }
+        if (sampler != null && (trace || profile)) {
+            System.err.println("--sample cannot be combined with --trace or --profile - " + USAGE);
+            System.exit(-1);
+        }
+        if (memoCache != null && engine != Machine.Engine.INTERPRETER && engine != Machine.Engine.JIT) {
+            System.err.println("--memo is only supported by the interpreter and jit engines - " + USAGE);
             System.exit(-1);
         }
 
         try {
-            BeanFactory factory = new ClassPathXmlApplicationContext("/beans.xml");
-            TranslatorFactory t = (TranslatorFactory) factory.getBean("translator");
-
-            Collection<Method> instructions = t.readAndTranslate(args[0]);
             Machine m = new Machine();
+            m.setEngine(engine);
+            if (trace)
+                m.setListener(new TracingListener(System.out));
+            Profiler profiler = profile ? new Profiler() : null;
+            if (profiler != null)
+                m.setListener(profiler);
+            m.setMemoCache(memoCache);
+            m.setSampler(sampler);
+
+            Collection<Method> instructions;
+            if (fileName.endsWith(ProgramFile.EXTENSION)) {
+                instructions = ProgramFile.read(Path.of(fileName));
+            }
+            else {
+                BeanFactory factory = new ClassPathXmlApplicationContext("/beans.xml");
+                TranslatorFactory t = (TranslatorFactory) factory.getBean("translator");
+                if (parallel && t instanceof SMLTranslator translator)
+                    translator.setParallel(true);
+
+                instructions = t.readAndTranslate(fileName);
+            }
+            instructions = optimizer.optimize(instructions);
+            if (superinstructions)
+                instructions = Superinstructions.fuse(instructions);
             m.setProgram(instructions);
 
             System.out.println("Beginning program execution.");
-            m.execute();
+            if (outputFile != null) {
+                try (OutputSink output = outputFile.equals("-")
+                        ? BufferedOutputSink.toStandardOutput()
+                        : BufferedOutputSink.toFile(Path.of(outputFile))) {
+                    m.setOutput(output);
+                    m.execute();
+                } catch (IOException | UncheckedIOException e) {
+                    System.err.println("Cannot write the output to " + outputFile);
+                    System.exit(1);
+                }
+            }
+            else {
+                m.execute();
+            }
             System.out.println("Ending program execution.");
+            if (memoCache != null)
+                System.err.println(memoCache);
+            if (profiler != null) {
+                profiler.writeText(System.err);
+                if (profileFile != null) {
+                    try (Writer writer = Files.newBufferedWriter(Path.of(profileFile))) {
+                        profiler.writeJson(writer);
+                    } catch (IOException | UncheckedIOException e) {
+                        System.err.println("Cannot write the profile to " + profileFile);
+                        System.exit(1);
+                    }
+                }
+            }
+            if (sampler != null) {
+                try (Writer writer = Files.newBufferedWriter(Path.of(sampleFile))) {
+                    sampler.writeFolded(writer);
+                } catch (IOException | UncheckedIOException e) {
+                    System.err.println("Cannot write the samples to " + sampleFile);
+                    System.exit(1);
+                }
+                System.err.println(sampler.samples() + " samples written to " + sampleFile);
+            }
         }
-        catch (BadProgramError e) {
+        catch (BadProgramError | MethodNotFoundException | LabelNotFoundException e) {
             System.err.println(e.getMessage());
             System.exit(1);
         }
         catch (IOException e) {
-            System.out.println("Error reading the program from " + args[0]);
+            System.out.println("Error reading the program from " + fileName);
         }
     }
 }
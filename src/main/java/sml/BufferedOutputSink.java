@@ -0,0 +1,143 @@
+package sml;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * <p>Collects printed values in a byte buffer and writes them to a channel in large blocks.</p>
+ * Values are formatted as ASCII digits straight into the buffer, so printing allocates nothing.
+ * The buffer is written to the channel when the next value does not fit (flush on size),
+ * and when the machine flushes the sink at the end of the program or after a fault.
+ * <p>
+ * A sink is used by a single machine and is not thread-safe.
+ *
+ * @author Queenie Lee
+ */
+public class BufferedOutputSink implements OutputSink {
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    /**
+     * The longest formatted value: the sign and ten digits of Integer.MIN_VALUE.
+     */
+    private static final int MAX_INT_LENGTH = 11;
+
+    private final WritableByteChannel channel;
+    /**
+     * Whether closing the sink closes the channel: the standard output stays open for the rest of the process.
+     */
+    private final boolean closesChannel;
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int position;
+
+    /**
+     * Constructor: a sink writing to a channel.
+     *
+     * @param channel the destination of the output
+     * @param capacity size of the buffer in bytes
+     */
+    public BufferedOutputSink(WritableByteChannel channel, int capacity) {
+        this(channel, capacity, true);
+    }
+
+    BufferedOutputSink(WritableByteChannel channel, int capacity, boolean closesChannel) {
+        this.channel = Objects.requireNonNull(channel);
+        this.closesChannel = closesChannel;
+        this.buffer = new byte[Math.max(capacity, MAX_INT_LENGTH + lineSeparator.length)];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Returns a sink writing to a file, replacing its contents.
+     *
+     * @param path the file
+     * @return a sink writing to the file through a FileChannel
+     * @throws IOException if the file cannot be opened
+     */
+    public static BufferedOutputSink toFile(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedOutputSink(channel, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns a sink writing to the standard output of the process, bypassing System.out.
+     * Closing the sink flushes it but leaves the standard output open.
+     *
+     * @return a sink writing to the standard output
+     */
+    public static BufferedOutputSink toStandardOutput() {
+        return new BufferedOutputSink(Channels.newChannel(new FileOutputStream(FileDescriptor.out)),
+                DEFAULT_CAPACITY, false);
+    }
+
+    @Override
+    public void print(int value) {
+        if (buffer.length - position < MAX_INT_LENGTH + lineSeparator.length)
+            flush();
+
+        // digits are produced from the least significant one, so they are written backwards;
+        // working with the negative value also covers Integer.MIN_VALUE
+        int length = value < 0 ? stringSize(value) + 1 : stringSize(-value);
+        int end = position + length;
+        int negative = value < 0 ? value : -value;
+        int index = end;
+        do {
+            buffer[--index] = (byte) ('0' - negative % 10);
+            negative /= 10;
+        } while (negative != 0);
+        if (value < 0)
+            buffer[--index] = '-';
+
+        System.arraycopy(lineSeparator, 0, buffer, end, lineSeparator.length);
+        position = end + lineSeparator.length;
+    }
+
+    /**
+     * Returns the number of digits of a value that is zero or negative.
+     */
+    private static int stringSize(int negative) {
+        int limit = -10;
+        for (int digits = 1; digits < 10; digits++) {
+            if (negative > limit)
+                return digits;
+            limit *= 10;
+        }
+        return 10;
+    }
+
+    @Override
+    public void flush() {
+        byteBuffer.clear().limit(position);
+        try {
+            while (byteBuffer.hasRemaining())
+                channel.write(byteBuffer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (!closesChannel)
+            return;
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package sml;
+
+/**
+ * <p>Prints every value directly to the standard output, one line per value.</p>
+ * The standard output stream is looked up on every print, so it can be redirected with System.setOut.
+ *
+ * @author Queenie Lee
+ */
+public class ConsoleOutputSink implements OutputSink {
+
+    @Override
+    public void print(int value) {
+        System.out.println(value);
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
@@ -0,0 +1,64 @@
+package sml;
+
+/**
+ * <p>Observes the execution of a program by the {@link Machine}.</p>
+ * All methods have empty default implementations, so a listener only overrides the events it needs.
+ * The machine runs a separate loop without any listener calls when the listener is {@link #QUIET},
+ * so programs that are not observed do not pay for the events.
+ * <p>
+ * Listeners observe the instruction interpreter ({@link Machine.Engine#INTERPRETER}).
+ *
+ * @author Queenie Lee
+ */
+public interface ExecutionListener {
+
+    /**
+     * The default listener, which ignores all events.
+     */
+    ExecutionListener QUIET = new ExecutionListener() { };
+
+    /**
+     * Called before an instruction is executed.
+     *
+     * @param frame the frame the instruction executes in
+     * @param instruction the instruction
+     */
+    default void beforeInstruction(Frame frame, Instruction instruction) { }
+
+    /**
+     * Called after an instruction has executed successfully.
+     * It is not called after a return or an invocation in tail position, as the frame the instruction executed in
+     * has then been recycled for later invocations (or restarted, for a method invoking itself).
+     *
+     * @param frame the frame the instruction executed in
+     * @param instruction the instruction
+     */
+    default void afterInstruction(Frame frame, Instruction instruction) { }
+
+    /**
+     * Called when a method is invoked, after its arguments have been stored in the new frame.
+     * An invocation in tail position replaces the frame of the invoker (or reuses it, for a method invoking itself),
+     * and no return event is notified for the replaced frame.
+     * The listener is also notified of the invocation of "main" when the machine starts executing the program,
+     * so that every return event follows an invocation event for the same frame.
+     *
+     * @param frame the frame of the invoked method
+     */
+    default void onInvoke(Frame frame) { }
+
+    /**
+     * Called when a method returns, before the value is pushed onto the invoker's operand stack.
+     *
+     * @param frame the frame of the returning method
+     * @param value the returned value
+     */
+    default void onReturn(Frame frame, int value) { }
+
+    /**
+     * Called when the program fails. The machine stops executing the program afterwards.
+     *
+     * @param frame the frame of the failing instruction
+     * @param error the error
+     */
+    default void onFault(Frame frame, BadProgramError error) { }
+}
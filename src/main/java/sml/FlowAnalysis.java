@@ -0,0 +1,207 @@
+package sml;
+
+import sml.instruction.InvokeInstruction;
+import sml.instruction.StoreInstruction;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * <p>Follows the control flow of a method to find what holds on entry to each of its instructions.</p>
+ * The analysis propagates, from the first instruction along the fall-throughs and branches:
+ * <ul>
+ *   <li>the minimum and maximum depth of the operand stack over all paths</li>
+ *   <li>the variables assigned on every path (the arguments are assigned on entry to the method)</li>
+ * </ul>
+ * An invoke instruction pops the arguments of the invoked method, whose number is given by the program,
+ * and pushes its result. An instruction popping more values than the stack contains fails, so a path
+ * ends there, and an instruction reached by no path is unreachable.
+ * <p>
+ * The stack depth is bounded on a path without loops by the sum of the values pushed, so exceeding that sum
+ * means a loop keeps growing the stack. The analysis is shared by the computation of the stack capacity of
+ * frames, the {@link sml.optimizer.Optimizer}, the JIT compiler and the {@link sml.register.RegisterTranslator}.
+ *
+ * @author Queenie Lee
+ */
+public final class FlowAnalysis {
+    private final Method method;
+    private final int[] pops;
+    /**
+     * The minimum and maximum stack depth on entry to each instruction, -1 if the instruction is unreachable.
+     */
+    private final int[] minDepths;
+    private final int[] maxDepths;
+    /**
+     * The variables assigned on every path reaching each instruction, by slot (null if the instruction
+     * is unreachable).
+     */
+    private final BitSet[] assigned;
+    private final OptionalInt maxStackDepth;
+    private boolean fallsOffEnd;
+
+    private FlowAnalysis(Method method, ToIntFunction<Method.Identifier> argumentCounts) {
+        this.method = method;
+        List<Instruction> instructions = method.instructions();
+        int size = instructions.size();
+        this.pops = new int[size];
+        for (int pc = 0; pc < size; pc++) {
+            pops[pc] = instructions.get(pc) instanceof InvokeInstruction invoke
+                    ? argumentCounts.applyAsInt(invoke.methodName())
+                    : instructions.get(pc).stackPops();
+        }
+        this.minDepths = new int[size];
+        this.maxDepths = new int[size];
+        Arrays.fill(minDepths, -1);
+        Arrays.fill(maxDepths, -1);
+        this.assigned = new BitSet[size];
+        this.maxStackDepth = analyse(instructions.stream()
+                .mapToInt(Instruction::stackPushes)
+                .sum());
+    }
+
+    /**
+     * Analyses a method.
+     *
+     * @param method the method
+     * @param argumentCounts the number of arguments of each method invoked by the method
+     * @return the analysis
+     */
+    public static FlowAnalysis of(Method method, ToIntFunction<Method.Identifier> argumentCounts) {
+        return new FlowAnalysis(method, argumentCounts);
+    }
+
+    /**
+     * Propagates the depths and assigned variables until nothing changes. The maximum depths stop
+     * growing just above the limit, so that the propagation ends when a loop grows the stack.
+     *
+     * @return the maximum depth of the stack after an instruction, or empty if it exceeds the limit
+     */
+    private OptionalInt analyse(int limit) {
+        List<Instruction> instructions = method.instructions();
+        minDepths[0] = 0;
+        maxDepths[0] = 0;
+        assigned[0] = new BitSet();
+        assigned[0].set(0, method.arguments().size());
+        Deque<Integer> worklist = new ArrayDeque<>();
+        worklist.push(0);
+
+        int max = 0;
+        while (!worklist.isEmpty()) {
+            int pc = worklist.pop();
+            Instruction instruction = instructions.get(pc);
+            // the paths on which the stack is too small end here, as the instruction fails
+            if (maxDepths[pc] < pops[pc])
+                continue;
+            int exitMin = Math.max(minDepths[pc], pops[pc]) - pops[pc] + instruction.stackPushes();
+            int exitMax = Math.min(maxDepths[pc] - pops[pc] + instruction.stackPushes(), limit + 1);
+            max = Math.max(max, exitMax);
+            BitSet exitAssigned = assigned[pc];
+            if (instruction instanceof StoreInstruction store) {
+                exitAssigned = (BitSet) exitAssigned.clone();
+                exitAssigned.set(method.slot(store.variable()));
+            }
+
+            if (instruction.fallsThrough()) {
+                if (pc + 1 < instructions.size())
+                    merge(worklist, pc + 1, exitMin, exitMax, exitAssigned);
+                else
+                    fallsOffEnd = true;
+            }
+            if (method.branchTarget(pc) >= 0)
+                merge(worklist, method.branchTarget(pc), exitMin, exitMax, exitAssigned);
+        }
+        return max > limit ? OptionalInt.empty() : OptionalInt.of(max);
+    }
+
+    private void merge(Deque<Integer> worklist, int successor, int min, int max, BitSet exitAssigned) {
+        if (assigned[successor] == null) {
+            minDepths[successor] = min;
+            maxDepths[successor] = max;
+            assigned[successor] = exitAssigned;
+            worklist.push(successor);
+            return;
+        }
+        boolean changed = false;
+        if (min < minDepths[successor]) {
+            minDepths[successor] = min;
+            changed = true;
+        }
+        if (max > maxDepths[successor]) {
+            maxDepths[successor] = max;
+            changed = true;
+        }
+        BitSet merged = (BitSet) assigned[successor].clone();
+        merged.and(exitAssigned);
+        if (!merged.equals(assigned[successor])) {
+            assigned[successor] = merged;
+            changed = true;
+        }
+        if (changed)
+            worklist.push(successor);
+    }
+
+    public boolean isReachable(int pc) {
+        return assigned[pc] != null;
+    }
+
+    /**
+     * Returns the number of values the instruction at the given index pops, the arguments of the invoked method
+     * for an invoke instruction.
+     */
+    public int pops(int pc) {
+        return pops[pc];
+    }
+
+    /**
+     * @return the minimum stack depth on entry to the instruction, or -1 if it is unreachable
+     */
+    public int minDepth(int pc) {
+        return minDepths[pc];
+    }
+
+    /**
+     * @return the maximum stack depth on entry to the instruction, or -1 if it is unreachable
+     */
+    public int maxDepth(int pc) {
+        return maxDepths[pc];
+    }
+
+    /**
+     * Returns whether the stack has the same depth on every path reaching each instruction,
+     * that is wherever control flow merges.
+     */
+    public boolean isBalanced() {
+        for (int pc = 0; pc < minDepths.length; pc++) {
+            if (minDepths[pc] != maxDepths[pc])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a variable is assigned on every path reaching an instruction.
+     *
+     * @param pc the index of a reachable instruction
+     * @param slot the slot of the variable
+     * @return true if the variable has a value whenever the instruction executes
+     */
+    public boolean isAssigned(int pc, int slot) {
+        return assigned[pc].get(slot);
+    }
+
+    /**
+     * Returns whether a path runs past the last instruction, which fails.
+     */
+    public boolean fallsOffEnd() {
+        return fallsOffEnd;
+    }
+
+    /**
+     * Returns the maximum depth the operand stack of a frame for the method can reach.
+     *
+     * @return the maximum stack depth, or empty if a loop can grow the stack without limit
+     */
+    public OptionalInt maxStackDepth() {
+        return maxStackDepth;
+    }
+}
@@ -1,7 +1,6 @@
 package sml;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * <p>Part of the stack, created by a method invocation.</p>
@@ -9,40 +8,106 @@ import java.util.stream.Collectors;
  * * values of method arguments and local variables
  * * operands of the instruction in the operand stack
  * * the value of the program counter
+ * <p>
+ * The machine recycles the frame of a method once it has returned (see {@link FramePool}),
+ * so a frame must not be kept after the method has returned, for example by a listener.
  */
-public class Frame {
-    private final Method method;
+public final class Frame {
+    /**
+     * The initial capacity of the operand stack when the maximum depth of the method is unbounded or unknown.
+     */
+    public static final int DEFAULT_STACK_CAPACITY = 16;
+
+    private Method method;
+    /**
+     * The index of the method in the program (see {@link Program#method(int)}), or -1 for a frame
+     * created outside a machine.
+     */
+    private int methodIndex;
     private int programCounter; // mutable
 
     /**
-     * The value of each argument is mutable.
-     * The mutator methods are arguments and variable
+     * The values of the arguments and local variables, indexed by their slot in the method.
+     * The mutator methods are store and variable
+     * The array can be longer than the number of slots when the frame is reused for another method.
      * */
-    private final SymbolTable<Variable.Identifier, Variable> arguments;
+    private int[] values;
     /**
-     * The value of each variable is mutable
-     * The mutator method are localVariables and variable
+     * One bit per slot, set once a value has been stored in the slot.
+     * Variables do not have a default value of 0, so loading a slot without its bit set is an error.
      * */
-    private final SymbolTable<Variable.Identifier, Variable> localVariables;
+    private long[] assigned;
     /**
      * The values in the stack are mutable
      * The mutator methods are pop and push
+     * The capacity is the maximum stack depth of the method in its program (see {@link Program#stackCapacity(int)}),
+     * so the array only grows if the depth is unbounded or values are pushed from outside the method.
      * */
-    private final Deque<Integer> stack;
+    private int[] stack;
+    private int stackSize;
 
-    private final Frame invoker;
+    private Optional<Frame> invoker;
+    /**
+     * The number of frames in the chain of invokers, this frame included.
+     */
+    private int depth;
+
+    /**
+     * This frame as an optional, created once so that invocations and returns do not allocate it.
+     */
+    private final Optional<Frame> self = Optional.of(this);
+
+    /**
+     * The invocation to cache the returned value under, if the method is memoized and its value was not cached.
+     */
+    private MemoCache.Key memoKey;
 
     public Frame(Method method, Frame invoker) {
+        this(method, -1, DEFAULT_STACK_CAPACITY, invoker);
+    }
+
+    Frame(Method method, int methodIndex, int stackCapacity, Frame invoker) {
+        this.values = new int[method.slotCount()];
+        this.assigned = new long[words(method.slotCount())];
+        this.stack = new int[stackCapacity];
+        reset(method, methodIndex, stackCapacity, invoker);
+    }
+
+    /**
+     * Reinitialises this frame for a new invocation, as if it had just been created for the method.
+     * The arrays are only replaced if they are too small for the method, so a recycled frame
+     * (see {@link FramePool}) is usually reused without allocating.
+     *
+     * @param method the invoked method
+     * @param methodIndex the index of the method in the program
+     * @param stackCapacity the capacity of the operand stack
+     * @param invoker the frame of the invoker, or null for the method "main"
+     * @return this frame, at the first instruction of the method
+     */
+    Frame reset(Method method, int methodIndex, int stackCapacity, Frame invoker) {
         this.method = Objects.requireNonNull(method);
+        this.methodIndex = methodIndex;
         this.programCounter = 0;
 
-        this.arguments = SymbolTable.of(method.arguments().stream()
-                .collect(Collectors.toMap(v -> v, v -> new Variable())));
-        this.localVariables = SymbolTable.of(method.localVariables().stream()
-                .collect(Collectors.toMap(v -> v, v -> new Variable())));
-        this.stack = new ArrayDeque<>();
+        int slotCount = method.slotCount();
+        if (values.length < slotCount) {
+            values = new int[slotCount];
+            assigned = new long[words(slotCount)];
+        } else {
+            Arrays.fill(assigned, 0, words(slotCount), 0L);
+        }
+        if (stack.length < stackCapacity)
+            stack = new int[stackCapacity];
+        this.stackSize = 0;
+
+        this.invoker = invoker == null ? Optional.empty() : invoker.self;
+        this.depth = invoker == null ? 1 : invoker.depth + 1;
+        this.memoKey = null;
+        return this;
+    }
 
-        this.invoker = invoker;
+    private static int words(int slotCount) {
+        return (slotCount + Long.SIZE - 1) / Long.SIZE;
     }
 
     /**
@@ -69,6 +134,20 @@ public class Frame {
         return setProgramCounter(pc.get());
     }
 
+    /**
+     * Returns a frame for the branch target of the current instruction,
+     * which was resolved from its label when the method was created.
+     *
+     * @return the frame for the branch target of the current instruction
+     * @throws LabelNotFoundException if the branch label does not exist in the method
+     */
+    public Frame branch() {
+        int target = method.branchTarget(programCounter);
+        if (target < 0)
+            throw new LabelNotFoundException(currentInstruction().optionalBranchLabel().orElseThrow(), method);
+        return setProgramCounter(target);
+    }
+
     private Frame setProgramCounter(int programCounter) {
         this.programCounter = programCounter;
         Objects.checkIndex(programCounter, method.instructions().size());
@@ -79,6 +158,10 @@ public class Frame {
         return method;
     }
 
+    int methodIndex() {
+        return methodIndex;
+    }
+
     public Instruction currentInstruction() {
         return method.instructions().get(programCounter);
     }
@@ -94,40 +177,142 @@ public class Frame {
      * @return the optional invoker program counter
      */
     public Optional<Frame> invoker() {
-        return Optional.ofNullable(invoker);
+        return invoker;
     }
 
-    public SymbolTable<Variable.Identifier, Variable> arguments() {
-        return arguments;
+    /**
+     * Returns the depth of this frame: the number of frames in its chain of invokers, this frame included
+     * (1 for the method "main").
+     *
+     * @return the depth of the frame
+     */
+    public int depth() {
+        return depth;
     }
 
-    public SymbolTable<Variable.Identifier, Variable> localVariables() {
-        return localVariables;
+    /**
+     * Returns this frame as an optional, without allocating.
+     * Instructions return it as the frame to execute next.
+     *
+     * @return the optional of this frame
+     */
+    public Optional<Frame> asOptional() {
+        return self;
     }
 
+    /**
+     * Returns the argument or local variable with the given name.
+     * This looks the variable up by name; instructions access variables by slot instead.
+     *
+     * @param identifier the variable
+     * @return the variable of this frame
+     * @throws VariableNotFoundException if the variable is not used in the method
+     */
     public Variable variable(Variable.Identifier identifier) {
-        return localVariables.get(identifier)
-                .or(() -> arguments.get(identifier))
-                .orElseThrow(() -> new VariableNotFoundException(identifier));
+        return new Variable(this, method.slot(identifier));
+    }
+
+    /**
+     * Returns the slot of a variable of the current instruction, resolved when the method was created
+     * (see {@link Method#operandSlot(int, int)}).
+     *
+     * @param operand the position of the variable in the {@link Instruction#variables()} of the current instruction
+     * @return the slot index of the variable
+     */
+    public int operandSlot(int operand) {
+        return method.operandSlot(programCounter, operand);
+    }
+
+    /**
+     * Returns whether a value has been stored in the given slot.
+     *
+     * @param slot slot index of an argument or local variable
+     * @return true if the slot contains a value
+     */
+    public boolean isAssigned(int slot) {
+        return (assigned[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Returns the value stored in the given slot.
+     * The caller must check that the slot is assigned.
+     *
+     * @param slot slot index of an argument or local variable
+     * @return the value of the slot
+     */
+    public int load(int slot) {
+        return values[slot];
+    }
+
+    public void store(int slot, int value) {
+        values[slot] = value;
+        assigned[slot >>> 6] |= 1L << slot;
     }
 
     public int pop() throws BadProgramError {
-        try {
-            return stack.pop();
-        } catch (NoSuchElementException ex) {
-            throw new BadProgramError("Not enough values on the stack.");
-        }
+        if (stackSize == 0)
+            throw stackUnderflow();
+        return stack[--stackSize];
+    }
+
+    /**
+     * Reuses this frame for a tail call of its own method.
+     * The arguments are popped from the operand stack into the first slots, then the other variables,
+     * the operand stack and the program counter are reset as in a new frame.
+     *
+     * @param argumentCount the number of arguments of the method
+     * @return this frame, at the first instruction of the method
+     * @throws BadProgramError if the operand stack does not contain the arguments
+     */
+    Frame restart(int argumentCount) throws BadProgramError {
+        if (stackSize < argumentCount)
+            throw stackUnderflow();
+        Arrays.fill(assigned, 0, words(method.slotCount()), 0L);
+        for (int slot = 0; slot < argumentCount; slot++)
+            store(slot, stack[--stackSize]);
+        stackSize = 0;
+        memoKey = null;
+        return setProgramCounter(0);
+    }
+
+    private static BadProgramError stackUnderflow() {
+        return new BadProgramError("Not enough values on the stack.");
+    }
+
+    public int stackSize() {
+        return stackSize;
+    }
+
+    /**
+     * Returns a value of the operand stack without removing it.
+     * The caller must check that the stack contains more than depth values.
+     *
+     * @param depth the position from the top of the stack (0 for the top value)
+     * @return the value
+     */
+    public int peek(int depth) {
+        return stack[stackSize - 1 - depth];
+    }
+
+    MemoCache.Key memoKey() {
+        return memoKey;
+    }
+
+    void setMemoKey(MemoCache.Key memoKey) {
+        this.memoKey = memoKey;
     }
 
     public void push(int value) {
-        stack.push(value);
+        if (stackSize == stack.length)
+            stack = Arrays.copyOf(stack, Math.max(DEFAULT_STACK_CAPACITY, stack.length * 2));
+        stack[stackSize++] = value;
     }
 
     @Override
     public String toString() {
         return method.name() + ", l "
                 + programCounter
-                + Optional.ofNullable(invoker)
+                + invoker
                 .map(pc -> " (" + pc + ")")
                 .orElse("");
     }
@@ -0,0 +1,61 @@
+package sml;
+
+import java.util.Arrays;
+
+/**
+ * <p>The frames of returned methods, kept by a machine (or the closure engine, see
+ * {@link sml.closure.ClosureInterpreter}) to be reused by later invocations.</p>
+ * A recycled frame keeps its arrays, which are only replaced when a method needs more slots or a deeper
+ * operand stack, so once the pool holds enough frames for the deepest chain of invocations of a program,
+ * invoking and returning allocate nothing.
+ * <p>
+ * At most {@link #CAPACITY} frames are kept, so that a deep recursion does not retain all its frames
+ * once it has returned. A pool belongs to one machine and is not safe for use by several threads.
+ *
+ * @author Queenie Lee
+ */
+public final class FramePool {
+    /**
+     * The maximum number of frames kept in the pool.
+     */
+    public static final int CAPACITY = 1024;
+
+    private Frame[] frames = new Frame[16];
+    private int size;
+
+    /**
+     * Returns a frame for an invocation of the method, reusing a recycled frame if there is one.
+     *
+     * @param method the invoked method
+     * @param methodIndex the index of the method in the program
+     * @param stackCapacity the capacity of the operand stack of the method (see {@link Program#stackCapacity(int)})
+     * @param invoker the frame of the invoker, or null for the method "main"
+     * @return the frame, at the first instruction of the method
+     */
+    public Frame acquire(Method method, int methodIndex, int stackCapacity, Frame invoker) {
+        if (size == 0)
+            return new Frame(method, methodIndex, stackCapacity, invoker);
+        Frame frame = frames[--size];
+        frames[size] = null;
+        return frame.reset(method, methodIndex, stackCapacity, invoker);
+    }
+
+    /**
+     * Recycles the frame of a method that has returned or has been replaced by a tail call.
+     * The frame must not be used afterwards.
+     *
+     * @param frame the frame
+     */
+    public void release(Frame frame) {
+        if (size == frames.length) {
+            if (size == CAPACITY)
+                return;
+            frames = Arrays.copyOf(frames, Math.min(CAPACITY, size * 2));
+        }
+        frames[size++] = frame;
+    }
+
+    public int size() {
+        return size;
+    }
+}
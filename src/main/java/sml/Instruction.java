@@ -20,7 +20,7 @@ import java.util.stream.Stream;
 public abstract class Instruction {
     protected final Label label;
     protected final String opcode;
-    private Integer hashCodeInt = null;
+    private int hashCodeInt = 0;
 
     /**
      * Constructor: an instruction with a label and an opcode
@@ -53,6 +53,50 @@ public abstract class Instruction {
         return Stream.of();
     }
 
+    /**
+     * Returns the number of values the instruction pops from the operand stack.
+     * This method must be overridden if the instruction pops any values.
+     *
+     * @return the number of values popped
+     */
+
+    public int stackPops() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of values the instruction pushes onto the operand stack.
+     * This method must be overridden if the instruction pushes any values.
+     *
+     * @return the number of values pushed
+     */
+
+    public int stackPushes() {
+        return 0;
+    }
+
+    /**
+     * Returns the optional label the instruction may jump to.
+     * This method must be overridden if the instruction is a branch.
+     *
+     * @return the optional branch label (empty if the instruction does not branch)
+     */
+
+    public Optional<Label> optionalBranchLabel() {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns whether execution can continue with the next instruction of the method.
+     * This method must be overridden if the instruction always jumps or leaves the method.
+     *
+     * @return true if the next instruction may be executed after this one
+     */
+
+    public boolean fallsThrough() {
+        return true;
+    }
+
     /**
      * Executes the instruction in the given machine.
      *
@@ -98,7 +142,7 @@ public abstract class Instruction {
             /* Instructions are uniquely identified by their toString() representation, as it contains
             label, opcode and parameter-list. Therefore, two Instruction objects are equal if and only if
             they have the same toString(). */
-            return o.toString().equals(otherInstruction.toString());
+            return this.toString().equals(otherInstruction.toString());
         }
         return false;
     }
@@ -106,12 +150,15 @@ public abstract class Instruction {
     @Override
     public int hashCode() {
         /* hashCode is generated when the method is first invoked, subsequent calls will simply return
-        the stored variable, improving performance. */
-        if (hashCodeInt == null) {
+        the stored variable, improving performance. The field is read once, so a thread sees either 0
+        (and computes the same value again) or the stored value, as with String.hashCode. */
+        int h = hashCodeInt;
+        if (h == 0) {
             /* Analogous to the equals method above, the toString() representation uniquely identifies
             every Instruction. */
-            this.hashCodeInt = this.toString().hashCode();
+            h = this.toString().hashCode();
+            this.hashCodeInt = h;
         }
-        return hashCodeInt;
+        return h;
     }
 }
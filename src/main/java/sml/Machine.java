@@ -1,7 +1,20 @@
 package sml;
 
+import sml.bytecode.BytecodeInterpreter;
+import sml.bytecode.ProgramFile;
+import sml.closure.ClosureInterpreter;
+import sml.jit.CompiledMethod;
+import sml.jfr.Events;
+import sml.jfr.FaultEvent;
+import sml.jfr.InvokeEvent;
+import sml.jfr.ReturnEvent;
+import sml.jfr.ThroughputEvent;
+import sml.jit.JitCompiler;
+import sml.register.RegisterVM;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Represents the machine, the context in which programs run.
@@ -9,10 +22,53 @@ import java.util.stream.Collectors;
  * An instance contains the program (as a table with methods) and
  * a program counter. The program counter represents the current
  * instruction and the call stack in the program execution.
+ * <p>
+ * The program is immutable and can be shared, while the machine holds the state of one execution.
+ * A machine is used by one thread at a time, but several machines can execute the same {@link Program}
+ * concurrently.
  */
 public final class Machine {
 
-    private SymbolTable<Method.Identifier, Method> program;
+    /**
+     * The engines a program can be executed with.
+     * INTERPRETER executes the instruction objects of each method,
+     * BYTECODE links the program into flat code arrays and executes them in a single dispatch loop,
+     * JIT executes the instruction objects like INTERPRETER but compiles hot methods and loops to JVM bytecode
+     * (see {@link JitCompiler}),
+     * CLOSURE compiles every method into a chain of nodes bound to their operands and executes them in
+     * the same frames as INTERPRETER (see {@link sml.closure.ClosureCompiler}),
+     * REGISTER translates every method into three-address register code and executes it in a register VM
+     * (see {@link sml.register.RegisterTranslator}), falling back to INTERPRETER for a program it cannot translate.
+     */
+    public enum Engine { INTERPRETER, BYTECODE, JIT, CLOSURE, REGISTER }
+
+    private Engine engine = Engine.INTERPRETER;
+
+    private ExecutionListener listener = ExecutionListener.QUIET;
+
+    private OutputSink output = new ConsoleOutputSink();
+
+    private MemoCache memoCache = null;
+
+    private Sampler sampler = null;
+
+    private final FramePool framePool = new FramePool();
+
+    private int jitThreshold = JitCompiler.DEFAULT_THRESHOLD;
+
+    private int backEdgeThreshold = JitCompiler.DEFAULT_BACK_EDGE_THRESHOLD;
+
+    /**
+     * The compiler of the JIT engine, created when the program starts (null for the other engines).
+     */
+    private JitCompiler jit;
+
+    /**
+     * The argument values passed to compiled methods, reused from one invocation to the next.
+     */
+    private int[] jitArguments = new int[8];
+
+    private Program program;
 
     /**
      * Contains the current method name (with list of instructions), its arguments and local variables,
@@ -23,27 +79,373 @@ public final class Machine {
     // the program counter (the index of the instruction to be executed next)
     private Optional<Frame> frame;
 
+    /**
+     * The frame recycled by the last return or tail call, so that the observed loops do not pass it
+     * to {@link ExecutionListener#afterInstruction(Frame, Instruction)}.
+     */
+    private Frame recycledFrame;
+
+    /**
+     * Whether the listener has been notified of the invocation of "main", when the program started.
+     */
+    private boolean started;
+
     /**
      * Execute the program starting from method "main".
      * Precondition: the program has been stored properly.
      */
     public void execute() {
+        if (engine == Engine.BYTECODE || engine == Engine.CLOSURE
+                || engine == Engine.REGISTER && program.registers().isPresent()) {
+            executeCompiled();
+            return;
+        }
+        jit = engine == Engine.JIT ? new JitCompiler(program, jitThreshold, backEdgeThreshold) : null;
+        start();
+        try {
+            if (listener instanceof Profiler profiler)
+                executeProfiled(profiler);
+            else if (listener != ExecutionListener.QUIET)
+                executeObserved();
+            else if (sampler != null)
+                executeSampling();
+            else if (Events.recorderStarted() && ThroughputEvent.TYPE.isEnabled())
+                executeSampled();
+            else
+                executeQuietly();
+        } catch (BadProgramError ex) {
+            fault(ex);
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Executes at most the given number of instructions of the program, so that the program can be executed in
+     * slices that other work is interleaved with (see {@link sml.scheduler.Scheduler}). The program continues
+     * where the previous slice stopped. The output is flushed when the program ends.
+     * <p>
+     * Slices are executed by the instruction interpreter whatever the engine: compiled code cannot stop after
+     * a number of instructions, so the JIT engine compiles nothing, and the other compiled engines are not used.
+     * The sampler and the throughput events are not used either.
+     *
+     * @param quantum the maximum number of instructions to execute
+     * @return true if the program has ended, normally or with a fault reported like {@link #execute()} does
+     * @throws IllegalArgumentException if the quantum is not positive
+     */
+    public boolean execute(int quantum) {
+        if (quantum <= 0)
+            throw new IllegalArgumentException("The quantum must be positive: " + quantum);
+        if (frame.isEmpty())
+            return true;
+        // without a compiler, invocations and backward branches never enter compiled code
+        jit = null;
+        start();
+        try {
+            if (listener instanceof Profiler profiler)
+                executeProfiled(profiler, quantum);
+            else if (listener != ExecutionListener.QUIET)
+                executeObserved(quantum);
+            else
+                executeQuietly(quantum);
+        } catch (BadProgramError ex) {
+            fault(ex);
+            frame = Optional.empty();
+        }
+        if (frame.isPresent())
+            return false;
+        output.flush();
+        return true;
+    }
+
+    /**
+     * Notifies the listener of the invocation of "main" when the program starts, as the frame of "main"
+     * is created by {@link #setProgram(Program)}, before the listener may be set.
+     */
+    private void start() {
+        if (started)
+            return;
+        started = true;
+        frame.ifPresent(listener::onInvoke);
+    }
+
+    /**
+     * Reports a fault of the interpreter to the listener, the flight recorder and the user.
+     */
+    private void fault(BadProgramError ex) {
+        // the frame is not replaced when an instruction fails, so it is still the frame of the failing instruction
+        listener.onFault(frame.orElse(null), ex);
+        if (Events.recorderStarted() && FaultEvent.TYPE.isEnabled())
+            FaultEvent.emit(frame.map(f -> f.method().name().toString()).orElse(null),
+                    frame.map(Frame::programCounter).orElse(-1), ex.getMessage());
+        output.flush();
+        reportFault(ex);
+    }
+
+    /**
+     * The loop used when no listener is set: it contains no listener calls at all.
+     */
+    private void executeQuietly() throws BadProgramError {
+        while (frame.isPresent()) {
+            Instruction instruction = frame.get().currentInstruction();
+            frame = instruction.execute(this);
+        }
+    }
+
+    private void executeQuietly(int quantum) throws BadProgramError {
+        for (int remaining = quantum; remaining > 0 && frame.isPresent(); remaining--) {
+            Instruction instruction = frame.get().currentInstruction();
+            frame = instruction.execute(this);
+        }
+    }
+
+    /**
+     * The loop used when no listener is set and a flight recording samples the throughput of the interpreter:
+     * it counts the executed instructions and emits a {@link ThroughputEvent} for each sample.
+     */
+    private void executeSampled() throws BadProgramError {
+        ThroughputEvent event = new ThroughputEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int count = 0;
+        try {
+            while (frame.isPresent()) {
+                Instruction instruction = frame.get().currentInstruction();
+                frame = instruction.execute(this);
+                if (++count == ThroughputEvent.SAMPLE_INSTRUCTIONS) {
+                    long now = System.nanoTime();
+                    ThroughputEvent.emit(event, count, now - start);
+                    event = new ThroughputEvent();
+                    event.begin();
+                    start = now;
+                    count = 0;
+                }
+            }
+        } finally {
+            ThroughputEvent.emit(event, count, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The loop used when a sampler is set and no listener: it polls the sampler before each instruction,
+     * taking a sample of the frames when one is requested.
+     */
+    private void executeSampling() throws BadProgramError {
+        Sampler sampler = this.sampler;
+        sampler.start();
+        try {
+            while (frame.isPresent()) {
+                Frame f = frame.get();
+                if (sampler.isRequested())
+                    sampler.sample(f);
+                frame = f.currentInstruction().execute(this);
+            }
+        } finally {
+            sampler.stop();
+        }
+    }
+
+    private void executeObserved() throws BadProgramError {
         while (frame.isPresent()) {
             Frame f = frame.get();
             Instruction instruction = f.currentInstruction();
-            System.out.println("[" + f + "] " + instruction);
-            try {
-                frame = instruction.execute(this);
-            } catch (BadProgramError ex) {
-                System.out.println("There is a problem with your program.");
-                ex.printMessage();
+            listener.beforeInstruction(f, instruction);
+            recycledFrame = null;
+            frame = instruction.execute(this);
+            if (recycledFrame != f)
+                listener.afterInstruction(f, instruction);
+        }
+    }
+
+    private void executeObserved(int quantum) throws BadProgramError {
+        for (int remaining = quantum; remaining > 0 && frame.isPresent(); remaining--) {
+            Frame f = frame.get();
+            Instruction instruction = f.currentInstruction();
+            listener.beforeInstruction(f, instruction);
+            recycledFrame = null;
+            frame = instruction.execute(this);
+            if (recycledFrame != f)
+                listener.afterInstruction(f, instruction);
+        }
+    }
+
+    /**
+     * The loop used when the listener is a {@link Profiler}: the count of the instruction is incremented in the
+     * loop, in the counts of the current method, which the profiler selects on invocations and returns.
+     */
+    private void executeProfiled(Profiler profiler) throws BadProgramError {
+        while (frame.isPresent()) {
+            Frame f = frame.get();
+            profiler.counts[f.programCounter()]++;
+            profiler.executed++;
+            frame = f.currentInstruction().execute(this);
+        }
+    }
+
+    private void executeProfiled(Profiler profiler, int quantum) throws BadProgramError {
+        for (int remaining = quantum; remaining > 0 && frame.isPresent(); remaining--) {
+            Frame f = frame.get();
+            profiler.counts[f.programCounter()]++;
+            profiler.executed++;
+            frame = f.currentInstruction().execute(this);
+        }
+    }
+
+    private static void reportFault(BadProgramError ex) {
+        System.out.println("There is a problem with your program.");
+        ex.printMessage();
+    }
+
+    /**
+     * Executes the program linked into the bytecode format, or compiled into closures.
+     * The program is linked or compiled the first time it is executed.
+     */
+    private void executeCompiled() {
+        try {
+            switch (engine) {
+                case BYTECODE -> new BytecodeInterpreter(program.linked(), output).execute();
+                case CLOSURE -> new ClosureInterpreter(program.closures(), output).execute();
+                default -> new RegisterVM(program.registers().orElseThrow(), output).execute();
             }
+        } catch (BadProgramError ex) {
+            if (Events.recorderStarted() && FaultEvent.TYPE.isEnabled())
+                FaultEvent.emit(null, -1, ex.getMessage());
+            output.flush();
+            reportFault(ex);
+        } finally {
+            output.flush();
         }
+        frame = Optional.empty();
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = Objects.requireNonNull(engine);
+    }
+
+    public Engine engine() {
+        return engine;
     }
 
+    /**
+     * Sets the number of invocations after which the JIT engine compiles a method.
+     *
+     * @param jitThreshold the number of invocations (positive)
+     */
+    public void setJitThreshold(int jitThreshold) {
+        if (jitThreshold < 1)
+            throw new IllegalArgumentException("The compilation threshold must be positive: " + jitThreshold);
+        this.jitThreshold = jitThreshold;
+    }
+
+    /**
+     * Sets the number of times a backward branch is taken before the JIT engine compiles its loop
+     * and continues it in compiled code.
+     *
+     * @param backEdgeThreshold the number of backward branches (positive)
+     */
+    public void setBackEdgeThreshold(int backEdgeThreshold) {
+        if (backEdgeThreshold < 1)
+            throw new IllegalArgumentException("The back edge threshold must be positive: " + backEdgeThreshold);
+        this.backEdgeThreshold = backEdgeThreshold;
+    }
+
+    /**
+     * Returns the compiler of the JIT engine, which exists while the JIT engine executes a program.
+     *
+     * @return the optional compiler (empty for the other engines)
+     */
+    public Optional<JitCompiler> jit() {
+        return Optional.ofNullable(jit);
+    }
+
+    /**
+     * Sets the listener notified of the execution of the program.
+     *
+     * @param listener the listener, or {@link ExecutionListener#QUIET} to observe nothing
+     */
+    public void setListener(ExecutionListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    public ExecutionListener listener() {
+        return listener;
+    }
+
+    /**
+     * Sets the sink the values printed by the program are written to.
+     * The machine flushes the sink when the program ends or fails, but does not close it.
+     *
+     * @param output the output sink
+     */
+    public void setOutput(OutputSink output) {
+        this.output = Objects.requireNonNull(output);
+    }
+
+    public OutputSink output() {
+        return output;
+    }
+
+    /**
+     * Sets the cache of the values returned by pure methods.
+     * When a pure method is invoked with argument values found in the cache, the cached value is pushed
+     * instead of executing the method, and the listener is not notified of the invocation and return.
+     * Only the interpreter and JIT engines use the cache.
+     *
+     * @param memoCache the cache, or null to execute every invocation (the default)
+     */
+    public void setMemoCache(MemoCache memoCache) {
+        this.memoCache = memoCache;
+    }
+
+    public Optional<MemoCache> memoCache() {
+        return Optional.ofNullable(memoCache);
+    }
+
+    /**
+     * Sets the sampler of the frames of the program (see {@link Sampler}).
+     * Only the interpreter and JIT engines are sampled, and only when no listener is set.
+     *
+     * @param sampler the sampler, or null to take no samples (the default)
+     */
+    public void setSampler(Sampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public Optional<Sampler> sampler() {
+        return Optional.ofNullable(sampler);
+    }
+
+    /**
+     * Loads a compiled program (see {@link ProgramFile}) and sets it as the program to execute.
+     *
+     * @param compiledProgram the .smlc file
+     * @throws IOException if the file cannot be read or is not a valid compiled program
+     */
+    public void setProgram(Path compiledProgram) throws IOException {
+        setProgram(ProgramFile.read(compiledProgram));
+    }
+
+    /**
+     * Creates a program from the methods (see {@link Program}) and sets it as the program to execute.
+     *
+     * @param methods the methods of the program, including the method "main"
+     * @throws MethodNotFoundException if "main" or an invoked method does not exist
+     * @throws LabelNotFoundException if a branch label does not exist in its method
+     */
     public void setProgram(Collection<Method> methods) {
-        program = SymbolTable.of(methods.stream()
-                .collect(Collectors.toMap(Method::name, m -> m)));
+        setProgram(new Program(methods));
+    }
+
+    /**
+     * Sets the program to execute, which may be executed by other machines at the same time.
+     *
+     * @param program the program
+     * @throws MethodNotFoundException if the program has no method "main"
+     */
+    public void setProgram(Program program) {
+        this.program = Objects.requireNonNull(program);
+        jit = null;
+        started = false;
         frame = Optional.empty();
         try {
             frame = newFrameForMethodInvocation(new Method.Identifier("@main"));
@@ -52,31 +454,219 @@ public final class Machine {
         }
     }
 
+    public Program program() {
+        return program;
+    }
 
     public Frame frame() {
         return frame.orElse(null);
     }
 
+    /**
+     * Invokes a method by name, popping its arguments from the operand stack of the current frame.
+     * Invoke instructions use {@link #invokeBoundMethod()} instead, which does not look the method up.
+     *
+     * @param methodName the name of the invoked method
+     * @return the frame to execute next
+     * @throws BadProgramError if the operand stack does not contain the arguments
+     * @throws MethodNotFoundException if the method does not exist
+     */
     public Optional<Frame> newFrameForMethodInvocation(Method.Identifier methodName) throws BadProgramError {
-        Method method = program.get(methodName)
-                .orElseThrow(() -> new MethodNotFoundException(methodName));
+        return invoke(program.methodIndex(methodName));
+    }
+
+    /**
+     * Executes the current instruction of the current frame, an invoke instruction, by invoking the method
+     * it was bound to when the program was created (see {@link Program#callee(int, int)}).
+     *
+     * @return the frame to execute next
+     * @throws BadProgramError if the operand stack does not contain the arguments
+     */
+    public Optional<Frame> invokeBoundMethod() throws BadProgramError {
+        Frame currentFrame = frame.orElseThrow();
+        return invoke(program.callee(currentFrame.methodIndex(), currentFrame.programCounter()));
+    }
 
-        Frame newFrame = new Frame(method, frame.orElse(null));
+    /**
+     * Invokes a method, popping its arguments from the operand stack of the current frame.
+     * An invocation in tail position (see {@link Method#isTailCall(int)}) replaces the current frame instead of
+     * adding a frame to the chain of invokers, and a method calling itself in tail position reuses its frame,
+     * so tail-recursive loops run in a constant number of frames.
+     * New frames are taken from the frames recycled by earlier returns, if any.
+     */
+    private Optional<Frame> invoke(int methodIndex) throws BadProgramError {
+        Method method = program.method(methodIndex);
 
-        if (frame.isPresent()) {
+        MemoCache.Key memoKey = null;
+        if (memoCache != null && frame.isPresent() && program.isPure(method)) {
             Frame currentFrame = frame.get();
-            // the order of arguments is important
-            for (Variable.Identifier var : newFrame.method().arguments()) {
-                int value = currentFrame.pop();
-                Variable variable = newFrame.arguments().get(var)
-                        .orElseThrow(() -> new AssertionError("Variable " + var + " not found (can never happen)"));
-                variable.store(value);
+            int argumentCount = method.arguments().size();
+            // with too few arguments, the invocation fails below as usual
+            if (currentFrame.stackSize() >= argumentCount) {
+                int[] arguments = new int[argumentCount];
+                for (int slot = 0; slot < argumentCount; slot++)
+                    arguments[slot] = currentFrame.peek(slot);
+                memoKey = new MemoCache.Key(method, arguments);
+                OptionalInt cached = memoCache.lookup(memoKey);
+                if (cached.isPresent()) {
+                    for (int slot = 0; slot < argumentCount; slot++)
+                        currentFrame.pop();
+                    currentFrame.push(cached.getAsInt());
+                    return currentFrame.advance().asOptional();
+                }
             }
-            // no need to initialise local variables as it is already done
-            // in the constructor of Frame
-            // Local variables do not have a default value of 0. The default value is empty Optional.
         }
-        return Optional.of(newFrame);
+
+        if (frame.isEmpty()) {
+            Frame mainFrame = framePool.acquire(method, methodIndex, program.stackCapacity(methodIndex), null);
+            if (Events.recorderStarted() && InvokeEvent.TYPE.isEnabled())
+                InvokeEvent.emit(method.name().toString(), mainFrame.depth());
+            return mainFrame.asOptional();
+        }
+
+        if (jit != null) {
+            CompiledMethod compiled = jit.onInvoke(methodIndex);
+            if (compiled != null && invokeCompiled(compiled, methodIndex, memoKey))
+                return frame.get().advance().asOptional();
+        }
+
+        Frame currentFrame = frame.get();
+        int argumentCount = method.arguments().size();
+        Frame newFrame;
+        if (currentFrame.memoKey() == null && currentFrame.method().isTailCall(currentFrame.programCounter())) {
+            // tail call: the current frame has nothing left to do but return the value of the invoked method,
+            // so the invoked method replaces it and returns directly to its invoker
+            if (method == currentFrame.method()) {
+                newFrame = currentFrame.restart(argumentCount);
+                recycledFrame = currentFrame;
+            } else {
+                newFrame = framePool.acquire(method, methodIndex, program.stackCapacity(methodIndex),
+                        currentFrame.invoker().orElse(null));
+                for (int slot = 0; slot < argumentCount; slot++)
+                    newFrame.store(slot, currentFrame.pop());
+                framePool.release(currentFrame);
+                recycledFrame = currentFrame;
+            }
+        } else {
+            newFrame = framePool.acquire(method, methodIndex, program.stackCapacity(methodIndex), currentFrame);
+            // the order of arguments is important: the arguments take the first slots in declaration order
+            for (int slot = 0; slot < argumentCount; slot++)
+                newFrame.store(slot, currentFrame.pop());
+        }
+        // Local variables do not have a default value of 0. Their slots start unassigned.
+        newFrame.setMemoKey(memoKey);
+        listener.onInvoke(newFrame);
+        if (Events.recorderStarted() && InvokeEvent.TYPE.isEnabled())
+            InvokeEvent.emit(method.name().toString(), newFrame.depth());
+        return newFrame.asOptional();
+    }
+
+    /**
+     * Invokes a compiled method, replacing its arguments on the operand stack of the current frame by the returned value.
+     * The listener is not notified of the invocation and return, and an error of the compiled method is reported
+     * in the frame of its invoker.
+     *
+     * @return true if the method returned, false if the invocation must be executed by the interpreter instead:
+     * the arguments are missing (the interpreter reports the error) or the compiled code overflowed the JVM stack
+     * (the method is deoptimized: compiled methods do not print, so executing the invocation again is unnoticeable)
+     */
+    private boolean invokeCompiled(CompiledMethod compiled, int methodIndex, MemoCache.Key memoKey) throws BadProgramError {
+        Frame currentFrame = frame.orElseThrow();
+        int argumentCount = program.method(methodIndex).arguments().size();
+        if (currentFrame.stackSize() < argumentCount)
+            return false;
+        if (jitArguments.length < argumentCount)
+            jitArguments = new int[argumentCount];
+        for (int slot = 0; slot < argumentCount; slot++)
+            jitArguments[slot] = currentFrame.peek(slot);
+
+        int value;
+        try {
+            value = compiled.invoke(jitArguments);
+        } catch (StackOverflowError e) {
+            jit.deoptimize(methodIndex);
+            return false;
+        } catch (ArithmeticException ex) {
+            throw new BadProgramError(ex.toString());
+        }
+        for (int slot = 0; slot < argumentCount; slot++)
+            currentFrame.pop();
+        currentFrame.push(value);
+        if (memoKey != null)
+            memoCache.put(memoKey, value);
+        return true;
+    }
+
+    /**
+     * Executes the current instruction of a frame, a branch taken, by jumping to its branch target.
+     * With the JIT engine, a backward branch is counted as an iteration of the loop it closes, and once the loop
+     * is hot the rest of the method is executed in compiled code, from the values of the variables of the frame:
+     * the method then returns to its invoker.
+     *
+     * @param branchingFrame the current frame
+     * @return the frame to execute next
+     * @throws BadProgramError if the compiled code fails
+     */
+    public Optional<Frame> branch(Frame branchingFrame) throws BadProgramError {
+        int branch = branchingFrame.programCounter();
+        branchingFrame.branch();
+        int header = branchingFrame.programCounter();
+        if (jit != null && header <= branch && branchingFrame.stackSize() == 0) {
+            CompiledMethod loop = jit.onBackEdge(branchingFrame.methodIndex(), branch, header);
+            if (loop != null)
+                return enterCompiledLoop(branchingFrame, loop);
+        }
+        return branchingFrame.asOptional();
+    }
+
+    /**
+     * Continues the method of a frame at a loop header in compiled code (on-stack replacement), returning
+     * its value to the invoker of the frame. If the compiled code overflows the JVM stack, the method is
+     * deoptimized and the frame, which compiled code does not modify, continues in the interpreter.
+     */
+    private Optional<Frame> enterCompiledLoop(Frame loopFrame, CompiledMethod loop) throws BadProgramError {
+        int slotCount = loopFrame.method().slotCount();
+        if (jitArguments.length < slotCount)
+            jitArguments = new int[slotCount];
+        // the values of unassigned variables are never read by the compiled code
+        for (int slot = 0; slot < slotCount; slot++)
+            jitArguments[slot] = loopFrame.load(slot);
+
+        int value;
+        try {
+            value = loop.invoke(jitArguments);
+        } catch (StackOverflowError e) {
+            jit.deoptimize(loopFrame.methodIndex());
+            return loopFrame.asOptional();
+        } catch (ArithmeticException ex) {
+            throw new BadProgramError(ex.toString());
+        }
+        return returnFromMethodInvocation(loopFrame, value);
+    }
+
+    /**
+     * Returns from the method of the given frame, passing the value to its invoker.
+     * The returning frame is recycled for later invocations and must not be used afterwards.
+     *
+     * @param returningFrame the frame of the returning method
+     * @param value the returned value
+     * @return the invoker frame, advanced past the invoke instruction (empty when "main" returns)
+     */
+    public Optional<Frame> returnFromMethodInvocation(Frame returningFrame, int value) {
+        listener.onReturn(returningFrame, value);
+        if (Events.recorderStarted() && ReturnEvent.TYPE.isEnabled())
+            ReturnEvent.emit(returningFrame.method().name().toString(), returningFrame.depth(), value);
+        if (returningFrame.memoKey() != null && memoCache != null)
+            memoCache.put(returningFrame.memoKey(), value);
+        Optional<Frame> optionalInvoker = returningFrame.invoker();
+        framePool.release(returningFrame);
+        recycledFrame = returningFrame;
+        if (optionalInvoker.isPresent()) {
+            Frame invoker = optionalInvoker.get();
+            invoker.push(value);
+            invoker.advance();
+        }
+        return optionalInvoker;
     }
 
 
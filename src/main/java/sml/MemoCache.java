@@ -0,0 +1,125 @@
+package sml;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+
+/**
+ * <p>A bounded cache of the values returned by pure methods, keyed by the method and its argument values.</p>
+ * When the cache is full, adding a value evicts either the least recently used entry ({@link Eviction#LRU})
+ * or the oldest entry ({@link Eviction#FIFO}). The cache counts the lookups that found a value (hits)
+ * and those that did not (misses).
+ * <p>
+ * A cache belongs to one machine and is not safe for use by several threads.
+ *
+ * @author Queenie Lee
+ */
+public final class MemoCache {
+
+    /**
+     * The entry evicted when a value is added to a full cache.
+     */
+    public enum Eviction { LRU, FIFO }
+
+    /**
+     * The invocation of a method with the given argument values (in declaration order).
+     * Methods are compared by identity, as a method is only equal to itself within a program.
+     */
+    record Key(Method method, int[] arguments) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && method == key.method && Arrays.equals(arguments, key.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(method) + Arrays.hashCode(arguments);
+        }
+
+        @Override
+        public String toString() {
+            return method.name() + Arrays.toString(arguments);
+        }
+    }
+
+    private final int capacity;
+    private final Eviction eviction;
+    private final LinkedHashMap<Key, Integer> entries;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity the maximum number of values in the cache
+     * @param eviction the entry evicted when the cache is full
+     */
+    public MemoCache(int capacity, Eviction eviction) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity of a memo cache must be positive: " + capacity);
+        this.capacity = capacity;
+        this.eviction = Objects.requireNonNull(eviction);
+        // an access-ordered map keeps its entries from least to most recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, eviction == Eviction.LRU) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+                return size() > MemoCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the value cached for the invocation, counting a hit or a miss.
+     *
+     * @param key the invocation
+     * @return the optional value (empty if the invocation is not in the cache)
+     */
+    OptionalInt lookup(Key key) {
+        Integer value = entries.get(key);
+        if (value == null) {
+            misses++;
+            return OptionalInt.empty();
+        }
+        hits++;
+        return OptionalInt.of(value);
+    }
+
+    void put(Key key, int value) {
+        entries.put(key, value);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Eviction eviction() {
+        return eviction;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Removes all values and resets the counters.
+     */
+    public void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoCache: " + size() + "/" + capacity + " " + eviction + ", " + hits + " hits, " + misses + " misses";
+    }
+}
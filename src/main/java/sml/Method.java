@@ -1,11 +1,13 @@
 package sml;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import sml.instruction.InvokeInstruction;
+import sml.instruction.ReturnInstruction;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * <p>A piece of code called using a name starting with an <b>@</b> label.</p>
@@ -40,8 +42,29 @@ public class Method {
     private final Identifier name;
     private final List<Variable.Identifier> arguments;
     private final Set<Variable.Identifier> localVariables;
+    /**
+     * Every argument and local variable has a dense slot index: the arguments take the first slots
+     * in declaration order, followed by the local variables in order of their first appearance.
+     */
+    private final List<Variable.Identifier> slotVariables;
+    private final SymbolTable<Variable.Identifier, Integer> slots;
     private final List<Instruction> instructions;
+    /**
+     * The slots of the variables of each instruction, in the order of {@link Instruction#variables()},
+     * resolved once from their names so that instructions access variables without any lookup.
+     * An instruction object can be shared by several methods, so its slots are kept here rather than in it.
+     */
+    private final int[][] operandSlots;
     private final SymbolTable<Label, Integer> labels;
+    /**
+     * The index of the branch target of each instruction, resolved once from its label.
+     * It is -1 for an instruction that does not branch, or whose label does not exist in the method.
+     */
+    private final int[] branchTargets;
+    /**
+     * The indices of the invoke instructions in tail position, immediately followed by a return instruction.
+     */
+    private final BitSet tailCalls;
 
     /**
      * Constructor: a method with a name, list of arguments and list of instructions
@@ -64,15 +87,27 @@ public class Method {
                             .map(Map.Entry::getKey)
                             .toList());
 
-        this.localVariables = this.instructions.stream()
+        Set<Variable.Identifier> locals = this.instructions.stream()
                 .flatMap(Instruction::variables)
                 .filter(v -> !argumentOccurrences.containsKey(v)) // keep all v (variable.identifiers) where v is not in argumentOccurrences
-                .collect(Collectors.toSet());
+                .collect(Collectors.toCollection(LinkedHashSet::new)); // keeps the order of first appearance for the slots
+        this.localVariables = Collections.unmodifiableSet(locals);
+
+        this.slotVariables = Stream.concat(this.arguments.stream(), this.localVariables.stream()).toList();
+        this.slots = SymbolTable.of(IntStream.range(0, slotVariables.size())
+                .boxed()
+                .collect(Collectors.toMap(slotVariables::get, idx -> idx)));
 
         // must contain at least one instruction (at least a return instruction)
         if (this.instructions.isEmpty())
             throw new IllegalArgumentException("No instructions found");
 
+        this.operandSlots = this.instructions.stream()
+                .map(instruction -> instruction.variables()
+                        .mapToInt(v -> slots.get(v).orElseThrow())
+                        .toArray())
+                .toArray(int[][]::new);
+
         this.labels = SymbolTable.of(IntStream.range(0, this.instructions.size())
                 .mapToObj(idx -> this.instructions
                         .get(idx)
@@ -81,6 +116,29 @@ public class Method {
                         .map(label -> Map.entry(label, idx)))
                 .flatMap(s -> s)
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+
+        this.branchTargets = this.instructions.stream()
+                .mapToInt(instruction -> instruction.optionalBranchLabel()
+                        .flatMap(labels::get)
+                        .orElse(-1))
+                .toArray();
+
+        this.tailCalls = new BitSet(this.instructions.size());
+        for (int idx = 0; idx + 1 < this.instructions.size(); idx++) {
+            if (this.instructions.get(idx) instanceof InvokeInstruction
+                    && this.instructions.get(idx + 1) instanceof ReturnInstruction)
+                tailCalls.set(idx);
+        }
+    }
+
+    /**
+     * Computes the maximum depth the operand stack of a frame for this method can reach (see {@link FlowAnalysis}).
+     *
+     * @param argumentCounts the number of arguments of each method invoked by this method
+     * @return the maximum stack depth, or empty if a loop can grow the stack without limit
+     */
+    public OptionalInt maxStackDepth(ToIntFunction<Identifier> argumentCounts) {
+        return FlowAnalysis.of(this, argumentCounts).maxStackDepth();
     }
 
     public Identifier name() {
@@ -103,6 +161,74 @@ public class Method {
         return localVariables;
     }
 
+    /**
+     * Returns the slot indices of the arguments and local variables.
+     *
+     * @return the symbol table from variable to slot index
+     */
+    public SymbolTable<Variable.Identifier, Integer> slots() {
+        return slots;
+    }
+
+    /**
+     * Returns the slot index of an argument or local variable.
+     *
+     * @param identifier the variable
+     * @return the slot index of the variable
+     * @throws VariableNotFoundException if the variable is not used in this method
+     */
+    public int slot(Variable.Identifier identifier) {
+        return slots.get(identifier)
+                .orElseThrow(() -> new VariableNotFoundException(identifier));
+    }
+
+    /**
+     * Returns the slot of a variable of the instruction at the given index, resolved when the method was created.
+     *
+     * @param index index of an instruction of the method
+     * @param operand the position of the variable in the {@link Instruction#variables()} of the instruction
+     * @return the slot index of the variable
+     */
+    public int operandSlot(int index, int operand) {
+        return operandSlots[index][operand];
+    }
+
+    /**
+     * Returns the variable stored in the given slot.
+     *
+     * @param slot slot index
+     * @return the argument or local variable of the slot
+     */
+    public Variable.Identifier slotVariable(int slot) {
+        return slotVariables.get(slot);
+    }
+
+    public int slotCount() {
+        return slotVariables.size();
+    }
+
+    /**
+     * Returns the index of the instruction the instruction at the given index branches to,
+     * resolved from its branch label when the method was created.
+     *
+     * @param index index of an instruction of the method
+     * @return the index of the branch target, or -1 if the instruction does not branch or its label does not exist
+     */
+    public int branchTarget(int index) {
+        return branchTargets[index];
+    }
+
+    /**
+     * Returns whether the instruction at the given index is an invocation in tail position:
+     * the next instruction returns the value of the invoked method, so the invoker has nothing left to do.
+     *
+     * @param index index of an instruction of the method
+     * @return true if the instruction is an invoke instruction followed by a return instruction
+     */
+    public boolean isTailCall(int index) {
+        return tailCalls.get(index);
+    }
+
     /**
      * Returns a string representation of the method.
      *      * It consists of
@@ -0,0 +1,31 @@
+package sml;
+
+/**
+ * <p>The destination of the values printed by an SML program.</p>
+ * The {@link Machine} owns the sink: the print instruction writes to it, and the machine flushes it
+ * when the program ends and when it fails, so that everything printed before a fault is visible.
+ *
+ * @author Queenie Lee
+ */
+public interface OutputSink extends AutoCloseable {
+
+    /**
+     * Writes a value followed by a line separator.
+     *
+     * @param value the value to print
+     */
+    void print(int value);
+
+    /**
+     * Writes any buffered output to its destination.
+     */
+    void flush();
+
+    /**
+     * Flushes the sink and releases its destination.
+     */
+    @Override
+    default void close() {
+        flush();
+    }
+}
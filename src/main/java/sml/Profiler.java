@@ -0,0 +1,334 @@
+package sml;
+
+import sml.instruction.InvokeInstruction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * <p>Profiles the execution of a program by the instruction interpreter.</p>
+ * Set as the listener of a {@link Machine}, the profiler counts the executions of every instruction in a
+ * primitive array per method, indexed by the position of the instruction. The array of the current method is
+ * selected when frames are entered and left, and the machine increments the counts in its profiling loop, so
+ * the cost of an instruction is an array increment and a counter increment, without a listener call.
+ * Everything else is derived from these counts when the report is written:
+ * <ul>
+ *   <li>the executions of each opcode</li>
+ *   <li>the exclusive instruction count of each method (the instructions of its own frames)</li>
+ *   <li>the hits of each label (the executions of the labelled instruction)</li>
+ *   <li>the calls of each invoke instruction (including the calls answered by the memo cache)</li>
+ * </ul>
+ * The profiler also follows the frames on invocations and returns, to measure the calls, the inclusive
+ * instruction count and the inclusive and exclusive wall time of each method, and the maximum frame depth.
+ * The inclusive measures of a recursive method count its outermost frame only. An invocation in tail position
+ * replaces the frame of its invoker, whose measures end there.
+ * <p>
+ * Instructions executed in compiled code by the JIT engine are not observed, and the other engines
+ * do not notify listeners. A profiler observes one machine at a time, from the start of the program.
+ *
+ * @author Queenie Lee
+ */
+public final class Profiler implements ExecutionListener {
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The executions of each instruction of each method, by method index (null for the methods not executed).
+     */
+    private long[][] instructionCounts = new long[0][];
+    private Method[] methods = new Method[0];
+    private long[] calls = new long[0];
+    private long[] inclusiveInstructions = new long[0];
+    private long[] inclusiveNanos = new long[0];
+    private long[] exclusiveNanos = new long[0];
+    /**
+     * The number of frames of each method on the stack of frames, so that recursive frames are counted once.
+     */
+    private int[] activeFrames = new int[0];
+    /**
+     * The number of instructions executed, incremented by the machine.
+     */
+    long executed;
+    /**
+     * The instruction counts of the method of the frame on top of the stack of frames, incremented by the machine.
+     */
+    long[] counts;
+
+    /**
+     * The stack of frames: each frame with its method, and the instruction count and time it was entered at.
+     */
+    private Frame[] frames = new Frame[INITIAL_CAPACITY];
+    private int[] frameMethods = new int[INITIAL_CAPACITY];
+    private long[] startInstructions = new long[INITIAL_CAPACITY];
+    private long[] startNanos = new long[INITIAL_CAPACITY];
+    private int depth;
+    private int maxDepth;
+    /**
+     * The time the frame on top of the stack started running, entered or resumed.
+     */
+    private long resumedNanos;
+
+    @Override
+    public void onInvoke(Frame frame) {
+        // a frame replaced by an invocation in tail position is left without a return event
+        Frame invoker = frame.invoker().orElse(null);
+        while (depth > 0 && frames[depth - 1] != invoker)
+            exit();
+        enter(frame, frame.methodIndex());
+    }
+
+    @Override
+    public void onReturn(Frame frame, int value) {
+        while (depth > 0 && frames[depth - 1] != frame)
+            exit();
+        if (depth > 0)
+            exit();
+    }
+
+    @Override
+    public void onFault(Frame frame, BadProgramError error) {
+        while (depth > 0)
+            exit();
+    }
+
+    private void addMethod(Method method, int methodIndex) {
+        if (methodIndex >= instructionCounts.length) {
+            int capacity = Math.max(methodIndex + 1, instructionCounts.length * 2);
+            instructionCounts = Arrays.copyOf(instructionCounts, capacity);
+            methods = Arrays.copyOf(methods, capacity);
+            calls = Arrays.copyOf(calls, capacity);
+            inclusiveInstructions = Arrays.copyOf(inclusiveInstructions, capacity);
+            inclusiveNanos = Arrays.copyOf(inclusiveNanos, capacity);
+            exclusiveNanos = Arrays.copyOf(exclusiveNanos, capacity);
+            activeFrames = Arrays.copyOf(activeFrames, capacity);
+        }
+        methods[methodIndex] = method;
+        instructionCounts[methodIndex] = new long[method.instructions().size()];
+    }
+
+    private void enter(Frame frame, int methodIndex) {
+        if (methodIndex >= instructionCounts.length || instructionCounts[methodIndex] == null)
+            addMethod(frame.method(), methodIndex);
+        counts = instructionCounts[methodIndex];
+        long now = System.nanoTime();
+        if (depth > 0)
+            exclusiveNanos[frameMethods[depth - 1]] += now - resumedNanos;
+        resumedNanos = now;
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+            frameMethods = Arrays.copyOf(frameMethods, depth * 2);
+            startInstructions = Arrays.copyOf(startInstructions, depth * 2);
+            startNanos = Arrays.copyOf(startNanos, depth * 2);
+        }
+        frames[depth] = frame;
+        frameMethods[depth] = methodIndex;
+        startInstructions[depth] = executed;
+        startNanos[depth] = now;
+        depth++;
+        maxDepth = Math.max(maxDepth, depth);
+        calls[methodIndex]++;
+        activeFrames[methodIndex]++;
+    }
+
+    private void exit() {
+        long now = System.nanoTime();
+        depth--;
+        int methodIndex = frameMethods[depth];
+        frames[depth] = null;
+        exclusiveNanos[methodIndex] += now - resumedNanos;
+        resumedNanos = now;
+        if (--activeFrames[methodIndex] == 0) {
+            inclusiveInstructions[methodIndex] += executed - startInstructions[depth];
+            inclusiveNanos[methodIndex] += now - startNanos[depth];
+        }
+        if (depth > 0)
+            counts = instructionCounts[frameMethods[depth - 1]];
+    }
+
+    /**
+     * The measures of a method, computed when a report is written.
+     */
+    private record MethodProfile(String name, long calls, long exclusiveInstructions, long inclusiveInstructions,
+                                 long exclusiveNanos, long inclusiveNanos) {
+    }
+
+    /**
+     * The executions of an opcode, a label or an invoke instruction, named after it.
+     */
+    private record Count(String name, long count) {
+    }
+
+    private List<MethodProfile> methodProfiles() {
+        List<MethodProfile> result = new ArrayList<>();
+        for (int idx = 0; idx < methods.length; idx++) {
+            if (methods[idx] == null)
+                continue;
+            long exclusive = Arrays.stream(instructionCounts[idx]).sum();
+            result.add(new MethodProfile(methods[idx].name().toString(), calls[idx], exclusive,
+                    inclusiveInstructions[idx], exclusiveNanos[idx], inclusiveNanos[idx]));
+        }
+        result.sort(Comparator.comparingLong(MethodProfile::exclusiveInstructions).reversed()
+                .thenComparing(MethodProfile::name));
+        return result;
+    }
+
+    private List<Count> opcodeCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        forEachInstruction((method, pc, count) ->
+                counts.merge(method.instructions().get(pc).opcode(), count, Long::sum));
+        return sorted(counts);
+    }
+
+    /**
+     * Returns the hits of each label, named "method.label".
+     */
+    private List<Count> labelCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        forEachInstruction((method, pc, count) -> method.instructions().get(pc).optionalLabel()
+                .ifPresent(label -> counts.put(method.name() + "." + label, count)));
+        return sorted(counts);
+    }
+
+    /**
+     * Returns the calls of each invoke instruction, named "method:index -> invoked method".
+     */
+    private List<Count> invokeCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        forEachInstruction((method, pc, count) -> {
+            if (method.instructions().get(pc) instanceof InvokeInstruction invoke)
+                counts.put(method.name() + ":" + pc + " -> " + invoke.methodName(), count);
+        });
+        return sorted(counts);
+    }
+
+    private interface InstructionCountConsumer {
+        void accept(Method method, int pc, long count);
+    }
+
+    /**
+     * Calls the consumer for each instruction executed at least once.
+     */
+    private void forEachInstruction(InstructionCountConsumer consumer) {
+        for (int idx = 0; idx < methods.length; idx++) {
+            if (methods[idx] == null)
+                continue;
+            for (int pc = 0; pc < instructionCounts[idx].length; pc++) {
+                if (instructionCounts[idx][pc] > 0)
+                    consumer.accept(methods[idx], pc, instructionCounts[idx][pc]);
+            }
+        }
+    }
+
+    private static List<Count> sorted(Map<String, Long> counts) {
+        return counts.entrySet().stream()
+                .map(entry -> new Count(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparingLong(Count::count).reversed().thenComparing(Count::name))
+                .toList();
+    }
+
+    public long executedInstructions() {
+        return executed;
+    }
+
+    /**
+     * Returns the maximum number of frames on the stack of frames, "main" included.
+     */
+    public int maxFrameDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Writes the report as text: the methods sorted by exclusive instruction count, then the opcodes,
+     * labels and invoke instructions sorted by their number of executions.
+     *
+     * @param out the destination of the report
+     */
+    public void writeText(Appendable out) {
+        try {
+            out.append(String.format("Profile: %d instructions, maximum frame depth %d%n", executed, maxDepth));
+            out.append(String.format("%nMethods:%n%-24s %10s %14s %14s %12s %12s%n",
+                    "method", "calls", "exclusive", "inclusive", "excl. ms", "incl. ms"));
+            for (MethodProfile method : methodProfiles()) {
+                out.append(String.format("%-24s %10d %14d %14d %12.3f %12.3f%n", method.name(), method.calls(),
+                        method.exclusiveInstructions(), method.inclusiveInstructions(),
+                        method.exclusiveNanos() / 1e6, method.inclusiveNanos() / 1e6));
+            }
+            writeCounts(out, "Opcodes", opcodeCounts());
+            writeCounts(out, "Labels", labelCounts());
+            writeCounts(out, "Invoke instructions", invokeCounts());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void writeCounts(Appendable out, String title, List<Count> counts) throws IOException {
+        out.append(String.format("%n%s:%n", title));
+        for (Count count : counts) {
+            double percent = executed == 0 ? 0 : 100.0 * count.count() / executed;
+            out.append(String.format("%-40s %14d %6.2f%%%n", count.name(), count.count(), percent));
+        }
+    }
+
+    /**
+     * Writes the report as a JSON object, with the same content and order as the text report.
+     * Times are in nanoseconds.
+     *
+     * @param out the destination of the report
+     */
+    public void writeJson(Appendable out) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"instructions\":").append(executed)
+                .append(",\"maxFrameDepth\":").append(maxDepth)
+                .append(",\"methods\":[");
+        List<MethodProfile> methodProfiles = methodProfiles();
+        for (int idx = 0; idx < methodProfiles.size(); idx++) {
+            MethodProfile method = methodProfiles.get(idx);
+            json.append(idx == 0 ? "" : ",")
+                    .append("{\"name\":").append(quote(method.name()))
+                    .append(",\"calls\":").append(method.calls())
+                    .append(",\"exclusiveInstructions\":").append(method.exclusiveInstructions())
+                    .append(",\"inclusiveInstructions\":").append(method.inclusiveInstructions())
+                    .append(",\"exclusiveNanos\":").append(method.exclusiveNanos())
+                    .append(",\"inclusiveNanos\":").append(method.inclusiveNanos())
+                    .append("}");
+        }
+        json.append("]");
+        appendCounts(json, "opcodes", opcodeCounts());
+        appendCounts(json, "labels", labelCounts());
+        appendCounts(json, "invokeInstructions", invokeCounts());
+        json.append("}");
+        try {
+            out.append(json).append(System.lineSeparator());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void appendCounts(StringBuilder json, String key, List<Count> counts) {
+        json.append(",").append(quote(key)).append(":[");
+        for (int idx = 0; idx < counts.size(); idx++) {
+            json.append(idx == 0 ? "" : ",")
+                    .append("{\"name\":").append(quote(counts.get(idx).name()))
+                    .append(",\"count\":").append(counts.get(idx).count())
+                    .append("}");
+        }
+        json.append("]");
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                default -> {
+                    if (c < 0x20)
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    else
+                        quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
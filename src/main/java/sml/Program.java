@@ -0,0 +1,214 @@
+package sml;
+
+import sml.bytecode.LinkedProgram;
+import sml.bytecode.Linker;
+import sml.closure.ClosureCompiler;
+import sml.closure.ClosureProgram;
+import sml.instruction.InvokeInstruction;
+import sml.register.RegisterProgram;
+import sml.register.RegisterTranslator;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <p>A translated program: its methods, looked up by name.</p>
+ * A program is immutable and holds no execution state (frames, operand stacks and variable values belong to
+ * the {@link Machine} executing it). One program can therefore be executed by several machines at the same time,
+ * on different threads, without translating it again for each execution.
+ * The linked form of the program used by the bytecode engine, the closures of the closure engine
+ * and the register code of the register engine are created on first use and then shared as well.
+ * <p>
+ * Creating a program binds every invoke instruction to the index of the method it invokes, and checks
+ * that the label of every branch exists in its method (the branch targets are resolved by {@link Method}).
+ * A missing method or label is therefore reported before the program runs, and the {@link Machine} executes
+ * invocations and branches without looking any name up. Once the invocations are bound, the maximum operand
+ * stack depth of each method is computed with the number of arguments each invocation pops, so that
+ * the frames of the method are created with the right stack capacity.
+ *
+ * @author Queenie Lee
+ */
+public final class Program {
+    private final List<Method> methods;
+    private final SymbolTable<Method.Identifier, Method> table;
+    private final SymbolTable<Method.Identifier, Integer> indices;
+    /**
+     * The index of the method invoked by each instruction of each method, or -1 if the instruction is not an invocation.
+     */
+    private final int[][] callees;
+    private final int[] stackCapacities;
+    private final Set<Method.Identifier> pureMethods;
+
+    private volatile LinkedProgram linked;
+    private volatile ClosureProgram closures;
+    private volatile Optional<RegisterProgram> registers;
+
+    /**
+     * @param methods the methods of the program
+     * @throws IllegalStateException if two methods have the same name
+     * @throws MethodNotFoundException if an invoked method does not exist
+     * @throws LabelNotFoundException if a branch label does not exist in its method
+     */
+    public Program(Collection<Method> methods) {
+        this.methods = List.copyOf(methods);
+        this.table = SymbolTable.of(this.methods.stream()
+                .collect(Collectors.toMap(Method::name, m -> m)));
+        this.indices = SymbolTable.of(IntStream.range(0, this.methods.size())
+                .boxed()
+                .collect(Collectors.toMap(idx -> this.methods.get(idx).name(), idx -> idx)));
+        this.callees = this.methods.stream()
+                .map(this::bind)
+                .toArray(int[][]::new);
+        this.stackCapacities = this.methods.stream()
+                .mapToInt(m -> m.maxStackDepth(this::argumentCount).orElse(Frame.DEFAULT_STACK_CAPACITY))
+                .toArray();
+        this.pureMethods = PurityAnalysis.pureMethods(this.methods);
+    }
+
+    private int[] bind(Method method) {
+        List<Instruction> instructions = method.instructions();
+        int[] result = new int[instructions.size()];
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            Instruction instruction = instructions.get(pc);
+            result[pc] = instruction instanceof InvokeInstruction invoke ? methodIndex(invoke.methodName()) : -1;
+            if (method.branchTarget(pc) < 0 && instruction.optionalBranchLabel().isPresent())
+                throw new LabelNotFoundException(instruction.optionalBranchLabel().get(), method);
+        }
+        return result;
+    }
+
+    public List<Method> methods() {
+        return methods;
+    }
+
+    /**
+     * Returns the method with the given name.
+     *
+     * @param name the method name
+     * @return the optional method (empty if there is no method with this name)
+     */
+    public Optional<Method> method(Method.Identifier name) {
+        return table.get(name);
+    }
+
+    /**
+     * Returns the index of the method with the given name, its position in {@link #methods()}.
+     *
+     * @param name the method name
+     * @return the index of the method
+     * @throws MethodNotFoundException if there is no method with this name
+     */
+    public int methodIndex(Method.Identifier name) {
+        return indices.get(name)
+                .orElseThrow(() -> new MethodNotFoundException(name));
+    }
+
+    public Method method(int index) {
+        return methods.get(index);
+    }
+
+    /**
+     * Returns the index of the method invoked by an instruction, bound when the program was created.
+     *
+     * @param methodIndex the index of the method containing the instruction
+     * @param pc the index of the instruction in the method
+     * @return the index of the invoked method, or -1 if the instruction is not an invoke instruction
+     */
+    public int callee(int methodIndex, int pc) {
+        return callees[methodIndex][pc];
+    }
+
+    /**
+     * Returns the number of arguments of the method with the given name.
+     *
+     * @param name the method name
+     * @return the number of arguments
+     * @throws MethodNotFoundException if there is no method with this name
+     */
+    public int argumentCount(Method.Identifier name) {
+        return method(methodIndex(name)).arguments().size();
+    }
+
+    /**
+     * Returns the capacity of the operand stack of the frames of a method: its maximum stack depth
+     * (see {@link Method#maxStackDepth(java.util.function.ToIntFunction)}), or
+     * {@link Frame#DEFAULT_STACK_CAPACITY} if a loop can grow the stack without limit.
+     *
+     * @param methodIndex the index of the method
+     * @return the stack capacity
+     */
+    public int stackCapacity(int methodIndex) {
+        return stackCapacities[methodIndex];
+    }
+
+    /**
+     * Returns whether the method is pure: it does not print and only invokes pure methods,
+     * so its result only depends on its argument values (see {@link PurityAnalysis}).
+     *
+     * @param method a method of the program
+     * @return true if the method is pure
+     */
+    public boolean isPure(Method method) {
+        return pureMethods.contains(method.name());
+    }
+
+    /**
+     * Returns the program linked into the bytecode format, linking it the first time.
+     *
+     * @return the linked program
+     * @throws MethodNotFoundException if "main" or an invoked method does not exist
+     * @throws LabelNotFoundException if a branch label does not exist in its method
+     */
+    public LinkedProgram linked() {
+        LinkedProgram result = linked;
+        if (result == null) {
+            // linking twice on a race is harmless: both results are equal and immutable
+            result = Linker.link(methods);
+            linked = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the program compiled into closures, compiling it the first time.
+     *
+     * @return the compiled program
+     * @throws MethodNotFoundException if "main" does not exist
+     */
+    public ClosureProgram closures() {
+        ClosureProgram result = closures;
+        if (result == null) {
+            // compiling twice on a race is harmless: the nodes of each result are never modified once published
+            result = ClosureCompiler.compile(this);
+            closures = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the program translated into register code, translating it the first time.
+     *
+     * @return the translated program, or empty if a method cannot be translated (see {@link RegisterTranslator})
+     * @throws MethodNotFoundException if "main" does not exist
+     */
+    public Optional<RegisterProgram> registers() {
+        Optional<RegisterProgram> result = registers;
+        if (result == null) {
+            // translating twice on a race is harmless: the register code is never modified once published
+            result = RegisterTranslator.translate(this);
+            registers = result;
+        }
+        return result;
+    }
+
+    /**
+     * String representation of the program, in the form "[name1 -> method1, ..., namen -> methodn]".
+     *
+     * @return pretty formatted version of the code.
+     */
+    @Override
+    public String toString() {
+        return table.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package sml;
+
+import sml.instruction.*;
+import sml.optimizer.FusedInstruction;
+
+import java.util.*;
+
+/**
+ * <p>Finds the pure methods of a program.</p>
+ * A method is pure if executing it has no effect other than returning a value, so that its result depends
+ * only on its argument values. It must not print and must only invoke pure methods. Load, store, push,
+ * calculation, comparison, goto and return instructions only change the frame of the method, so they are pure.
+ * An invocation of a method missing from the program, or any instruction of another class, makes a method impure.
+ * <p>
+ * The analysis starts from the methods that are impure by themselves and marks their invokers impure,
+ * transitively. Every method never reached this way is pure, including recursive ones.
+ *
+ * @author Queenie Lee
+ */
+final class PurityAnalysis {
+
+    private PurityAnalysis() {
+    }
+
+    /**
+     * Returns the names of the pure methods of the program.
+     *
+     * @param methods the methods of the program (with distinct names)
+     * @return the names of the pure methods
+     */
+    static Set<Method.Identifier> pureMethods(Collection<Method> methods) {
+        Map<Method.Identifier, List<Method.Identifier>> invokers = new HashMap<>();
+        Set<Method.Identifier> names = new HashSet<>();
+        for (Method method : methods)
+            names.add(method.name());
+
+        Deque<Method.Identifier> impure = new ArrayDeque<>();
+        for (Method method : methods) {
+            boolean pure = true;
+            for (Instruction instruction : method.instructions()) {
+                switch (instruction) {
+                    case InvokeInstruction invoke when names.contains(invoke.methodName()) ->
+                            invokers.computeIfAbsent(invoke.methodName(), k -> new ArrayList<>()).add(method.name());
+                    case LoadInstruction l -> { }
+                    case StoreInstruction s -> { }
+                    case PushInstruction p -> { }
+                    case CalculateInstruction c -> { }
+                    case ComparisonInstruction c -> { }
+                    case GotoInstruction g -> { }
+                    case ReturnInstruction r -> { }
+                    // superinstructions only fuse loads, pushes, calculations, comparisons and stores
+                    case FusedInstruction f -> { }
+                    // print, invoking a missing method, or an instruction class unknown to the analysis
+                    default -> pure = false;
+                }
+            }
+            if (!pure)
+                impure.add(method.name());
+        }
+
+        Set<Method.Identifier> pureMethods = new HashSet<>(names);
+        while (!impure.isEmpty()) {
+            Method.Identifier name = impure.poll();
+            if (pureMethods.remove(name))
+                impure.addAll(invokers.getOrDefault(name, List.of()));
+        }
+        return Set.copyOf(pureMethods);
+    }
+}
@@ -1,7 +1,13 @@
 package sml;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Component;
@@ -9,6 +15,11 @@ import org.springframework.stereotype.Component;
 /**
  * <p>Creates the SML program's instructions</p>
  * The general form of an SML instruction is: [label:] opcode parameter-list
+ * <p>
+ * The instruction classes are inspected once, when the factory is created. Each operation code is mapped to
+ * the builders of its instruction class (one per number of parameters), and each builder is a method handle
+ * that converts the parameters and invokes the constructor. Creating an instruction is then one table lookup
+ * and one call, with no reflection.
  * @author Queenie Lee
  */
 @Component("instruction-factory")
@@ -17,22 +28,44 @@ public class SMLInstructionFactory implements InstructionFactory {
     /**
      * The public variable used in the instruction classes, representing the actual instruction name (operation code)
      */
-    private final String OP_CODE = "OP_CODE";
+    private static final String OP_CODE = "OP_CODE";
 
     private static final Map<Class<?>, Class<?>> PRIMITIVE_WRAPPERS = Map.of(
             boolean.class, Boolean.class,
             int.class, Integer.class,
             void.class, Void.class);
 
-    private final List<Class<?>> instructionClasses;
+    private static final MethodType BUILDER_TYPE = MethodType.methodType(Instruction.class, Label.class, String[].class);
+
+    /**
+     * Creates an instruction from its label and parameters.
+     */
+    @FunctionalInterface
+    private interface Builder {
+        Instruction build(Label label, String[] parameters) throws BadProgramError;
+    }
+
+    /**
+     * The builders of each operation code, indexed by the number of parameters (without the label).
+     * An entry is null when the instruction class has no constructor with that number of parameters.
+     */
+    private final Map<String, Builder[]> builders;
 
     /**
      * The list of instruction classes is defined in the resources file (beans.xml)
      * @param instructionClasses list of instruction classes used in the SML program
      */
     public SMLInstructionFactory(List<Class<?>> instructionClasses) {
-        this.instructionClasses = instructionClasses;
+        Map<String, Builder[]> table = new HashMap<>();
+        for (Class<?> instructionClass : instructionClasses) {
+            String opcode = opcode(instructionClass);
+            // as before, the first class listed with an operation code is the one that is built
+            if (opcode != null && !table.containsKey(opcode))
+                table.put(opcode, builders(instructionClass));
+        }
+        builders = Map.copyOf(table);
     }
+
     /**
      * Returns a program instruction
      * @param label optional label (can be null)
@@ -42,73 +75,110 @@ public class SMLInstructionFactory implements InstructionFactory {
      */
     @Override
     public Instruction createInstruction(Label label, List<String> programInstruction) throws BadProgramError {
-        Field[] fields;
         String opcode = programInstruction.removeFirst();
 
         if (opcode.isEmpty())
             return null;
 
-        for (Class<?> instruction : instructionClasses) {
-            fields = instruction.getDeclaredFields();
-            for (Field field : fields) {
-                field.setAccessible(true);
-                if (field.getName().equals(OP_CODE)) {
-                    String OP_CODEval;
-                    try {
-                        OP_CODEval = String.valueOf(field.get(null));
-                    } catch (IllegalArgumentException | IllegalAccessException e)
-                    {
-                        // Should not happen, as all Instruction implementations must have this field
-                        throw new RuntimeException(e);
-                    }
-                    if (OP_CODEval.equals(opcode)){
-                        return buildInstruction(label, programInstruction, instruction);
-                    }
-                }
-            }
+        Builder[] candidates = builders.get(opcode);
+        if (candidates == null)
+            return null;
+
+        int parameterCount = programInstruction.size();
+        if (parameterCount >= candidates.length || candidates[parameterCount] == null) {
+            throw new BadProgramError("There is no constructor that matches the number of arguments you are " +
+                    "trying to include in this program line. ");
         }
-        return null;
+        return candidates[parameterCount].build(label, programInstruction.toArray(String[]::new));
     }
 
     /**
-     * Returns an instruction subclass
-     * @param label optional label (can be null)
-     * @param parameterList list of parameters
-     * @param className instruction class to be created
-     * @return an instruction subclass
-     * @throws BadProgramError if no constructors match the number of arguments, the arguments do not match the
-     * required parameter type, or null arguments are passed into non-null parameters
+     * Returns the value of the operation code field of an instruction class
+     * @param instructionClass the instruction class
+     * @return the operation code, or null if the class does not declare one
      */
-    private static Instruction buildInstruction(Label label, List<String> parameterList, Class<?> className)
-            throws BadProgramError {
-
-        Constructor<?> constructor = null;
-        int numConstructorParams = parameterList.size() + 1;
-        for (Constructor<?> candidateConstructor : className.getConstructors()) {
-            if (candidateConstructor.getParameterCount() == numConstructorParams) {
-                constructor = candidateConstructor;
-            }
+    private static String opcode(Class<?> instructionClass) {
+        try {
+            Field field = instructionClass.getDeclaredField(OP_CODE);
+            field.setAccessible(true);
+            return String.valueOf(field.get(null));
+        } catch (NoSuchFieldException e) {
+            return null;
+        } catch (IllegalArgumentException | IllegalAccessException e) {
+            // Should not happen, as all Instruction implementations must have this field
+            throw new RuntimeException(e);
         }
-        if (constructor == null) {
-            throw new BadProgramError("There is no constructor that matches the number of arguments you are " +
-                    "trying to include in this program line. ");
+    }
+
+    /**
+     * Returns the builders of an instruction class, one for each number of constructor parameters.
+     * As before, when several public constructors have the same number of parameters the last one is used.
+     */
+    private static Builder[] builders(Class<?> instructionClass) {
+        Constructor<?>[] constructors = instructionClass.getConstructors();
+        int maxParameterCount = Arrays.stream(constructors)
+                .mapToInt(Constructor::getParameterCount)
+                .max()
+                .orElse(0);
+        Builder[] byParameterCount = new Builder[maxParameterCount];
+        for (Constructor<?> constructor : constructors) {
+            int parameterCount = constructor.getParameterCount() - 1;
+            if (parameterCount >= 0)
+                byParameterCount[parameterCount] = builder(instructionClass, constructor);
         }
+        return byParameterCount;
+    }
+
+    /**
+     * Returns a builder that converts each parameter with the constructor of its type that takes a String
+     * (or the valueOf method of the wrapper class for a primitive type) and then invokes the given constructor.
+     */
+    private static Builder builder(Class<?> instructionClass, Constructor<?> constructor) {
+        MethodHandle handle;
         try {
-            Object[] parameters = new Object[numConstructorParams];
-            parameters[0] = label;
-            Class<?>[] paramTypes = constructor.getParameterTypes();
-            for (int i = 1; i < numConstructorParams; i++) {
-                Class<?> paramObjectType = wrap(paramTypes[i]);
-                Constructor<?> stringToParamFunction = paramObjectType.getConstructor(String.class);
-                parameters[i] = stringToParamFunction.newInstance(parameterList.get(i - 1));
-            }
-            return (Instruction) constructor.newInstance(parameters);
-        }
-        catch (Exception e) {
-            throw new BadProgramError("Unable to build the Instruction " + className.getName() + ".\n" +
-                    "It could be the arguments do not match the parameter type required," +
-                    "or null arguments are being passed into a non-null parameter.");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            handle = lookup.unreflectConstructor(constructor);
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            MethodHandle[] parsers = new MethodHandle[parameterTypes.length - 1];
+            for (int i = 1; i < parameterTypes.length; i++)
+                parsers[i - 1] = parser(lookup, parameterTypes[i]);
+            handle = MethodHandles.filterArguments(handle, 1, parsers)
+                    .asSpreader(String[].class, parsers.length)
+                    .asType(BUILDER_TYPE);
+        } catch (ReflectiveOperationException | IllegalArgumentException | WrongMethodTypeException e) {
+            // reported when the instruction is built, as the reflective factory did
+            return (label, parameters) -> {
+                throw unableToBuild(instructionClass);
+            };
         }
+
+        MethodHandle builder = handle;
+        return (label, parameters) -> {
+            try {
+                return (Instruction) builder.invokeExact(label, parameters);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw unableToBuild(instructionClass);
+            }
+        };
+    }
+
+    /**
+     * Returns a method handle converting a String into a value of the given type.
+     */
+    private static MethodHandle parser(MethodHandles.Lookup lookup, Class<?> type) throws ReflectiveOperationException {
+        Class<?> objectType = wrap(type);
+        MethodHandle parser = type.isPrimitive()
+                ? lookup.findStatic(objectType, "valueOf", MethodType.methodType(objectType, String.class))
+                : lookup.findConstructor(objectType, MethodType.methodType(void.class, String.class));
+        return parser.asType(MethodType.methodType(type, String.class));
+    }
+
+    private static BadProgramError unableToBuild(Class<?> instructionClass) {
+        return new BadProgramError("Unable to build the Instruction " + instructionClass.getName() + ".\n" +
+                "It could be the arguments do not match the parameter type required," +
+                "or null arguments are being passed into a non-null parameter.");
     }
 
     private static Class<?> wrap(Class<?> theClass) {
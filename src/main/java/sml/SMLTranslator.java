@@ -1,9 +1,12 @@
 package sml;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import sml.jfr.Events;
+import sml.jfr.TranslationEvent;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -16,9 +19,6 @@ import org.springframework.stereotype.Component;
 @Component("translator")
 public final class SMLTranslator implements TranslatorFactory {
 
-    // line contains the characters in the current line that's not been processed yet
-    private String line = "";
-
     private static class State {
         final Method.Identifier methodName;
         final List<Instruction> instructions;
@@ -46,9 +46,44 @@ public final class SMLTranslator implements TranslatorFactory {
     @Autowired
     private InstructionFactory instructionFactory = null;
 
-    private static final String ITEM_SEPARATOR = ",";
+    public SMLTranslator() {
+    }
+
+    /**
+     * Creates a translator using the given instruction factory, without dependency injection.
+     * @param instructionFactory the factory creating the instructions
+     */
+    SMLTranslator(InstructionFactory instructionFactory) {
+        this.instructionFactory = instructionFactory;
+    }
+
+    private static final char ITEM_SEPARATOR = ',';
     private static final String METHOD_LABEL = "@";
 
+    /**
+     * The number of methods translated together by one task in parallel mode.
+     */
+    private static final int METHODS_PER_TASK = 64;
+
+    private boolean parallel = false;
+
+    /**
+     * Sets whether the methods of a program are translated in parallel.
+     * In parallel mode the source is split at the method headers before it is translated, and groups of methods are
+     * translated on the common ForkJoin pool. The methods are returned in source order, and if several methods
+     * contain errors the error of the first one in the file is reported, as in sequential mode.
+     * The instruction factory must be safe to use from several threads.
+     *
+     * @param parallel true to translate in parallel, false (the default) to translate line by line
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean parallel() {
+        return parallel;
+    }
+
     /**
      * Returns a collection of methods used in the program
      * @param fileName name of the file containing the program text
@@ -57,97 +92,167 @@ public final class SMLTranslator implements TranslatorFactory {
      * @throws BadProgramError if there is an issue within the file program text
      */
     public Collection<Method> readAndTranslate(String fileName) throws IOException, BadProgramError {
+        if (Events.recorderStarted())
+            return readAndTranslateRecorded(fileName);
+        return translateAll(SourceLexer.open(Path.of(fileName)));
+    }
 
-        Collection<Method> methods = new ArrayList<>();
-
-        try (var sc = new Scanner(new File(fileName), StandardCharsets.UTF_8)) {
-            // each iteration processes the contents of line
-            // and reads the next input line into "line"
-            State state = null;
-            while (sc.hasNextLine()) {
-                line = sc.nextLine();
-                String labelString = getLabel();
-                if (labelString != null && labelString.startsWith(METHOD_LABEL)) {
-                    if (state != null)
-                        methods.add(state.createMethod());
-
-                    state = new State(new Method.Identifier(labelString));
-                    for (String s = scan(); !s.isEmpty(); s = scan()) {
-
-                        String variable = s.endsWith(ITEM_SEPARATOR)
-                                ? s.substring(0, s.length() - 1).trim()
-                                : s;
-
-                        state.addArgument(variable);
-
-                        if (!s.endsWith(ITEM_SEPARATOR))
-                            break;
-                    }
-                }
-                else {
-                    Label label = labelString != null
-                            ? new Label(labelString)
-                            : null;
-
-                    Instruction instruction = getInstruction(label);
-                    if (instruction != null) {
-                        if (state != null)
-                            state.instructions.add(instruction);
-                        else
-                            throw new IllegalArgumentException("Instructions cannot appear outside methods " + labelString + " " + instruction);
-                    }
-                }
-            }
-            if (state != null)
-                methods.add(state.createMethod());
-        }
+    /**
+     * Translates the file like {@link #readAndTranslate(String)}, timing the read and translate phases with
+     * Flight Recorder events.
+     */
+    private Collection<Method> readAndTranslateRecorded(String fileName) throws IOException, BadProgramError {
+        TranslationEvent read = new TranslationEvent();
+        read.begin();
+        SourceLexer lexer = SourceLexer.open(Path.of(fileName));
+        commit(read, fileName, "read", 0);
+
+        TranslationEvent translation = new TranslationEvent();
+        translation.begin();
+        Collection<Method> methods = translateAll(lexer);
+        commit(translation, fileName, "translate", methods.size());
+        return methods;
+    }
+
+    private Collection<Method> translateAll(SourceLexer lexer) throws BadProgramError {
+        if (parallel)
+            return translateInParallel(lexer);
+
+        List<Method> methods = new ArrayList<>();
+        translate(lexer, methods);
         return methods;
     }
 
     /**
-     * Translates the current line into an instruction with the given label
-     * <p>
-     * The input line should consist of a single SML instruction,
-     * with its label already removed.
+     * Ends a translation phase, recording it if Java Flight Recorder records translation events.
+     */
+    private void commit(TranslationEvent event, String fileName, String phase, int methodCount) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = fileName;
+            event.phase = phase;
+            event.methods = methodCount;
+            event.parallel = parallel;
+            event.commit();
+        }
+    }
+
+    /**
+     * Translates the lines of the lexer, adding the methods to the given list.
+     */
+    private void translate(SourceLexer lexer, List<Method> methods) throws BadProgramError {
+        // each iteration processes the words of the current line
+        State state = null;
+        while (lexer.nextLine()) {
+            state = translateLine(lexer, state, methods);
+        }
+        if (state != null)
+            methods.add(state.createMethod());
+    }
+
+    /**
+     * Translates the current line of the lexer.
      *
-     * @param label the instruction label
-     * @return the new instruction
+     * @param lexer the lexer, positioned on the line
+     * @param state the method being translated (null before the first method)
+     * @param methods the methods translated so far, to which a finished method is added
+     * @return the method being translated after the line
      */
-    private Instruction getInstruction(Label label) throws BadProgramError {
-        List<String> instruction = new ArrayList<>();
-        while (!line.isEmpty()) {
-            String word = scan();
-            instruction.add(word);
+    private State translateLine(SourceLexer lexer, State state, List<Method> methods) throws BadProgramError {
+        int wordCount = lexer.wordCount();
+        String labelString = wordCount > 0 && lexer.wordEndsWith(0, ':')
+                ? lexer.wordWithoutLastCharacter(0)
+                : null;
+        if (labelString != null && labelString.startsWith(METHOD_LABEL)) {
+            if (state != null)
+                methods.add(state.createMethod());
+
+            state = new State(new Method.Identifier(labelString));
+            for (int i = 1; i < wordCount; i++) {
+                boolean more = lexer.wordEndsWith(i, ITEM_SEPARATOR);
+
+                String variable = more
+                        ? lexer.wordWithoutLastCharacter(i).trim()
+                        : lexer.word(i);
+
+                state.addArgument(variable);
+
+                if (!more)
+                    break;
+            }
         }
-        return instructionFactory.createInstruction(label, instruction);
+        else {
+            Label label = labelString != null
+                    ? new Label(labelString)
+                    : null;
+
+            Instruction instruction = getInstruction(lexer, label);
+            if (instruction != null) {
+                if (state != null)
+                    state.instructions.add(instruction);
+                else
+                    throw new IllegalArgumentException("Instructions cannot appear outside methods " + labelString + " " + instruction);
+            }
+        }
+        return state;
     }
 
-    private String getLabel() {
-        String word = scan();
-        if (word.endsWith(":"))
-            return word.substring(0, word.length() - 1);
+    /**
+     * Splits the rest of the source into groups of methods and translates the groups in parallel.
+     */
+    private Collection<Method> translateInParallel(SourceLexer lexer) throws BadProgramError {
+        List<ForkJoinTask<Translation>> tasks = lexer.split(METHODS_PER_TASK).stream()
+                .map(part -> ForkJoinPool.commonPool().submit(() -> translate(part)))
+                .toList();
 
-        // undo scanning the word
-        line = word + " " + line;
-        return null;
+        // the tasks are joined in source order, so the first failing group in the file is the one reported
+        List<Method> methods = new ArrayList<>();
+        for (ForkJoinTask<Translation> task : tasks) {
+            Translation translation = task.join();
+            switch (translation.error()) {
+                case null -> methods.addAll(translation.methods());
+                case BadProgramError error -> throw error;
+                case RuntimeException error -> throw error;
+                default -> throw new IllegalStateException(translation.error());
+            }
+        }
+        return methods;
     }
 
     /**
-     * Returns the first word of line and remove it from line.
-     * If there is no word, return "".
+     * The methods translated by a task, or the error found in them.
+     * The error is returned rather than thrown, as ForkJoin tasks cannot throw checked exceptions
+     * and rethrow unchecked ones wrapped in a copy.
      */
-    private String scan() {
-        line = line.trim();
-
-        int whiteSpacePosition = 0;
-        while (whiteSpacePosition < line.length()) {
-            if (Character.isWhitespace(line.charAt(whiteSpacePosition)))
-                break;
-            whiteSpacePosition++;
+    private record Translation(List<Method> methods, Exception error) {
+    }
+
+    private Translation translate(SourceLexer part) {
+        List<Method> methods = new ArrayList<>();
+        try {
+            translate(part, methods);
+        } catch (BadProgramError | RuntimeException e) {
+            return new Translation(methods, e);
         }
+        return new Translation(methods, null);
+    }
 
-        String word = line.substring(0, whiteSpacePosition);
-        line = line.substring(whiteSpacePosition);
-        return word;
+    /**
+     * Translates the current line of the lexer into an instruction with the given label
+     * <p>
+     * The words of the line after the label are passed to the instruction factory.
+     *
+     * @param lexer the lexer, positioned on the line
+     * @param label the instruction label
+     * @return the new instruction
+     */
+    private Instruction getInstruction(SourceLexer lexer, Label label) throws BadProgramError {
+        List<String> instruction = new ArrayList<>();
+        for (int i = label != null ? 1 : 0; i < lexer.wordCount(); i++)
+            instruction.add(lexer.word(i));
+        // an empty line is passed to the factory as an empty operation code
+        if (label == null && instruction.isEmpty())
+            instruction.add("");
+        return instructionFactory.createInstruction(label, instruction);
     }
-}
\ No newline at end of file
+}
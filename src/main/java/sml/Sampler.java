@@ -0,0 +1,162 @@
+package sml;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Samples the frames of a program executed by the instruction interpreter, for flame graphs.</p>
+ * Set on a {@link Machine}, the sampler starts a daemon thread when the program is executed, which requests
+ * a sample at every interval by setting a volatile flag. The interpreter polls the flag before each instruction
+ * and, when it is set, takes the sample itself: it walks the chain of invokers of its current frame and counts
+ * the stack. The sampling thread never reads the frames, which are mutable and recycled by the machine, so
+ * publishing the current frame costs the interpreter a single read of the flag per instruction. Requests that
+ * arrive before the previous one is taken are merged.
+ * <p>
+ * A stack is the name and program counter of each frame, the outermost first, and is written in the folded
+ * format read by flame graph tools: one line per stack, the frames separated by semicolons, followed by the
+ * number of samples. The program counter of an invoker is the index of its invoke instruction. Stacks deeper
+ * than {@value #MAX_FRAMES} frames keep their innermost frames, under a {@value #TRUNCATED} frame.
+ * <p>
+ * Instructions executed in compiled code by the JIT engine are sampled as their invoke instruction, and the
+ * other engines are not sampled. The sampler is not used when a listener is set on the machine.
+ * The samples are collected by the thread executing the program, and should be read once it has ended.
+ *
+ * @author Queenie Lee
+ */
+public final class Sampler {
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMillis(1);
+    static final int MAX_FRAMES = 512;
+    static final String TRUNCATED = "[truncated]";
+
+    private final long intervalNanos;
+
+    /**
+     * Set by the sampling thread to request a sample, and cleared by the interpreter when it takes it.
+     */
+    private volatile boolean requested;
+    private volatile boolean running;
+    private Thread thread;
+
+    private final Map<String, Long> stacks = new LinkedHashMap<>();
+    private long samples;
+    private final Frame[] chain = new Frame[MAX_FRAMES];
+
+    public Sampler() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param interval the time between two samples
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public Sampler(Duration interval) {
+        if (interval.isNegative() || interval.isZero())
+            throw new IllegalArgumentException("The sampling interval must be positive: " + interval);
+        this.intervalNanos = interval.toNanos();
+    }
+
+    /**
+     * Starts the sampling thread. Called by the machine before it executes the program.
+     */
+    void start() {
+        if (thread != null)
+            throw new IllegalStateException("The sampler is already running");
+        running = true;
+        thread = new Thread(this::requestSamples, "sml-sampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the sampling thread and waits for it to end. Called by the machine when the program has ended.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        requested = false;
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void requestSamples() {
+        long next = System.nanoTime() + intervalNanos;
+        while (running) {
+            LockSupport.parkNanos(next - System.nanoTime());
+            if (System.nanoTime() - next >= 0) {
+                requested = true;
+                next += intervalNanos;
+            }
+        }
+    }
+
+    /**
+     * Polled by the interpreter before each instruction.
+     */
+    boolean isRequested() {
+        return requested;
+    }
+
+    /**
+     * Takes a sample of the stack of frames ending with the given frame, and clears the request.
+     *
+     * @param frame the current frame of the interpreter
+     */
+    void sample(Frame frame) {
+        requested = false;
+        int count = 0;
+        Frame f = frame;
+        while (f != null && count < MAX_FRAMES) {
+            chain[count++] = f;
+            f = f.invoker().orElse(null);
+        }
+        StringBuilder stack = new StringBuilder(count * 12);
+        if (f != null)
+            stack.append(TRUNCATED).append(';');
+        for (int idx = count - 1; idx >= 0; idx--) {
+            stack.append(chain[idx].method().name()).append(':').append(chain[idx].programCounter());
+            if (idx > 0)
+                stack.append(';');
+        }
+        Arrays.fill(chain, 0, count, null);
+        stacks.merge(stack.toString(), 1L, Long::sum);
+        samples++;
+    }
+
+    /**
+     * @return the number of samples taken
+     */
+    public long samples() {
+        return samples;
+    }
+
+    /**
+     * @return the number of samples of each stack, in the folded format, in the order they were first sampled
+     */
+    public Map<String, Long> stacks() {
+        return Collections.unmodifiableMap(stacks);
+    }
+
+    /**
+     * Writes the samples in the folded format, one line per stack.
+     */
+    public void writeFolded(Appendable out) {
+        try {
+            for (Map.Entry<String, Long> entry : stacks.entrySet())
+                out.append(entry.getKey()).append(' ').append(Long.toString(entry.getValue())).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package sml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Splits the text of an SML program into lines and words, working directly on the bytes of the source.</p>
+ * A program file is memory-mapped rather than read. A line is split by recording where its words start and end,
+ * and a word only becomes a String when it is asked for. These Strings are cached, so the operation codes,
+ * labels, variable names and numbers repeated throughout a program are created once, not once per line.
+ * <p>
+ * Lines end with \n, \r or \r\n. The words of a line are separated by whitespace, as defined by
+ * {@link Character#isWhitespace(char)}, once the line is trimmed. Lines containing non-ASCII characters are
+ * decoded as UTF-8 and split as Strings, so that every line is split exactly as {@link java.util.Scanner}
+ * and {@link String#trim()} would split it.
+ *
+ * @author Queenie Lee
+ */
+final class SourceLexer {
+    private static final int CACHE_SIZE = 4096; // must be a power of two
+
+    private static final Pattern UNICODE_LINE_SEPARATOR = Pattern.compile("[\\u2028\\u2029\\u0085]");
+
+    private final ByteBuffer source;
+
+    // the start of the next line
+    private int position;
+
+    // the words of the current line, as positions in source
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int wordCount;
+
+    // the words of the current line when it contains non-ASCII characters, otherwise null
+    private List<String> decodedWords;
+
+    // the rest of a decoded line that was split by a Unicode line separator
+    private final Deque<String> pendingLines = new ArrayDeque<>();
+
+    private final String[] cache = new String[CACHE_SIZE];
+    private byte[] scratch = new byte[64];
+
+    SourceLexer(ByteBuffer source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns a lexer over the contents of a file, which is memory-mapped.
+     *
+     * @param file the program file
+     * @return the lexer
+     * @throws IOException if the file cannot be opened or is larger than 2GB
+     */
+    static SourceLexer open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("The program " + file + " is too large to be read");
+            // the mapping remains valid after the channel is closed
+            return new SourceLexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Moves to the next line and splits it into words.
+     *
+     * @return false if there are no more lines
+     */
+    boolean nextLine() {
+        if (!pendingLines.isEmpty()) {
+            splitDecoded(pendingLines.removeFirst());
+            return true;
+        }
+        int limit = source.limit();
+        if (position >= limit)
+            return false;
+
+        int start = position;
+        int end = start;
+        boolean ascii = true;
+        while (end < limit) {
+            byte b = source.get(end);
+            if (b == '\n' || b == '\r')
+                break;
+            if (b < 0)
+                ascii = false;
+            end++;
+        }
+        position = end;
+        if (position < limit && source.get(position++) == '\r' && position < limit && source.get(position) == '\n')
+            position++;
+
+        if (ascii) {
+            splitAscii(start, end);
+        }
+        else {
+            byte[] bytes = new byte[end - start];
+            source.get(start, bytes);
+            String[] lines = UNICODE_LINE_SEPARATOR.split(new String(bytes, StandardCharsets.UTF_8), -1);
+            pendingLines.addAll(Arrays.asList(lines).subList(1, lines.length));
+            splitDecoded(lines[0]);
+        }
+        return true;
+    }
+
+    int wordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Returns a word of the current line.
+     */
+    String word(int index) {
+        if (decodedWords != null)
+            return decodedWords.get(index);
+        return string(starts[index], ends[index]);
+    }
+
+    /**
+     * Returns whether a word of the current line ends with the given character.
+     */
+    boolean wordEndsWith(int index, char c) {
+        if (decodedWords != null)
+            return decodedWords.get(index).endsWith(String.valueOf(c));
+        return source.get(ends[index] - 1) == c;
+    }
+
+    /**
+     * Returns a word of the current line without its last character, e.g. a label without its colon.
+     */
+    String wordWithoutLastCharacter(int index) {
+        if (decodedWords != null) {
+            String word = decodedWords.get(index);
+            return word.substring(0, word.length() - 1);
+        }
+        return string(starts[index], ends[index] - 1);
+    }
+
+    /**
+     * Splits the rest of the source into consecutive parts, each with at most the given number of methods.
+     * Every part but the first starts with a method header, i.e. a line whose first word is a label starting
+     * with @. Lines with non-ASCII characters are never treated as headers, so such a method may share the part
+     * of the method before it.
+     *
+     * @param methodsPerPart the maximum number of methods in each part
+     * @return lexers over the parts, in source order
+     */
+    List<SourceLexer> split(int methodsPerPart) {
+        List<SourceLexer> parts = new ArrayList<>();
+        int limit = source.limit();
+        int partStart = position;
+        int headers = 0;
+        for (int lineStart = position; lineStart < limit; ) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && source.get(lineEnd) != '\n' && source.get(lineEnd) != '\r')
+                lineEnd++;
+            if (isMethodHeader(lineStart, lineEnd) && ++headers > methodsPerPart) {
+                parts.add(new SourceLexer(source.slice(partStart, lineStart - partStart)));
+                partStart = lineStart;
+                headers = 1;
+            }
+            lineStart = lineEnd + 1;
+        }
+        parts.add(new SourceLexer(source.slice(partStart, limit - partStart)));
+        position = limit;
+        return parts;
+    }
+
+    private boolean isMethodHeader(int start, int end) {
+        while (start < end && isControlOrSpace(source.get(start)))
+            start++;
+        if (start == end || source.get(start) != '@')
+            return false;
+        int wordEnd = start;
+        while (wordEnd < end) {
+            byte b = source.get(wordEnd);
+            if (b < 0)
+                return false;
+            if (Character.isWhitespace(b))
+                break;
+            wordEnd++;
+        }
+        return source.get(wordEnd - 1) == ':';
+    }
+
+    /**
+     * Records the words of an ASCII line, trimming it as {@link String#trim()} does.
+     */
+    private void splitAscii(int start, int end) {
+        decodedWords = null;
+        wordCount = 0;
+        while (start < end && isControlOrSpace(source.get(start)))
+            start++;
+        while (end > start && isControlOrSpace(source.get(end - 1)))
+            end--;
+
+        int i = start;
+        while (i < end) {
+            int wordStart = i;
+            while (i < end && !Character.isWhitespace(source.get(i)))
+                i++;
+            if (wordCount == starts.length) {
+                starts = Arrays.copyOf(starts, wordCount * 2);
+                ends = Arrays.copyOf(ends, wordCount * 2);
+            }
+            starts[wordCount] = wordStart;
+            ends[wordCount] = i;
+            wordCount++;
+            while (i < end && isControlOrSpace(source.get(i)))
+                i++;
+        }
+    }
+
+    /**
+     * Records the words of a decoded line, splitting it as SMLTranslator has always split a String.
+     */
+    private void splitDecoded(String line) {
+        List<String> words = new ArrayList<>();
+        line = line.trim();
+        int i = 0;
+        while (i < line.length()) {
+            // whitespace that trim() leaves, such as U+2000, also separates words
+            if (Character.isWhitespace(line.charAt(i)) || line.charAt(i) <= ' ') {
+                i++;
+                continue;
+            }
+            int wordStart = i;
+            while (i < line.length() && !Character.isWhitespace(line.charAt(i)))
+                i++;
+            words.add(line.substring(wordStart, i));
+        }
+        decodedWords = words;
+        wordCount = words.size();
+    }
+
+    private static boolean isControlOrSpace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /**
+     * Returns the String of the ASCII bytes between the given positions, from the cache if it is there.
+     * The cache is direct-mapped: a String replaces any other String with the same hash slot.
+     */
+    private String string(int start, int end) {
+        int length = end - start;
+        int hash = length;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + source.get(i);
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+
+        String cached = cache[slot];
+        if (cached != null && cached.length() == length && matches(cached, start)) {
+            return cached;
+        }
+
+        if (scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        source.get(start, scratch, 0, length);
+        String string = new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+        cache[slot] = string;
+        return string;
+    }
+
+    private boolean matches(String string, int start) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) != source.get(start + i))
+                return false;
+        }
+        return true;
+    }
+}
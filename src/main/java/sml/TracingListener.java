@@ -0,0 +1,24 @@
+package sml;
+
+import java.io.PrintStream;
+import java.util.Objects;
+
+/**
+ * <p>Prints every instruction before it is executed, together with the frame it executes in.</p>
+ * Each line has the form "[frame] instruction". The frame includes its chain of invokers,
+ * so the cost of a line grows with the call depth.
+ *
+ * @author Queenie Lee
+ */
+public class TracingListener implements ExecutionListener {
+    private final PrintStream out;
+
+    public TracingListener(PrintStream out) {
+        this.out = Objects.requireNonNull(out);
+    }
+
+    @Override
+    public void beforeInstruction(Frame frame, Instruction instruction) {
+        out.println("[" + frame + "] " + instruction);
+    }
+}
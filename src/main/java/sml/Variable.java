@@ -5,6 +5,8 @@ import java.util.Optional;
 
 /**
  * Represents a variable within an instruction
+ * <p>
+ * The value itself lives in a slot of a {@link Frame}; a Variable is a view of that slot.
  *
  * @author Queenie Lee
  */
@@ -26,17 +28,25 @@ public class Variable {
         }
     }
 
-    /**
-     * Value is an Optional
-     * If there is no value stored within it, it should not return 0.
-     */
-    private Optional<Integer> value = Optional.empty();
+    private final Frame frame;
+    private final int slot;
+
+    Variable(Frame frame, int slot) {
+        this.frame = Objects.requireNonNull(frame);
+        this.slot = slot;
+    }
 
     public void store(int value) {
-        this.value = Optional.of(value);
+        frame.store(slot, value);
     }
 
+    /**
+     * Value is an Optional
+     * If there is no value stored within it, it should not return 0.
+     */
     public Optional<Integer> load() {
-        return value;
+        return frame.isAssigned(slot)
+                ? Optional.of(frame.load(slot))
+                : Optional.empty();
     }
 }
@@ -0,0 +1,249 @@
+package sml.bytecode;
+
+import sml.BadProgramError;
+import sml.OutputSink;
+import sml.instruction.CalculateInstruction;
+
+import java.util.Arrays;
+
+/**
+ * <p>Executes a linked program with a single dispatch loop over the code arrays.</p>
+ * All frames share one value array. A frame occupies the slots of its method
+ * (arguments followed by local variables), and its operand stack grows directly above them.
+ * When a method is invoked, its arguments are popped from the operand stack of the invoker
+ * and reversed in place, so they become the first slots of the new frame.
+ * The invoker's method index, resume offset and frame base are saved on a separate call stack.
+ * A tail invocation saves nothing: the arguments are moved down to the base of the current frame,
+ * which the invoked method then occupies, so it returns directly to the invoker of the current method.
+ * <p>
+ * Errors are reported with the same messages as the instruction interpreter in {@link sml.Machine}.
+ *
+ * @author Queenie Lee
+ */
+public final class BytecodeInterpreter {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final LinkedProgram program;
+    private final OutputSink output;
+
+    private int[] values = new int[INITIAL_CAPACITY];
+    private boolean[] assigned = new boolean[INITIAL_CAPACITY];
+
+    private int[] callMethods = new int[INITIAL_CAPACITY];
+    private int[] callOffsets = new int[INITIAL_CAPACITY];
+    private int[] callBases = new int[INITIAL_CAPACITY];
+
+    public BytecodeInterpreter(LinkedProgram program, OutputSink output) {
+        this.program = program;
+        this.output = output;
+    }
+
+    /**
+     * Executes the program starting from method "main".
+     *
+     * @throws BadProgramError if the program fails while running
+     */
+    public void execute() throws BadProgramError {
+        int current = program.mainIndex();
+        LinkedMethod method = program.method(current);
+        int[] code = method.code();
+        int pc = 0;
+        int base = 0;                      // first slot of the current frame
+        int bottom = method.slotCount();   // first operand of the current frame
+        int sp = bottom;                   // next free operand position
+        int depth = 0;                     // number of saved invokers
+        ensureCapacity(sp);
+        int[] values = this.values;
+        boolean[] assigned = this.assigned;
+        Arrays.fill(assigned, 0, bottom, false);
+
+        try {
+            while (true) {
+                switch (code[pc]) {
+                    case Opcode.PUSH -> {
+                        if (sp == values.length) {
+                            ensureCapacity(sp);
+                            values = this.values;
+                            assigned = this.assigned;
+                        }
+                        values[sp++] = code[pc + 1];
+                        pc += 2;
+                    }
+                    case Opcode.LOAD -> {
+                        int slot = code[pc + 1];
+                        if (!assigned[base + slot])
+                            throw new BadProgramError("The variable " + method.slotName(slot).name() +
+                                    " does not contain a value.");
+                        if (sp == values.length) {
+                            ensureCapacity(sp);
+                            values = this.values;
+                            assigned = this.assigned;
+                        }
+                        values[sp++] = values[base + slot];
+                        pc += 2;
+                    }
+                    case Opcode.STORE -> {
+                        if (sp == bottom)
+                            throw stackUnderflow();
+                        int slot = code[pc + 1];
+                        values[base + slot] = values[--sp];
+                        assigned[base + slot] = true;
+                        pc += 2;
+                    }
+                    case Opcode.ADD -> {
+                        if (sp - bottom < 2)
+                            throw stackUnderflow();
+                        sp--;
+                        values[sp - 1] = Math.addExact(values[sp - 1], values[sp]);
+                        pc++;
+                    }
+                    case Opcode.SUB -> {
+                        if (sp - bottom < 2)
+                            throw stackUnderflow();
+                        sp--;
+                        values[sp - 1] = Math.subtractExact(values[sp - 1], values[sp]);
+                        pc++;
+                    }
+                    case Opcode.MUL -> {
+                        if (sp - bottom < 2)
+                            throw stackUnderflow();
+                        sp--;
+                        values[sp - 1] = Math.multiplyExact(values[sp - 1], values[sp]);
+                        pc++;
+                    }
+                    case Opcode.DIV -> {
+                        if (sp - bottom < 2)
+                            throw stackUnderflow();
+                        sp--;
+                        if (values[sp] == 0)
+                            throw CalculateInstruction.divisionByZero();
+                        values[sp - 1] = values[sp - 1] / values[sp];
+                        pc++;
+                    }
+                    case Opcode.IF_CMPEQ -> {
+                        if (sp - bottom < 2)
+                            throw stackUnderflow();
+                        sp -= 2;
+                        pc = values[sp] == values[sp + 1] ? code[pc + 1] : pc + 2;
+                    }
+                    case Opcode.IF_CMPGT -> {
+                        if (sp - bottom < 2)
+                            throw stackUnderflow();
+                        sp -= 2;
+                        pc = values[sp] > values[sp + 1] ? code[pc + 1] : pc + 2;
+                    }
+                    case Opcode.GOTO -> pc = code[pc + 1];
+                    case Opcode.INVOKE -> {
+                        int calleeIndex = code[pc + 1];
+                        LinkedMethod callee = program.method(calleeIndex);
+                        int argumentCount = callee.argumentCount();
+                        if (sp - bottom < argumentCount)
+                            throw stackUnderflow();
+
+                        if (depth == callMethods.length)
+                            growCallStack();
+                        callMethods[depth] = current;
+                        callOffsets[depth] = pc + 2;
+                        callBases[depth] = base;
+                        depth++;
+
+                        // the first argument is the value on top of the invoker's operand stack
+                        base = sp - argumentCount;
+                        for (int i = base, j = sp - 1; i < j; i++, j--) {
+                            int value = values[i];
+                            values[i] = values[j];
+                            values[j] = value;
+                        }
+                        bottom = base + callee.slotCount();
+                        ensureCapacity(bottom);
+                        values = this.values;
+                        assigned = this.assigned;
+                        Arrays.fill(assigned, base, base + argumentCount, true);
+                        Arrays.fill(assigned, base + argumentCount, bottom, false);
+
+                        current = calleeIndex;
+                        method = callee;
+                        code = callee.code();
+                        sp = bottom;
+                        pc = 0;
+                    }
+                    case Opcode.TAIL_INVOKE -> {
+                        int calleeIndex = code[pc + 1];
+                        LinkedMethod callee = program.method(calleeIndex);
+                        int argumentCount = callee.argumentCount();
+                        if (sp - bottom < argumentCount)
+                            throw stackUnderflow();
+
+                        // the arguments replace the slots of the current frame, first argument first
+                        System.arraycopy(values, sp - argumentCount, values, base, argumentCount);
+                        for (int i = base, j = base + argumentCount - 1; i < j; i++, j--) {
+                            int value = values[i];
+                            values[i] = values[j];
+                            values[j] = value;
+                        }
+                        bottom = base + callee.slotCount();
+                        ensureCapacity(bottom);
+                        values = this.values;
+                        assigned = this.assigned;
+                        Arrays.fill(assigned, base, base + argumentCount, true);
+                        Arrays.fill(assigned, base + argumentCount, bottom, false);
+
+                        current = calleeIndex;
+                        method = callee;
+                        code = callee.code();
+                        sp = bottom;
+                        pc = 0;
+                    }
+                    case Opcode.RETURN -> {
+                        if (sp == bottom)
+                            throw stackUnderflow();
+                        int value = values[--sp];
+                        if (depth == 0)
+                            return;
+
+                        depth--;
+                        sp = base;
+                        current = callMethods[depth];
+                        method = program.method(current);
+                        code = method.code();
+                        pc = callOffsets[depth];
+                        base = callBases[depth];
+                        bottom = base + method.slotCount();
+                        values[sp++] = value;
+                    }
+                    case Opcode.PRINT -> {
+                        if (sp == bottom)
+                            throw stackUnderflow();
+                        output.print(values[--sp]);
+                        pc++;
+                    }
+                    default -> throw new IllegalStateException("Unknown opcode " + code[pc] + " in " + method.name());
+                }
+            }
+        } catch (ArithmeticException ex) {
+            throw new BadProgramError(ex.toString());
+        }
+    }
+
+    private static BadProgramError stackUnderflow() {
+        return new BadProgramError("Not enough values on the stack.");
+    }
+
+    /**
+     * Grows the value array so that it has room beyond the given position.
+     */
+    private void ensureCapacity(int position) {
+        if (position < values.length)
+            return;
+        int capacity = Math.max(values.length * 2, position + INITIAL_CAPACITY);
+        values = Arrays.copyOf(values, capacity);
+        assigned = Arrays.copyOf(assigned, capacity);
+    }
+
+    private void growCallStack() {
+        int capacity = callMethods.length * 2;
+        callMethods = Arrays.copyOf(callMethods, capacity);
+        callOffsets = Arrays.copyOf(callOffsets, capacity);
+        callBases = Arrays.copyOf(callBases, capacity);
+    }
+}
@@ -0,0 +1,70 @@
+package sml.bytecode;
+
+import sml.Method;
+import sml.Variable;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A method lowered into the flat bytecode format.</p>
+ * The arguments occupy the first slots (in declaration order), followed by the local variables.
+ * The operand stack of a frame starts directly after its last slot.
+ *
+ * @author Queenie Lee
+ */
+public final class LinkedMethod {
+    private final Method.Identifier name;
+    private final int argumentCount;
+    private final List<Variable.Identifier> slots;
+    private final int[] code;
+
+    LinkedMethod(Method.Identifier name, int argumentCount, List<Variable.Identifier> slots, int[] code) {
+        this.name = Objects.requireNonNull(name);
+        this.argumentCount = argumentCount;
+        this.slots = List.copyOf(slots);
+        this.code = code;
+    }
+
+    public Method.Identifier name() {
+        return name;
+    }
+
+    public int argumentCount() {
+        return argumentCount;
+    }
+
+    public int slotCount() {
+        return slots.size();
+    }
+
+    public Variable.Identifier slotName(int slot) {
+        return slots.get(slot);
+    }
+
+    /**
+     * Returns the code array. It is shared, not copied, and must not be modified.
+     *
+     * @return the code array of the method
+     */
+    public int[] code() {
+        return code;
+    }
+
+    /**
+     * Returns a string representation of the code, one instruction per line,
+     * each prefixed with its offset in the code array.
+     *
+     * @return a disassembly of the method
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("@" + name + ":");
+        for (int pc = 0; pc < code.length; pc += 1 + Opcode.operandCount(code[pc])) {
+            sb.append("\n").append(pc).append(": ").append(Opcode.name(code[pc]));
+            if (Opcode.operandCount(code[pc]) > 0)
+                sb.append(" ").append(code[pc + 1]);
+        }
+        return sb.toString();
+    }
+}
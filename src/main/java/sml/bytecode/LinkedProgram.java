@@ -0,0 +1,31 @@
+package sml.bytecode;
+
+import java.util.List;
+
+/**
+ * <p>A program whose methods have all been lowered into the flat bytecode format.</p>
+ * Methods are referred to by their index in the method table, which is the order they were linked in.
+ *
+ * @author Queenie Lee
+ */
+public final class LinkedProgram {
+    private final List<LinkedMethod> methods;
+    private final int mainIndex;
+
+    LinkedProgram(List<LinkedMethod> methods, int mainIndex) {
+        this.methods = List.copyOf(methods);
+        this.mainIndex = mainIndex;
+    }
+
+    public LinkedMethod method(int index) {
+        return methods.get(index);
+    }
+
+    public List<LinkedMethod> methods() {
+        return methods;
+    }
+
+    public int mainIndex() {
+        return mainIndex;
+    }
+}
@@ -0,0 +1,121 @@
+package sml.bytecode;
+
+import sml.*;
+import sml.instruction.*;
+import sml.optimizer.Superinstructions;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Lowers translated methods into the flat bytecode format.</p>
+ * Linking resolves every symbolic reference once, before the program runs:
+ * branch labels become code offsets, variables become slot numbers and
+ * method names become indices in the method table.
+ * Missing labels and methods are therefore reported when the program is linked,
+ * not when the instruction referring to them is executed.
+ * Superinstructions are linked as the instructions they replace.
+ * An invocation in tail position is linked as {@link Opcode#TAIL_INVOKE}, so that the invoked method replaces
+ * the frame of its invoker.
+ *
+ * @author Queenie Lee
+ */
+public final class Linker {
+
+    private Linker() {
+    }
+
+    /**
+     * Links the given methods into a program.
+     *
+     * @param methods the methods of the program, including the method "main"
+     * @return the linked program
+     * @throws MethodNotFoundException if "main" or an invoked method does not exist
+     * @throws LabelNotFoundException if a branch label does not exist in its method
+     */
+    public static LinkedProgram link(Collection<Method> methods) {
+        // the bytecode has no superinstructions: they are linked as the instructions they replace
+        List<Method> methodList = methods.stream()
+                .map(Superinstructions::expand)
+                .toList();
+        Map<Method.Identifier, Integer> indices = new HashMap<>();
+        for (int i = 0; i < methodList.size(); i++) {
+            if (indices.putIfAbsent(methodList.get(i).name(), i) != null)
+                throw new IllegalArgumentException("Duplicate method: " + methodList.get(i).name());
+        }
+
+        Method.Identifier main = new Method.Identifier("@main");
+        if (!indices.containsKey(main))
+            throw new MethodNotFoundException(main);
+
+        List<LinkedMethod> linked = methodList.stream()
+                .map(m -> linkMethod(m, indices))
+                .toList();
+        return new LinkedProgram(linked, indices.get(main));
+    }
+
+    private static LinkedMethod linkMethod(Method method, Map<Method.Identifier, Integer> indices) {
+        List<Instruction> instructions = method.instructions();
+
+        // first pass: the code offset of each instruction
+        int[] offsets = new int[instructions.size()];
+        int size = 0;
+        for (int i = 0; i < instructions.size(); i++) {
+            offsets[i] = size;
+            size += 1 + Opcode.operandCount(opcode(instructions.get(i)));
+        }
+
+        // second pass: the encoded instructions with their resolved operands
+        int[] code = new int[size];
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            int pc = offsets[i];
+            code[pc] = method.isTailCall(i) ? Opcode.TAIL_INVOKE : opcode(instruction);
+            switch (instruction) {
+                case PushInstruction push -> code[pc + 1] = push.value();
+                case VariableInstruction variable -> code[pc + 1] = method.slot(variable.variable());
+                case GotoInstruction jump -> code[pc + 1] = offsets[target(method, jump.branchLabel())];
+                case ComparisonInstruction compare -> code[pc + 1] = offsets[target(method, compare.branchLabel())];
+                case InvokeInstruction invoke -> {
+                    Integer callee = indices.get(invoke.methodName());
+                    if (callee == null)
+                        throw new MethodNotFoundException(invoke.methodName());
+                    code[pc + 1] = callee;
+                }
+                default -> { }
+            }
+        }
+        List<Variable.Identifier> slots = IntStream.range(0, method.slotCount())
+                .mapToObj(method::slotVariable)
+                .toList();
+        return new LinkedMethod(method.name(), method.arguments().size(), slots, code);
+    }
+
+    private static int target(Method method, Label label) {
+        return method.labels().get(label)
+                .orElseThrow(() -> new LabelNotFoundException(label, method));
+    }
+
+    /**
+     * Returns the bytecode operation code of an instruction.
+     * It is obligatory to add a new case below if any new instruction classes are added to the language.
+     */
+    private static int opcode(Instruction instruction) {
+        return switch (instruction) {
+            case PushInstruction p -> Opcode.PUSH;
+            case LoadInstruction l -> Opcode.LOAD;
+            case StoreInstruction s -> Opcode.STORE;
+            case AdditionInstruction a -> Opcode.ADD;
+            case SubtractionInstruction s -> Opcode.SUB;
+            case MultiplicationInstruction m -> Opcode.MUL;
+            case DivisionInstruction d -> Opcode.DIV;
+            case CompareEqualInstruction eq -> Opcode.IF_CMPEQ;
+            case CompareGreaterThanInstruction gt -> Opcode.IF_CMPGT;
+            case GotoInstruction g -> Opcode.GOTO;
+            case InvokeInstruction i -> Opcode.INVOKE;
+            case ReturnInstruction r -> Opcode.RETURN;
+            case PrintInstruction p -> Opcode.PRINT;
+            default -> throw new IllegalArgumentException("Cannot link instruction: " + instruction);
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package sml.bytecode;
+
+/**
+ * <p>The operation codes of the linked bytecode format.</p>
+ * Each instruction is encoded inline in the <b>int[]</b> code array of a {@link LinkedMethod}: the opcode
+ * followed by its operands. Operands are already resolved by the {@link Linker}, so constants are stored as
+ * values, variables as slot numbers, branch labels as code offsets and method names as method indices.
+ *
+ * @author Queenie Lee
+ */
+public final class Opcode {
+    public static final int PUSH = 0;      // PUSH value
+    public static final int LOAD = 1;      // LOAD slot
+    public static final int STORE = 2;     // STORE slot
+    public static final int ADD = 3;
+    public static final int SUB = 4;
+    public static final int MUL = 5;
+    public static final int DIV = 6;
+    public static final int IF_CMPEQ = 7;  // IF_CMPEQ target
+    public static final int IF_CMPGT = 8;  // IF_CMPGT target
+    public static final int GOTO = 9;      // GOTO target
+    public static final int INVOKE = 10;   // INVOKE method-index
+    public static final int RETURN = 11;
+    public static final int PRINT = 12;
+    public static final int TAIL_INVOKE = 13; // TAIL_INVOKE method-index, an INVOKE followed by RETURN
+
+    private static final String[] NAMES = {
+            "push", "load", "store", "add", "sub", "mul", "div",
+            "if_cmpeq", "if_cmpgt", "goto", "invoke", "return", "print",
+            "invoke"
+    };
+
+    private Opcode() {
+    }
+
+    /**
+     * Returns the number of operands that follow the given opcode in the code array.
+     *
+     * @param opcode operation code
+     * @return the number of inline operands
+     */
+    public static int operandCount(int opcode) {
+        return switch (opcode) {
+            case PUSH, LOAD, STORE, IF_CMPEQ, IF_CMPGT, GOTO, INVOKE, TAIL_INVOKE -> 1;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Returns the SML name of the given opcode.
+     * TAIL_INVOKE has the name of the invoke instruction it is linked from.
+     *
+     * @param opcode operation code
+     * @return the name used in SML source text
+     */
+    public static String name(int opcode) {
+        return NAMES[opcode];
+    }
+}
@@ -0,0 +1,306 @@
+package sml.bytecode;
+
+import sml.*;
+import sml.instruction.*;
+import sml.optimizer.Superinstructions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * <p>Reads and writes compiled programs (.smlc files).</p>
+ * A compiled program is a translated and linked program: loading it creates the methods and instructions
+ * directly, without reading the source text or using the instruction factory.
+ * <p>
+ * All values are big-endian. The file starts with a header:
+ * <pre>
+ *   int    magic          0x534D4C43 ("SMLC")
+ *   short  version        {@link #VERSION}
+ *   short  reserved       0
+ *   int    body length    in bytes
+ *   byte[32]              SHA-256 hash of the body
+ * </pre>
+ * followed by the body:
+ * <pre>
+ *   int    pool size      followed by each string of the pool: int length, UTF-8 bytes
+ *   int    method count
+ *   int    index of the method "main"
+ *   for each method:
+ *     int  name           pool index (the name without @)
+ *     int  argument count
+ *     int  slot count     followed by the pool index of each slot's variable (arguments first)
+ *     int  label count    followed by each label: int instruction index, int pool index
+ *     int  code length    followed by the code of the method (see {@link Opcode})
+ * </pre>
+ * The code is the output of the {@link Linker}, so labels and methods have been checked when the file was written.
+ *
+ * @author Queenie Lee
+ */
+public final class ProgramFile {
+    /**
+     * The file name extension of compiled programs.
+     */
+    public static final String EXTENSION = ".smlc";
+
+    /**
+     * The version of the format written by this class, the only one it reads.
+     */
+    public static final int VERSION = 2;
+
+    private static final int MAGIC = 0x534D4C43;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = 12 + HASH_LENGTH;
+
+    private ProgramFile() {
+    }
+
+    /**
+     * Links the given methods and writes them to a compiled program file.
+     *
+     * @param methods the methods of the program, including the method "main"
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     * @throws MethodNotFoundException if "main" or an invoked method does not exist
+     * @throws LabelNotFoundException if a branch label does not exist in its method
+     */
+    public static void write(Collection<Method> methods, Path file) throws IOException {
+        List<Method> methodList = methods.stream()
+                .map(Superinstructions::expand)
+                .toList();
+        LinkedProgram program = Linker.link(methodList);
+
+        Map<String, Integer> poolIndices = new LinkedHashMap<>();
+        ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(methodBytes);
+        out.writeInt(methodList.size());
+        out.writeInt(program.mainIndex());
+        for (int i = 0; i < methodList.size(); i++) {
+            Method method = methodList.get(i);
+            LinkedMethod linked = program.method(i);
+
+            out.writeInt(poolIndex(poolIndices, method.name().name()));
+            out.writeInt(linked.argumentCount());
+            out.writeInt(linked.slotCount());
+            for (int slot = 0; slot < linked.slotCount(); slot++)
+                out.writeInt(poolIndex(poolIndices, linked.slotName(slot).name()));
+
+            List<Instruction> instructions = method.instructions();
+            List<Integer> labelled = new ArrayList<>();
+            for (int index = 0; index < instructions.size(); index++) {
+                if (instructions.get(index).optionalLabel().isPresent())
+                    labelled.add(index);
+            }
+            out.writeInt(labelled.size());
+            for (int index : labelled) {
+                out.writeInt(index);
+                out.writeInt(poolIndex(poolIndices, instructions.get(index).optionalLabel().orElseThrow().label()));
+            }
+
+            int[] code = linked.code();
+            out.writeInt(code.length);
+            for (int word : code)
+                out.writeInt(word);
+        }
+        out.flush();
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeInt(poolIndices.size());
+        for (String string : poolIndices.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            body.writeInt(bytes.length);
+            body.write(bytes);
+        }
+        methodBytes.writeTo(body);
+        body.flush();
+
+        byte[] content = bodyBytes.toByteArray();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                .putInt(MAGIC)
+                .putShort((short) VERSION)
+                .putShort((short) 0)
+                .putInt(content.length)
+                .put(sha256(ByteBuffer.wrap(content)));
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {header, ByteBuffer.wrap(content)};
+            while (buffers[1].hasRemaining())
+                channel.write(buffers);
+        }
+    }
+
+    /**
+     * Reads a compiled program file, which is memory-mapped.
+     *
+     * @param file the file to read
+     * @return the methods of the program, in the order they were written
+     * @throws IOException if the file cannot be read, is not a compiled program of this version, or is corrupt
+     */
+    public static List<Method> read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + " is not a compiled SML program");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not a compiled SML program");
+        int version = Short.toUnsignedInt(buffer.getShort());
+        if (version != VERSION)
+            throw new IOException(file + " has version " + version + " of the compiled format, expected " + VERSION);
+        buffer.getShort();
+        int length = buffer.getInt();
+        byte[] hash = new byte[HASH_LENGTH];
+        buffer.get(hash);
+        if (length != buffer.remaining() || !MessageDigest.isEqual(hash, sha256(buffer.slice())))
+            throw new IOException(file + " is corrupt: its content does not match its hash");
+
+        try {
+            return readBody(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                 | NegativeArraySizeException e) {
+            throw new IOException(file + " is corrupt: " + e.getMessage(), e);
+        }
+    }
+
+    private static List<Method> readBody(ByteBuffer buffer) {
+        String[] pool = new String[readCount(buffer, Integer.BYTES)];
+        for (int i = 0; i < pool.length; i++) {
+            byte[] bytes = new byte[readCount(buffer, 1)];
+            buffer.get(bytes);
+            pool[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // a method takes at least its name, argument count and three counts
+        int methodCount = readCount(buffer, 5 * Integer.BYTES);
+        buffer.getInt(); // the index of "main", only used by the linker
+        Method.Identifier[] methodNames = new Method.Identifier[methodCount];
+        int[] positions = new int[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            // the invoke instructions can refer to later methods, so all names are read first
+            positions[i] = buffer.position();
+            methodNames[i] = new Method.Identifier("@" + pool[buffer.getInt()]);
+            buffer.getInt();
+            skipInts(buffer, readCount(buffer, Integer.BYTES));          // slots
+            skipInts(buffer, 2 * readCount(buffer, 2 * Integer.BYTES));  // labels
+            skipInts(buffer, readCount(buffer, Integer.BYTES));          // code
+        }
+
+        List<Method> methods = new ArrayList<>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            buffer.position(positions[i] + Integer.BYTES);
+            methods.add(readMethod(buffer, methodNames[i], pool, methodNames));
+        }
+        return methods;
+    }
+
+    private static Method readMethod(ByteBuffer buffer, Method.Identifier name, String[] pool,
+                                     Method.Identifier[] methodNames) {
+        int argumentCount = buffer.getInt();
+        String[] slots = new String[readCount(buffer, Integer.BYTES)];
+        for (int slot = 0; slot < slots.length; slot++)
+            slots[slot] = pool[buffer.getInt()];
+
+        int labelCount = readCount(buffer, 2 * Integer.BYTES);
+        int labelsPosition = buffer.position();
+        skipInts(buffer, 2 * labelCount);
+
+        int[] code = new int[readCount(buffer, Integer.BYTES)];
+        buffer.asIntBuffer().get(code);
+        skipInts(buffer, code.length);
+
+        // the index of the instruction at each code offset, to find the labels of branch targets
+        int[] indexAtOffset = new int[code.length];
+        Arrays.fill(indexAtOffset, -1);
+        int instructionCount = 0;
+        for (int pc = 0; pc < code.length; pc += 1 + Opcode.operandCount(code[pc]))
+            indexAtOffset[pc] = instructionCount++;
+
+        // the label of each instruction, or null
+        Label[] labels = new Label[instructionCount];
+        for (int i = 0; i < labelCount; i++) {
+            int index = buffer.getInt(labelsPosition + 2 * Integer.BYTES * i);
+            labels[index] = new Label(pool[buffer.getInt(labelsPosition + 2 * Integer.BYTES * i + Integer.BYTES)]);
+        }
+
+        List<Instruction> instructions = new ArrayList<>(instructionCount);
+        for (int pc = 0; pc < code.length; pc += 1 + Opcode.operandCount(code[pc])) {
+            Label label = labels[instructions.size()];
+            int operand = Opcode.operandCount(code[pc]) > 0 ? code[pc + 1] : 0;
+            instructions.add(switch (code[pc]) {
+                case Opcode.PUSH -> new PushInstruction(label, operand);
+                case Opcode.LOAD -> new LoadInstruction(label, slots[operand]);
+                case Opcode.STORE -> new StoreInstruction(label, slots[operand]);
+                case Opcode.ADD -> new AdditionInstruction(label);
+                case Opcode.SUB -> new SubtractionInstruction(label);
+                case Opcode.MUL -> new MultiplicationInstruction(label);
+                case Opcode.DIV -> new DivisionInstruction(label);
+                case Opcode.IF_CMPEQ -> new CompareEqualInstruction(label, target(labels, indexAtOffset, operand));
+                case Opcode.IF_CMPGT -> new CompareGreaterThanInstruction(label, target(labels, indexAtOffset, operand));
+                case Opcode.GOTO -> new GotoInstruction(label, target(labels, indexAtOffset, operand));
+                case Opcode.INVOKE, Opcode.TAIL_INVOKE -> new InvokeInstruction(label, methodNames[operand]);
+                case Opcode.RETURN -> new ReturnInstruction(label);
+                case Opcode.PRINT -> new PrintInstruction(label);
+                default -> throw new IllegalArgumentException("unknown opcode " + code[pc] + " in " + name);
+            });
+        }
+
+        List<Variable.Identifier> arguments = Arrays.stream(slots, 0, argumentCount)
+                .map(Variable.Identifier::new)
+                .toList();
+        return new Method(name, arguments, instructions);
+    }
+
+    /**
+     * Reads the number of elements that follow, each taking at least the given number of bytes, so that a count
+     * larger than the rest of the file is rejected before anything is allocated for it.
+     *
+     * @throws IllegalArgumentException if the count is negative or the elements cannot fit in the buffer
+     */
+    private static int readCount(ByteBuffer buffer, int elementBytes) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / elementBytes)
+            throw new IllegalArgumentException("count " + count + " at offset " + (buffer.position() - Integer.BYTES)
+                    + " exceeds the remaining " + buffer.remaining() + " bytes");
+        return count;
+    }
+
+    private static void skipInts(ByteBuffer buffer, int count) {
+        buffer.position(buffer.position() + Integer.BYTES * count);
+    }
+
+    private static Label target(Label[] labels, int[] indexAtOffset, int offset) {
+        Label label = indexAtOffset[offset] < 0 ? null : labels[indexAtOffset[offset]];
+        if (label == null)
+            throw new IllegalArgumentException("branch to unlabelled offset " + offset);
+        return label;
+    }
+
+    private static int poolIndex(Map<String, Integer> poolIndices, String string) {
+        return poolIndices.computeIfAbsent(string, s -> poolIndices.size());
+    }
+
+    private static byte[] sha256(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new AssertionError(e);
+        }
+    }
+}
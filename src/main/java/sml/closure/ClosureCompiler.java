@@ -0,0 +1,110 @@
+package sml.closure;
+
+import sml.*;
+import sml.instruction.*;
+import sml.optimizer.Superinstructions;
+
+import java.util.List;
+
+/**
+ * <p>Compiles the methods of a program into chains of closures.</p>
+ * Every instruction becomes a {@link Node} bound to its resolved operands: the slot of its variable,
+ * its constant, the node of the next instruction, the node of its branch target, or the index and first node
+ * of the invoked method. Executing a compiled program therefore looks nothing up by name or by index.
+ * Superinstructions are compiled as the instructions they replace, as their nodes are already bound.
+ * <p>
+ * Nodes falling through to the next instruction call it directly, in chains of at most {@link #MAX_CHAIN} nodes
+ * so that the Java stack stays shallow in long methods.
+ *
+ * @author Queenie Lee
+ */
+public final class ClosureCompiler {
+    /**
+     * The maximum number of nodes calling the next node directly in a row.
+     */
+    static final int MAX_CHAIN = 32;
+
+    private ClosureCompiler() {
+    }
+
+    /**
+     * Compiles a program.
+     *
+     * @param program the program, including the method "main"
+     * @return the compiled program
+     * @throws MethodNotFoundException if "main" does not exist
+     */
+    public static ClosureProgram compile(Program program) {
+        int mainIndex = program.methodIndex(new Method.Identifier("@main"));
+        List<Method> methods = program.methods().stream()
+                .map(Superinstructions::expand)
+                .toList();
+
+        Node[][] nodes = new Node[methods.size()][];
+        Node[] entries = new Node[methods.size()];
+        int[] stackCapacities = new int[methods.size()];
+        for (int idx = 0; idx < methods.size(); idx++) {
+            nodes[idx] = createNodes(methods.get(idx), program);
+            entries[idx] = nodes[idx][0];
+            stackCapacities[idx] = methods.get(idx).maxStackDepth(program::argumentCount)
+                    .orElse(Frame.DEFAULT_STACK_CAPACITY);
+        }
+        for (int idx = 0; idx < methods.size(); idx++)
+            link(methods.get(idx), nodes[idx], entries);
+        return new ClosureProgram(methods, entries, stackCapacities, mainIndex);
+    }
+
+    private static Node[] createNodes(Method method, Program program) {
+        List<Instruction> instructions = method.instructions();
+        Node[] nodes = new Node[instructions.size()];
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            boolean tailCall = method.isTailCall(pc);
+            nodes[pc] = switch (instructions.get(pc)) {
+                case LoadInstruction load -> new Node.Load(method.slot(load.variable()), load.variable().name());
+                case StoreInstruction store -> new Node.Store(method.slot(store.variable()));
+                case PushInstruction push -> new Node.Push(push.value());
+                case AdditionInstruction a -> new Node.Add();
+                case SubtractionInstruction s -> new Node.Subtract();
+                case MultiplicationInstruction m -> new Node.Multiply();
+                case DivisionInstruction d -> new Node.Divide();
+                case CompareEqualInstruction eq -> new Node.CompareEqual();
+                case CompareGreaterThanInstruction gt -> new Node.CompareGreaterThan();
+                case GotoInstruction g -> new Node.Goto();
+                case PrintInstruction p -> new Node.Print();
+                case ReturnInstruction r -> new Node.Return();
+                case InvokeInstruction invoke when tailCall ->
+                        new Node.TailInvoke(program.methodIndex(invoke.methodName()));
+                case InvokeInstruction invoke -> new Node.Invoke(program.methodIndex(invoke.methodName()));
+                default -> throw new IllegalArgumentException("Instruction not supported by the closure compiler: "
+                        + instructions.get(pc));
+            };
+        }
+        return nodes;
+    }
+
+    private static void link(Method method, Node[] nodes, Node[] entries) {
+        Node end = new Node.End(nodes.length);
+        int chain = 0;
+        for (int pc = 0; pc < nodes.length; pc++) {
+            Node node = nodes[pc];
+            if (method.instructions().get(pc).fallsThrough())
+                node.next = pc + 1 < nodes.length ? nodes[pc + 1] : end;
+            int target = method.branchTarget(pc);
+            switch (node) {
+                case Node.CompareEqual eq -> eq.target = nodes[target];
+                case Node.CompareGreaterThan gt -> gt.target = nodes[target];
+                case Node.Goto g -> g.target = nodes[target];
+                case Node.Invoke invoke -> invoke.entry = entries[invoke.methodIndex];
+                case Node.TailInvoke invoke -> invoke.entry = entries[invoke.methodIndex];
+                case Node.Return r -> { }
+                default -> {
+                    // load, store, push, calculations and print always fall through to the next node
+                    node.chained = chain < MAX_CHAIN;
+                    chain = node.chained ? chain + 1 : 0;
+                    continue;
+                }
+            }
+            chain = 0;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package sml.closure;
+
+import sml.*;
+
+import java.util.Arrays;
+
+/**
+ * <p>Executes a program compiled into closures (see {@link ClosureCompiler}).</p>
+ * The interpreter only loops over the nodes returned by the executed nodes: it does not look up instructions
+ * by program counter and does not wrap frames in optionals. The methods execute in {@link Frame}s with the same
+ * variables and operand stacks as in the instruction interpreter, recycled through a {@link FramePool}.
+ * The frames of the invokers are kept on a call stack together with the node each invoker resumes at.
+ * An invocation in tail position replaces the frame of the current method, like in the instruction interpreter.
+ * <p>
+ * Errors are reported with the same messages as the instruction interpreter in {@link Machine}.
+ * An interpreter belongs to one machine and is not safe for use by several threads.
+ *
+ * @author Queenie Lee
+ */
+public final class ClosureInterpreter {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ClosureProgram program;
+    private final OutputSink output;
+    private final FramePool framePool = new FramePool();
+
+    private Frame frame;
+    private Frame[] invokers = new Frame[INITIAL_CAPACITY];
+    private Node[] continuations = new Node[INITIAL_CAPACITY];
+    private int depth;
+
+    public ClosureInterpreter(ClosureProgram program, OutputSink output) {
+        this.program = program;
+        this.output = output;
+    }
+
+    /**
+     * Executes the program starting from method "main".
+     *
+     * @throws BadProgramError if the program fails while running
+     */
+    public void execute() throws BadProgramError {
+        int main = program.mainIndex();
+        frame = framePool.acquire(program.method(main), main, program.stackCapacity(main), null);
+        depth = 0;
+        Node node = program.entry(main);
+        while (node != null)
+            node = node.execute(this);
+    }
+
+    Frame frame() {
+        return frame;
+    }
+
+    OutputSink output() {
+        return output;
+    }
+
+    /**
+     * Invokes a method, popping its arguments from the operand stack of the current frame into a new frame.
+     *
+     * @param methodIndex the index of the invoked method
+     * @param continuation the node the current method resumes at when the invoked method returns
+     */
+    void invoke(int methodIndex, Node continuation) throws BadProgramError {
+        Frame invoked = newFrame(methodIndex);
+        if (depth == invokers.length) {
+            invokers = Arrays.copyOf(invokers, depth * 2);
+            continuations = Arrays.copyOf(continuations, depth * 2);
+        }
+        invokers[depth] = frame;
+        continuations[depth] = continuation;
+        depth++;
+        frame = invoked;
+    }
+
+    /**
+     * Invokes a method in tail position: the new frame replaces the current frame, and the invoked method
+     * returns to the invoker of the current method.
+     *
+     * @param methodIndex the index of the invoked method
+     */
+    void tailInvoke(int methodIndex) throws BadProgramError {
+        Frame invoked = newFrame(methodIndex);
+        framePool.release(frame);
+        frame = invoked;
+    }
+
+    private Frame newFrame(int methodIndex) throws BadProgramError {
+        Method method = program.method(methodIndex);
+        Frame invoked = framePool.acquire(method, methodIndex, program.stackCapacity(methodIndex), null);
+        // the arguments take the first slots in declaration order, the first argument is on top of the stack
+        for (int slot = 0; slot < method.arguments().size(); slot++)
+            invoked.store(slot, frame.pop());
+        return invoked;
+    }
+
+    /**
+     * Returns from the current method, pushing the value onto the operand stack of its invoker.
+     *
+     * @param value the returned value
+     * @return the node the invoker resumes at, or null when "main" returns
+     */
+    Node returnFromMethod(int value) {
+        framePool.release(frame);
+        if (depth == 0) {
+            frame = null;
+            return null;
+        }
+        depth--;
+        frame = invokers[depth];
+        invokers[depth] = null;
+        Node continuation = continuations[depth];
+        continuations[depth] = null;
+        frame.push(value);
+        return continuation;
+    }
+}
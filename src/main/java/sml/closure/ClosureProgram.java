@@ -0,0 +1,52 @@
+package sml.closure;
+
+import sml.Method;
+
+import java.util.List;
+
+/**
+ * <p>A program whose methods have all been compiled into closures.</p>
+ * Methods are referred to by their index in the {@link sml.Program}. The nodes are linked once and never
+ * modified afterwards, so a compiled program can be executed by several interpreters at the same time.
+ *
+ * @author Queenie Lee
+ */
+public final class ClosureProgram {
+    private final List<Method> methods;
+    private final Node[] entries;
+    private final int[] stackCapacities;
+    private final int mainIndex;
+
+    ClosureProgram(List<Method> methods, Node[] entries, int[] stackCapacities, int mainIndex) {
+        this.methods = List.copyOf(methods);
+        this.entries = entries;
+        this.stackCapacities = stackCapacities;
+        this.mainIndex = mainIndex;
+    }
+
+    /**
+     * Returns a method, without superinstructions: they are compiled as the instructions they replace.
+     */
+    Method method(int index) {
+        return methods.get(index);
+    }
+
+    /**
+     * Returns the capacity of the operand stack of the frames of a method, whose superinstructions
+     * push their intermediate values onto the stack.
+     */
+    int stackCapacity(int index) {
+        return stackCapacities[index];
+    }
+
+    /**
+     * Returns the node of the first instruction of a method.
+     */
+    Node entry(int index) {
+        return entries[index];
+    }
+
+    public int mainIndex() {
+        return mainIndex;
+    }
+}
@@ -0,0 +1,247 @@
+package sml.closure;
+
+import sml.BadProgramError;
+import sml.Frame;
+import sml.instruction.CalculateInstruction;
+
+import java.util.Objects;
+
+/**
+ * <p>An instruction compiled into a closure: its operands are resolved and bound to the node once,
+ * by the {@link ClosureCompiler}.</p>
+ * Executing a node returns the node to execute next. A node that only falls through calls the next node
+ * directly (it is chained), so a straight sequence of instructions runs as nested Java calls without
+ * returning to the loop of the {@link ClosureInterpreter}. Branches, invocations and returns always return
+ * to the loop, so the Java stack never grows with the loops or the invocations of the program,
+ * and the compiler breaks the chains of long sequences as well.
+ *
+ * @author Queenie Lee
+ */
+abstract sealed class Node {
+    /**
+     * The node of the next instruction of the method (null for the nodes that never fall through).
+     */
+    Node next;
+    /**
+     * Whether the node calls the next node itself, instead of returning it to the loop.
+     */
+    boolean chained;
+
+    /**
+     * Executes the instruction in the current frame of the interpreter.
+     *
+     * @param interpreter the interpreter
+     * @return the node to execute next, or null if the program has ended
+     * @throws BadProgramError if the instruction fails, with the error of the instruction interpreter
+     */
+    abstract Node execute(ClosureInterpreter interpreter) throws BadProgramError;
+
+    final Node proceed(ClosureInterpreter interpreter) throws BadProgramError {
+        return chained ? next.execute(interpreter) : next;
+    }
+
+    static final class Load extends Node {
+        private final int slot;
+        private final String name;
+
+        Load(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            if (!frame.isAssigned(slot))
+                throw new BadProgramError("The variable " + name + " does not contain a value.");
+            frame.push(frame.load(slot));
+            return proceed(interpreter);
+        }
+    }
+
+    static final class Store extends Node {
+        private final int slot;
+
+        Store(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            frame.store(slot, frame.pop());
+            return proceed(interpreter);
+        }
+    }
+
+    static final class Push extends Node {
+        private final int value;
+
+        Push(int value) {
+            this.value = value;
+        }
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            interpreter.frame().push(value);
+            return proceed(interpreter);
+        }
+    }
+
+    static final class Add extends Node {
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            int value2 = frame.pop();
+            int value1 = frame.pop();
+            try {
+                frame.push(Math.addExact(value1, value2));
+            } catch (ArithmeticException ex) {
+                throw new BadProgramError(ex.toString());
+            }
+            return proceed(interpreter);
+        }
+    }
+
+    static final class Subtract extends Node {
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            int value2 = frame.pop();
+            int value1 = frame.pop();
+            try {
+                frame.push(Math.subtractExact(value1, value2));
+            } catch (ArithmeticException ex) {
+                throw new BadProgramError(ex.toString());
+            }
+            return proceed(interpreter);
+        }
+    }
+
+    static final class Multiply extends Node {
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            int value2 = frame.pop();
+            int value1 = frame.pop();
+            try {
+                frame.push(Math.multiplyExact(value1, value2));
+            } catch (ArithmeticException ex) {
+                throw new BadProgramError(ex.toString());
+            }
+            return proceed(interpreter);
+        }
+    }
+
+    static final class Divide extends Node {
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            int value2 = frame.pop();
+            int value1 = frame.pop();
+            if (value2 == 0)
+                throw CalculateInstruction.divisionByZero();
+            frame.push(value1 / value2);
+            return proceed(interpreter);
+        }
+    }
+
+    static final class CompareEqual extends Node {
+        Node target;
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            int value2 = frame.pop();
+            int value1 = frame.pop();
+            return value1 == value2 ? target : next;
+        }
+    }
+
+    static final class CompareGreaterThan extends Node {
+        Node target;
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            Frame frame = interpreter.frame();
+            int value2 = frame.pop();
+            int value1 = frame.pop();
+            return value1 > value2 ? target : next;
+        }
+    }
+
+    static final class Goto extends Node {
+        Node target;
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) {
+            return target;
+        }
+    }
+
+    static final class Print extends Node {
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            interpreter.output().print(interpreter.frame().pop());
+            return proceed(interpreter);
+        }
+    }
+
+    static final class Invoke extends Node {
+        final int methodIndex;
+        Node entry;
+
+        Invoke(int methodIndex) {
+            this.methodIndex = methodIndex;
+        }
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            interpreter.invoke(methodIndex, next);
+            return entry;
+        }
+    }
+
+    /**
+     * An invocation followed by a return: the invoked method replaces the frame of the current method.
+     */
+    static final class TailInvoke extends Node {
+        final int methodIndex;
+        Node entry;
+
+        TailInvoke(int methodIndex) {
+            this.methodIndex = methodIndex;
+        }
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            interpreter.tailInvoke(methodIndex);
+            return entry;
+        }
+    }
+
+    static final class Return extends Node {
+        @Override
+        Node execute(ClosureInterpreter interpreter) throws BadProgramError {
+            return interpreter.returnFromMethod(interpreter.frame().pop());
+        }
+    }
+
+    /**
+     * The position after the last instruction of a method, reached if the method does not return:
+     * it fails like the instruction interpreter advancing past the last instruction.
+     */
+    static final class End extends Node {
+        private final int instructionCount;
+
+        End(int instructionCount) {
+            this.instructionCount = instructionCount;
+        }
+
+        @Override
+        Node execute(ClosureInterpreter interpreter) {
+            Objects.checkIndex(instructionCount, instructionCount);
+            throw new AssertionError("Unreachable");
+        }
+    }
+}
@@ -3,11 +3,12 @@ package sml.instruction;
 import sml.*;
 
 import java.util.Optional;
-import java.util.function.Function;
 
 /**
  * <p>An abstract class for all calculation-type subclasses.</p>
- * The calculation is performed on two integer variables, value1 and value2.
+ * The calculation is performed on the two values on top of the operand stack, value1 and value2.
+ * The values are kept in local variables, not in the instruction, so an instruction can be executed
+ * by several machines at the same time.
  * It is sealed, only allowing the classes mentioned after the permits clause to extend from this class.
  *
  * @author Queenie Lee
@@ -15,8 +16,14 @@ import java.util.function.Function;
 public sealed abstract class CalculateInstruction extends Instruction
         permits AdditionInstruction, DivisionInstruction, MultiplicationInstruction, SubtractionInstruction {
 
-    int value1;
-    int value2;
+    /**
+     * The message of the {@link ArithmeticException} of a division by zero.
+     * Every engine checks the divisor itself instead of relying on the exception of the JVM division: once the JVM
+     * has compiled a hot division, the exception it throws may be a preallocated one without this message.
+     */
+    public static final String DIVISION_BY_ZERO = "/ by zero";
+
+    private static final String DIVISION_BY_ZERO_ERROR = ArithmeticException.class.getName() + ": " + DIVISION_BY_ZERO;
 
     /**
      * Constructor: an instruction with a label and an opcode
@@ -29,6 +36,16 @@ public sealed abstract class CalculateInstruction extends Instruction
         super(label, opcode);
     }
 
+    @Override
+    public int stackPops() {
+        return 2;
+    }
+
+    @Override
+    public int stackPushes() {
+        return 1;
+    }
+
     /**
      * <p>Executes the instruction in the given machine.</p>
      * In future development, an abstract class can be created between the instruction, the comparison and calculate
@@ -40,17 +57,28 @@ public sealed abstract class CalculateInstruction extends Instruction
     @Override // create BadProgramError Exception (custom) - look at PiJ
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
         Frame frame = machine.frame();
-        CalculateInstruction instruction = this;
-        this.value2 = frame.pop();
-        this.value1 = frame.pop();
+        int value2 = frame.pop();
+        int value1 = frame.pop();
         int result;
         try {
-            result = calculate.apply(instruction);
+            result = apply(value1, value2);
         } catch (ArithmeticException ex) {
             throw new BadProgramError(ex.toString());
         }
         frame.push(result);
-        return Optional.of(frame.advance());
+        return frame.advance().asOptional();
+    }
+
+    /**
+     * Applies the calculation to two values, as if value1 and value2 were on top of the operand stack.
+     *
+     * @param value1 the first operand (below the top of the stack)
+     * @param value2 the second operand (the top of the stack)
+     * @return the result of the calculation
+     * @throws ArithmeticException if the result overflows or is a division by zero
+     */
+    public int apply(int value1, int value2) {
+        return calculate(this, value1, value2);
     }
 
     /**
@@ -58,13 +86,33 @@ public sealed abstract class CalculateInstruction extends Instruction
      * object's Instruction subclass. It is obligatory to add a new case below if any extensions (i.e. new subclasses)
      * are added to this class.
      */
-    Function<CalculateInstruction,Integer> calculate = c ->
-            switch (c) {
-                case AdditionInstruction a -> Math.addExact(a.value1, a.value2);
-                case SubtractionInstruction s -> Math.subtractExact(s.value1,s.value2);
-                case MultiplicationInstruction m -> Math.multiplyExact(m.value1, m.value2);
-                case DivisionInstruction d -> d.value1 / d.value2;
-            };
+    private static int calculate(CalculateInstruction c, int value1, int value2) {
+        return switch (c) {
+            case AdditionInstruction a -> Math.addExact(value1, value2);
+            case SubtractionInstruction s -> Math.subtractExact(value1, value2);
+            case MultiplicationInstruction m -> Math.multiplyExact(value1, value2);
+            case DivisionInstruction d -> divide(value1, value2);
+        };
+    }
+
+    /**
+     * Divides, throwing a new exception on division by zero (see {@link #DIVISION_BY_ZERO}).
+     */
+    private static int divide(int value1, int value2) {
+        if (value2 == 0)
+            throw new ArithmeticException(DIVISION_BY_ZERO);
+        return value1 / value2;
+    }
+
+    /**
+     * Creates the error reported when a program divides by zero, with the same message as the other
+     * arithmetic errors (see {@link #DIVISION_BY_ZERO}).
+     *
+     * @return the error
+     */
+    public static BadProgramError divisionByZero() {
+        return new BadProgramError(DIVISION_BY_ZERO_ERROR);
+    }
 
     /**
      * Returns a string representation of the operands.
@@ -4,11 +4,12 @@ import sml.*;
 
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Function;
 
 /**
  * <p>An abstract class for all comparison-type subclasses.</p>
- * The comparison is performed on two integer variables, value1 and value2.
+ * The comparison is performed on the two values on top of the operand stack, value1 and value2.
+ * The values are kept in local variables, not in the instruction, so an instruction can be executed
+ * by several machines at the same time.
  * It is sealed, only allowing the classes mentioned after the permits clause to extend from this class.
  *
  * @author Queenie Lee
@@ -17,8 +18,6 @@ public sealed abstract class ComparisonInstruction extends Instruction
         permits CompareEqualInstruction, CompareGreaterThanInstruction {
 
     protected final Label branchLabel;
-    int value1;
-    int value2;
 
     /**
      * Constructor: an instruction with a label and an opcode
@@ -32,6 +31,20 @@ public sealed abstract class ComparisonInstruction extends Instruction
         this.branchLabel = Objects.requireNonNull(branchLabel);
     }
 
+    public Label branchLabel() {
+        return branchLabel;
+    }
+
+    @Override
+    public int stackPops() {
+        return 2;
+    }
+
+    @Override
+    public Optional<Label> optionalBranchLabel() {
+        return Optional.of(branchLabel);
+    }
+
     /**
      * <p>Executes the instruction in the given machine.</p>
      * In future development, an abstract class can be created between the instruction, the comparison and calculate
@@ -43,11 +56,21 @@ public sealed abstract class ComparisonInstruction extends Instruction
     @Override
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
         Frame frame = machine.frame();
-        ComparisonInstruction instruction = this;
-        this.value2 = frame.pop();
-        this.value1 = frame.pop();
-        boolean result = compare.apply(instruction);
-        return result ? Optional.of(frame.jumpTo(branchLabel)) : Optional.of(frame.advance());
+        int value2 = frame.pop();
+        int value1 = frame.pop();
+        boolean result = test(value1, value2);
+        return result ? machine.branch(frame) : frame.advance().asOptional();
+    }
+
+    /**
+     * Compares two values, as if value1 and value2 were on top of the operand stack.
+     *
+     * @param value1 the first operand (below the top of the stack)
+     * @param value2 the second operand (the top of the stack)
+     * @return true if the instruction branches for these values
+     */
+    public boolean test(int value1, int value2) {
+        return compare(this, value1, value2);
     }
 
     /**
@@ -55,11 +78,12 @@ public sealed abstract class ComparisonInstruction extends Instruction
      * object's Instruction subclass. It is obligatory to add a new case below if any extensions (i.e. new subclasses)
      * are added to this class.
      */
-    Function<ComparisonInstruction, Boolean> compare = c ->
-            switch (c) {
-                case CompareEqualInstruction eq -> eq.value1 == eq.value2;
-                case CompareGreaterThanInstruction gt -> gt.value1 > gt.value2;
-            };
+    private static boolean compare(ComparisonInstruction c, int value1, int value2) {
+        return switch (c) {
+            case CompareEqualInstruction eq -> value1 == value2;
+            case CompareGreaterThanInstruction gt -> value1 > value2;
+        };
+    }
 
     /**
      * Returns a string representation of the operands.
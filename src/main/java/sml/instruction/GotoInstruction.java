@@ -15,10 +15,23 @@ public class GotoInstruction extends Instruction {
         this.branchLabel = Objects.requireNonNull(branchLabel);
     }
 
+    public Label branchLabel() {
+        return branchLabel;
+    }
+
+    @Override
+    public Optional<Label> optionalBranchLabel() {
+        return Optional.of(branchLabel);
+    }
+
+    @Override
+    public boolean fallsThrough() {
+        return false;
+    }
+
     @Override
-    public Optional<Frame> execute(Machine machine) {
-        Frame frame = machine.frame();
-        return Optional.of(frame.jumpTo(branchLabel));
+    public Optional<Frame> execute(Machine machine) throws BadProgramError {
+        return machine.branch(machine.frame());
     }
 
     @Override
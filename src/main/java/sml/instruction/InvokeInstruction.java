@@ -16,9 +16,23 @@ public class InvokeInstruction extends Instruction {
         this.methodName = Objects.requireNonNull(methodName);
     }
 
+    public Method.Identifier methodName() {
+        return methodName;
+    }
+
+    /**
+     * The invoked method pops its arguments from the operand stack, but their number is only known once
+     * the program is bound, so {@link #stackPops()} does not count them: the analyses of the stack depth
+     * take them from the invoked method (see {@link Method#maxStackDepth(java.util.function.ToIntFunction)}).
+     */
+    @Override
+    public int stackPushes() {
+        return 1;
+    }
+
     @Override
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
-        return machine.newFrameForMethodInvocation(methodName);
+        return machine.invokeBoundMethod();
     }
 
     @Override
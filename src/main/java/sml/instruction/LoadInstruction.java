@@ -3,11 +3,9 @@ package sml.instruction;
 import sml.*;
 
 import java.util.Optional;
-import java.util.stream.Stream;
 
-public class LoadInstruction extends Instruction {
+public non-sealed class LoadInstruction extends VariableInstruction {
     public static final String OP_CODE = "load";
-    private final Variable.Identifier variable;
     /**
      * Constructor: an instruction with a label and an opcode
      * (opcode must be an operation of the language)
@@ -15,20 +13,14 @@ public class LoadInstruction extends Instruction {
      * @param label  optional label (can be null)
      */
     public LoadInstruction(Label label, String name) {
-        super(label, OP_CODE);
-        this.variable = new Variable.Identifier(name);
+        super(label, OP_CODE, name);
     }
 
-    /**
-     * Returns the stream of variables in the operands of the instruction.
-     * This method must be overridden if the instruction has any variables.
-     *
-     * @return the stream of variables
-     */
     @Override
-    public Stream<Variable.Identifier> variables() {
-        return Stream.of(variable);
+    public int stackPushes() {
+        return 1;
     }
+
     /**
      * Executes the instruction in the given machine.
      *
@@ -38,24 +30,10 @@ public class LoadInstruction extends Instruction {
     @Override
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
         Frame frame = machine.frame();
-        var variable_value = frame.variable(variable)
-                .load()
-                .orElseThrow(
-                        () -> new BadProgramError("The variable " + variable.name() +
-                                " does not contain a value."));
-        frame.push(variable_value);
-        return Optional.of(frame.advance());
+        int slot = frame.operandSlot(0);
+        if (!frame.isAssigned(slot))
+            throw new BadProgramError("The variable " + variable.name() + " does not contain a value.");
+        frame.push(frame.load(slot));
+        return frame.advance().asOptional();
     }
-
-    /**
-     * Returns a string representation of the operands.
-     * Used in toString().
-     *
-     * @return a string representation of the operands
-     */
-    @Override
-    protected String getOperandsString() {
-        return variable.name();
-    }
-
 }
@@ -12,12 +12,17 @@ public class PrintInstruction extends Instruction {
         super(label, OP_CODE);
     }
 
+    @Override
+    public int stackPops() {
+        return 1;
+    }
+
     @Override
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
         Frame frame = machine.frame();
         int value = frame.pop();
-        System.out.println(value);
-        return Optional.of(frame.advance());
+        machine.output().print(value);
+        return frame.advance().asOptional();
     }
 
     @Override
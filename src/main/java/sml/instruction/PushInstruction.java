@@ -19,6 +19,15 @@ public class PushInstruction extends Instruction {
         this.value = value;
     }
 
+    public int value() {
+        return value;
+    }
+
+    @Override
+    public int stackPushes() {
+        return 1;
+    }
+
     /**
      * Executes the instruction in the given machine.
      *
@@ -29,7 +38,7 @@ public class PushInstruction extends Instruction {
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
         Frame frame = machine.frame();
         frame.push(value);
-        return Optional.of(frame.advance());
+        return frame.advance().asOptional();
     }
 
     /**
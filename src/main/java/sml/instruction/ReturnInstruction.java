@@ -12,17 +12,21 @@ public class ReturnInstruction extends Instruction {
         super(label, OP_CODE);
     }
 
+    @Override
+    public int stackPops() {
+        return 1;
+    }
+
+    @Override
+    public boolean fallsThrough() {
+        return false;
+    }
+
     @Override
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
         Frame frame = machine.frame();
         int value = frame.pop();
-        Optional<Frame> optionalInvoker = frame.invoker();
-        if (optionalInvoker.isPresent()) {
-            Frame invoker = optionalInvoker.get();
-            invoker.push(value);
-            return Optional.of(invoker.advance());
-        }
-        return optionalInvoker;
+        return machine.returnFromMethodInvocation(frame, value);
     }
 
     @Override
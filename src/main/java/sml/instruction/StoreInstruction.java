@@ -3,11 +3,9 @@ package sml.instruction;
 import sml.*;
 
 import java.util.Optional;
-import java.util.stream.Stream;
 
-public class StoreInstruction extends Instruction {
+public non-sealed class StoreInstruction extends VariableInstruction {
     public static final String OP_CODE = "store";
-    private final Variable.Identifier variable;
     /**
      * Constructor: an instruction with a label and an opcode
      * (opcode must be an operation of the language)
@@ -15,20 +13,12 @@ public class StoreInstruction extends Instruction {
      * @param label  optional label (can be null)
      */
     public StoreInstruction(Label label, String name) {
-        super(label, OP_CODE);
-        this.variable = new Variable.Identifier(name);
+        super(label, OP_CODE, name);
     }
 
-    /**
-     * Returns the stream of variables in the operands of the instruction.
-     * This method must be overridden if the instruction has any variables.
-     *
-     * @return the stream of variables
-     */
     @Override
-
-    public Stream<Variable.Identifier> variables() {
-        return Stream.of(variable);
+    public int stackPops() {
+        return 1;
     }
 
     /**
@@ -41,18 +31,7 @@ public class StoreInstruction extends Instruction {
     public Optional<Frame> execute(Machine machine) throws BadProgramError {
         Frame frame = machine.frame();
         var variable_value = frame.pop();
-        frame.variable(variable).store(variable_value);
-        return Optional.of(frame.advance());
-    }
-
-    /**
-     * Returns a string representation of the operands.
-     * Used in toString().
-     *
-     * @return a string representation of the operands
-     */
-    @Override
-    protected String getOperandsString() {
-        return variable.name();
+        frame.store(frame.operandSlot(0), variable_value);
+        return frame.advance().asOptional();
     }
 }
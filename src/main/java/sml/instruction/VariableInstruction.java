@@ -0,0 +1,58 @@
+package sml.instruction;
+
+import sml.*;
+
+import java.util.stream.Stream;
+
+/**
+ * <p>An abstract class for all instructions operating on a single variable.</p>
+ * Variables are accessed through their slot in the frame. The slot is assigned when the method is created
+ * (see {@link Method#operandSlot(int, int)}), so loading and storing does not require any lookup by name,
+ * and the instruction holds no state of its own.
+ * It is sealed, only allowing the classes mentioned after the permits clause to extend from this class.
+ *
+ * @author Queenie Lee
+ */
+public sealed abstract class VariableInstruction extends Instruction
+        permits LoadInstruction, StoreInstruction {
+
+    protected final Variable.Identifier variable;
+
+    /**
+     * Constructor: an instruction with a label, an opcode and a variable
+     * (opcode must be an operation of the language)
+     *
+     * @param label  optional label (can be null)
+     * @param opcode operation name
+     * @param name   name of the variable
+     */
+    public VariableInstruction(Label label, String opcode, String name) {
+        super(label, opcode);
+        this.variable = new Variable.Identifier(name);
+    }
+
+    public Variable.Identifier variable() {
+        return variable;
+    }
+
+    /**
+     * Returns the stream of variables in the operands of the instruction.
+     *
+     * @return the stream of variables
+     */
+    @Override
+    public Stream<Variable.Identifier> variables() {
+        return Stream.of(variable);
+    }
+
+    /**
+     * Returns a string representation of the operands.
+     * Used in toString().
+     *
+     * @return a string representation of the operands
+     */
+    @Override
+    protected String getOperandsString() {
+        return variable.name();
+    }
+}
@@ -0,0 +1,24 @@
+package sml.jfr;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * <p>The check made before any SML event class is used.</p>
+ * Initialising an event class starts Flight Recorder, which takes a couple of hundred milliseconds, so the
+ * event classes are only touched once Flight Recorder has been started by a recording (on the command line,
+ * with jcmd or through the API). This check does not start it, and costs a field read.
+ *
+ * @author Queenie Lee
+ */
+public final class Events {
+
+    private Events() {
+    }
+
+    /**
+     * @return true if Flight Recorder has been started, so that the event types can be asked whether they are enabled
+     */
+    public static boolean recorderStarted() {
+        return FlightRecorder.isInitialized();
+    }
+}
@@ -0,0 +1,45 @@
+package sml.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * <p>A Java Flight Recorder event emitted when an SML program fails with a {@link sml.BadProgramError}.</p>
+ * The method and instruction are those of the failing frame, and are unknown (null and -1) for the engines
+ * that do not execute frames.
+ *
+ * @author Queenie Lee
+ */
+@Name("sml.Fault")
+@Label("SML Fault")
+@Category("SML")
+@Description("An SML program failing")
+@StackTrace(false)
+public final class FaultEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(FaultEvent.class);
+
+    @Label("Method")
+    public String method;
+
+    @Label("Instruction")
+    @Description("The index of the failing instruction in its method")
+    public int instruction;
+
+    @Label("Message")
+    public String message;
+
+    /**
+     * Records a fault. The caller checks first that Flight Recorder has been started
+     * (see {@link Events}) and that {@link #TYPE} is enabled.
+     *
+     * @param method the name of the method of the failing frame, or null
+     * @param instruction the index of the failing instruction, or -1
+     * @param message the message of the error
+     */
+    public static void emit(String method, int instruction, String message) {
+        FaultEvent event = new FaultEvent();
+        event.method = method;
+        event.instruction = instruction;
+        event.message = message;
+        event.commit();
+    }
+}
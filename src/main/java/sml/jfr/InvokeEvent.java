@@ -0,0 +1,41 @@
+package sml.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * <p>A Java Flight Recorder event emitted when the interpreter invokes an SML method.</p>
+ * The event is only created if Flight Recorder has been started (see {@link Events}) and {@link #TYPE} is
+ * enabled, so the interpreter pays a single field read per invocation when no recording is running.
+ * Invocations of methods compiled by the JIT engine are not recorded.
+ *
+ * @author Queenie Lee
+ */
+@Name("sml.Invoke")
+@Label("SML Method Invoke")
+@Category("SML")
+@Description("An SML method invoked by the interpreter")
+@StackTrace(false)
+public final class InvokeEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(InvokeEvent.class);
+
+    @Label("Method")
+    public String method;
+
+    @Label("Depth")
+    @Description("The number of SML frames, the frame of the invoked method included")
+    public int depth;
+
+    /**
+     * Records an invocation. The caller checks first that Flight Recorder has been started
+     * (see {@link Events}) and that {@link #TYPE} is enabled.
+     *
+     * @param method the name of the invoked method
+     * @param depth the depth of the new frame
+     */
+    public static void emit(String method, int depth) {
+        InvokeEvent event = new InvokeEvent();
+        event.method = method;
+        event.depth = depth;
+        event.commit();
+    }
+}
@@ -0,0 +1,46 @@
+package sml.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * <p>A Java Flight Recorder event emitted when an SML method executed by the interpreter returns.</p>
+ * The event is only created if Flight Recorder has been started (see {@link Events}) and {@link #TYPE}
+ * is enabled. A frame replaced by an invocation in tail position
+ * does not return, like for the {@link sml.ExecutionListener}.
+ *
+ * @author Queenie Lee
+ */
+@Name("sml.Return")
+@Label("SML Method Return")
+@Category("SML")
+@Description("An SML method returning in the interpreter")
+@StackTrace(false)
+public final class ReturnEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(ReturnEvent.class);
+
+    @Label("Method")
+    public String method;
+
+    @Label("Depth")
+    @Description("The number of SML frames, the frame of the returning method included")
+    public int depth;
+
+    @Label("Value")
+    public int value;
+
+    /**
+     * Records a return. The caller checks first that Flight Recorder has been started
+     * (see {@link Events}) and that {@link #TYPE} is enabled.
+     *
+     * @param method the name of the returning method
+     * @param depth the depth of its frame
+     * @param value the returned value
+     */
+    public static void emit(String method, int depth, int value) {
+        ReturnEvent event = new ReturnEvent();
+        event.method = method;
+        event.depth = depth;
+        event.value = value;
+        event.commit();
+    }
+}
@@ -0,0 +1,48 @@
+package sml.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * <p>A Java Flight Recorder event sampling the throughput of the interpreter.</p>
+ * While the event is enabled, the interpreter counts the instructions it executes and emits one event per
+ * {@link #SAMPLE_INSTRUCTIONS} instructions, and one for the remaining instructions when the program ends.
+ * The duration of the event is the time taken to execute them.
+ *
+ * @author Queenie Lee
+ */
+@Name("sml.Throughput")
+@Label("SML Instruction Throughput")
+@Category("SML")
+@Description("The instructions executed by the interpreter during the event")
+@StackTrace(false)
+public final class ThroughputEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(ThroughputEvent.class);
+
+    /**
+     * The number of instructions per sample.
+     */
+    public static final int SAMPLE_INSTRUCTIONS = 1 << 20;
+
+    @Label("Instructions")
+    public long instructions;
+
+    @Label("Instructions per Second")
+    @Frequency
+    public long instructionsPerSecond;
+
+    /**
+     * Records a sample, if it lasted long enough for the settings of the recording.
+     *
+     * @param event the event begun when the first instruction of the sample executed
+     * @param instructions the number of instructions of the sample
+     * @param nanos the time taken to execute them
+     */
+    public static void emit(ThroughputEvent event, long instructions, long nanos) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.instructions = instructions;
+            event.instructionsPerSecond = nanos > 0 ? instructions * 1_000_000_000L / nanos : 0;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package sml.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * <p>A Java Flight Recorder event timing a phase of the translation of an SML source file.</p>
+ * The phases are "read", loading the file into the lexer, and "translate", creating the methods.
+ *
+ * @author Queenie Lee
+ */
+@Name("sml.Translation")
+@Label("SML Translation")
+@Category("SML")
+@Description("A phase of the translation of an SML source file")
+public final class TranslationEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Methods")
+    @Description("The number of methods translated (0 for the read phase)")
+    public int methods;
+
+    @Label("Parallel")
+    public boolean parallel;
+}
@@ -0,0 +1,77 @@
+package sml.jit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable big-endian byte buffer for writing class files, in which written values can be patched later
+ * (the offset of a forward branch is only known once its target has been written).
+ *
+ * @author Queenie Lee
+ */
+final class ByteWriter {
+    private byte[] bytes = new byte[64];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    ByteWriter u1(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    ByteWriter u2(int value) {
+        ensureCapacity(2);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    ByteWriter u4(int value) {
+        return u2(value >>> 16).u2(value);
+    }
+
+    ByteWriter bytes(ByteWriter other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.bytes, 0, bytes, size, other.size);
+        size += other.size;
+        return this;
+    }
+
+    /**
+     * Writes a string in the class file format of CONSTANT_Utf8 entries: its length, then its characters.
+     * The strings written by the JIT compiler are names and messages without NUL or supplementary characters,
+     * for which the modified UTF-8 of class files is the same as UTF-8.
+     */
+    ByteWriter utf8(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        u2(encoded.length);
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, bytes, size, encoded.length);
+        size += encoded.length;
+        return this;
+    }
+
+    /**
+     * Overwrites two bytes written earlier.
+     *
+     * @param position the position of the first byte
+     * @param value the new value
+     */
+    void patch2(int position, int value) {
+        bytes[position] = (byte) (value >>> 8);
+        bytes[position + 1] = (byte) value;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+}
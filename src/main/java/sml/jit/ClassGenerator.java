@@ -0,0 +1,507 @@
+package sml.jit;
+
+import sml.FlowAnalysis;
+import sml.Instruction;
+import sml.Method;
+import sml.Program;
+import sml.instruction.*;
+import sml.optimizer.FusedInstruction;
+import sml.optimizer.Superinstructions;
+
+import java.util.*;
+
+/**
+ * <p>Translates a method of a program, and the methods it invokes, into a JVM class file.</p>
+ * The class implements {@link CompiledMethod} and contains one static method per SML method, whose
+ * arguments and local variables are JVM locals and whose operand stack is the JVM operand stack:
+ * <ul>
+ *   <li>load, store and push become iload, istore and integer constants</li>
+ *   <li>add, sub and mul call {@link Math#addExact(int, int)} and its siblings, which throw an
+ *       {@link ArithmeticException} on overflow like the interpreter</li>
+ *   <li>div throws an {@link ArithmeticException} with the message "/ by zero" before dividing by zero</li>
+ *   <li>comparisons and goto become if_icmpeq, if_icmpgt and goto, and return becomes ireturn</li>
+ *   <li>invoke becomes a static call, after reversing the arguments (the first argument is on top of the SML
+ *       stack but deepest on the JVM stack)</li>
+ * </ul>
+ * A method can only be compiled if the JVM verifier accepts it and it behaves exactly like the interpreter:
+ * it must not print, its operand stack must have the same depth whenever control flow merges and never underflow,
+ * every variable it loads must be assigned on every path, and it must not run past its last instruction.
+ * Instructions that cannot be reached are not compiled.
+ * <p>
+ * A class can also enter its first method in the middle, at the header of a loop the interpreter is executing
+ * (on-stack replacement): {@link CompiledMethod#invoke(int[])} then receives the values of all the variables
+ * of the frame, and a static method "osr" copies them into its locals before jumping to the loop header.
+ * The values of unassigned variables are copied as well but never read, as every load reads a variable
+ * assigned on every path, either before the loop header (in the frame) or after it (in the compiled code).
+ * <p>
+ * The class file version is 49, verified by type inference, so no stack map frames have to be computed.
+ *
+ * @author Queenie Lee
+ */
+final class ClassGenerator {
+    /**
+     * The name of the generated class, in the package of the {@link JitCompiler} defining it.
+     */
+    static final String CLASS_NAME = "sml/jit/CompiledProgram";
+
+    private static final int VERSION = 49;
+    private static final int MAX_ARGUMENTS = 255;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_0 = 0x1a;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int IALOAD = 0x2e;
+    private static final int ISTORE = 0x36;
+    private static final int ISTORE_0 = 0x3b;
+    private static final int DUP = 0x59;
+    private static final int IDIV = 0x6c;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+    private static final int WIDE = 0xc4;
+
+    /**
+     * The result of checking that a method can be compiled: its instructions (without superinstructions),
+     * the operand stack depth on entry to each instruction (-1 if the instruction cannot be reached),
+     * the maximum depth and the highest number of arguments of the methods it invokes.
+     */
+    private record CheckedMethod(Method method, int[] entryDepths, int maxDepth, int maxInvokeArguments) {
+    }
+
+    private final Program program;
+    /**
+     * The index of the instruction of the first method the class enters at, in the method without
+     * superinstructions, or -1 to enter at the first instruction.
+     */
+    private int loopEntry = -1;
+    private final ConstantPool pool = new ConstantPool();
+    /**
+     * The program index of the method compiled as static method "m" + position.
+     */
+    private final List<Integer> methodIndices = new ArrayList<>();
+    private final Map<Integer, Integer> positions = new HashMap<>();
+
+    private ClassGenerator(Program program) {
+        this.program = program;
+    }
+
+    /**
+     * Generates the class file of a method and of the methods it invokes, directly or indirectly.
+     *
+     * @param program the program
+     * @param methodIndex the index of the method invoked by {@link CompiledMethod#invoke(int[])}
+     * @return the class file, or empty if one of the methods cannot be compiled
+     */
+    static Optional<byte[]> generate(Program program, int methodIndex) {
+        return generate(program, methodIndex, -1);
+    }
+
+    /**
+     * Generates the class file of a method and of the methods it invokes, directly or indirectly,
+     * entering the method at the given instruction.
+     *
+     * @param program the program
+     * @param methodIndex the index of the method invoked by {@link CompiledMethod#invoke(int[])}
+     * @param loopEntry the index of the instruction where the method is entered, with the values of all its
+     *                  variables and an empty operand stack, or -1 to enter at the first instruction with the
+     *                  values of the arguments
+     * @return the class file, or empty if one of the methods cannot be compiled or the operand stack
+     * is not empty at the loop entry
+     */
+    static Optional<byte[]> generate(Program program, int methodIndex, int loopEntry) {
+        ClassGenerator generator = new ClassGenerator(program);
+        if (loopEntry >= 0)
+            generator.loopEntry = expandedIndex(program.method(methodIndex), loopEntry);
+        List<CheckedMethod> methods = new ArrayList<>();
+        generator.position(methodIndex);
+        for (int position = 0; position < generator.methodIndices.size(); position++) {
+            Optional<CheckedMethod> checked = generator.check(generator.methodIndices.get(position));
+            if (checked.isEmpty())
+                return Optional.empty();
+            methods.add(checked.get());
+        }
+        if (generator.loopEntry >= 0 && methods.get(0).entryDepths()[generator.loopEntry] != 0)
+            return Optional.empty();
+        return generator.write(methods);
+    }
+
+    /**
+     * Returns the index an instruction of a method has once its superinstructions are replaced by their
+     * components (see {@link Superinstructions#expand(Method)}).
+     */
+    private static int expandedIndex(Method method, int index) {
+        int expanded = 0;
+        for (int pc = 0; pc < index; pc++)
+            expanded += method.instructions().get(pc) instanceof FusedInstruction fused ? fused.components().size() : 1;
+        return expanded;
+    }
+
+    /**
+     * Returns the position of the static method compiling a method, adding the method if it is new.
+     */
+    private int position(int methodIndex) {
+        return positions.computeIfAbsent(methodIndex, idx -> {
+            methodIndices.add(idx);
+            return methodIndices.size() - 1;
+        });
+    }
+
+    /**
+     * Checks that a method can be compiled, from the stack depths and the definitely assigned variables
+     * along its control flow (see {@link FlowAnalysis}). The methods it invokes are added to the class.
+     */
+    private Optional<CheckedMethod> check(int methodIndex) {
+        Method method = Superinstructions.expand(program.method(methodIndex));
+        if (method.arguments().size() > MAX_ARGUMENTS)
+            return Optional.empty();
+        FlowAnalysis flow = FlowAnalysis.of(method, program::argumentCount);
+        if (!flow.isBalanced() || flow.fallsOffEnd())
+            return Optional.empty();
+        List<Instruction> instructions = method.instructions();
+        int[] depths = new int[instructions.size()];
+        int maxInvokeArguments = 0;
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            depths[pc] = flow.minDepth(pc);
+            if (!flow.isReachable(pc))
+                continue;
+            switch (instructions.get(pc)) {
+                case LoadInstruction load -> {
+                    if (!flow.isAssigned(pc, method.slot(load.variable())))
+                        return Optional.empty();
+                }
+                case InvokeInstruction invoke -> {
+                    maxInvokeArguments = Math.max(maxInvokeArguments, flow.pops(pc));
+                    position(program.methodIndex(invoke.methodName()));
+                }
+                case StoreInstruction s -> { }
+                case PushInstruction p -> { }
+                case CalculateInstruction c -> { }
+                case ComparisonInstruction c -> { }
+                case GotoInstruction g -> { }
+                case ReturnInstruction r -> { }
+                // print has an effect the compiled code cannot have
+                default -> {
+                    return Optional.empty();
+                }
+            }
+            if (depths[pc] < flow.pops(pc))
+                return Optional.empty();
+        }
+        return Optional.of(new CheckedMethod(method, depths, flow.maxStackDepth().orElseThrow(), maxInvokeArguments));
+    }
+
+    private Optional<byte[]> write(List<CheckedMethod> methods) {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int compiledMethod = pool.classRef("sml/jit/CompiledMethod");
+
+        ByteWriter methodsWriter = new ByteWriter();
+        methodsWriter.u2(methods.size() + (loopEntry >= 0 ? 3 : 2));
+        writeConstructor(methodsWriter);
+        if (loopEntry >= 0)
+            writeLoopEntry(methodsWriter);
+        else
+            writeEntry(methodsWriter, methods.get(0).method().arguments().size());
+        for (int position = 0; position < methods.size(); position++) {
+            if (!writeCompiledMethod(methodsWriter, methods.get(position), "m" + position,
+                    descriptor(methods.get(position).method().arguments().size()), -1))
+                return Optional.empty();
+        }
+        if (loopEntry >= 0 && !writeCompiledMethod(methodsWriter, methods.get(0), "osr", "([I)I", loopEntry))
+            return Optional.empty();
+        if (pool.isFull())
+            return Optional.empty();
+
+        ByteWriter classFile = new ByteWriter();
+        classFile.u4(0xCAFEBABE).u2(0).u2(VERSION);
+        pool.writeTo(classFile);
+        classFile.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER).u2(thisClass).u2(superClass);
+        classFile.u2(1).u2(compiledMethod);
+        classFile.u2(0); // fields
+        classFile.bytes(methodsWriter);
+        classFile.u2(0); // attributes
+        return Optional.of(classFile.toByteArray());
+    }
+
+    private void writeConstructor(ByteWriter out) {
+        ByteWriter code = new ByteWriter();
+        code.u1(ALOAD_0);
+        code.u1(INVOKESPECIAL).u2(pool.methodRef("java/lang/Object", "<init>", "()V"));
+        code.u1(RETURN);
+        writeMethod(out, ACC_PUBLIC, "<init>", "()V", 1, 1, code);
+    }
+
+    /**
+     * Writes {@link CompiledMethod#invoke(int[])}, which passes the values of the array to the first method.
+     */
+    private void writeEntry(ByteWriter out, int argumentCount) {
+        ByteWriter code = new ByteWriter();
+        for (int argument = 0; argument < argumentCount; argument++) {
+            code.u1(ALOAD_1);
+            constant(code, argument);
+            code.u1(IALOAD);
+        }
+        code.u1(INVOKESTATIC).u2(pool.methodRef(CLASS_NAME, "m0", descriptor(argumentCount)));
+        code.u1(IRETURN);
+        writeMethod(out, ACC_PUBLIC, "invoke", "([I)I", argumentCount + 2, 2, code);
+    }
+
+    /**
+     * Writes {@link CompiledMethod#invoke(int[])}, which passes the array of variable values to the method
+     * entering the first method at the loop header.
+     */
+    private void writeLoopEntry(ByteWriter out) {
+        ByteWriter code = new ByteWriter();
+        code.u1(ALOAD_1);
+        code.u1(INVOKESTATIC).u2(pool.methodRef(CLASS_NAME, "osr", "([I)I"));
+        code.u1(IRETURN);
+        writeMethod(out, ACC_PUBLIC, "invoke", "([I)I", 1, 2, code);
+    }
+
+    /**
+     * Writes the static method compiling an SML method.
+     *
+     * @return false if the code is too large
+     */
+    private boolean writeCompiledMethod(ByteWriter out, CheckedMethod method, String name, String descriptor,
+                                        int entry) {
+        Optional<ByteWriter> code = code(method, entry);
+        if (code.isEmpty())
+            return false;
+        int maxLocals = Math.max(method.method().slotCount() + method.maxInvokeArguments(), 1);
+        // the division by zero check needs three more values: the divisor, the exception and its message
+        writeMethod(out, ACC_PRIVATE | ACC_STATIC, name, descriptor, method.maxDepth() + 3, maxLocals, code.get());
+        return true;
+    }
+
+    private void writeMethod(ByteWriter out, int access, String name, String descriptor,
+                             int maxStack, int maxLocals, ByteWriter code) {
+        out.u2(access).u2(pool.utf8(name)).u2(pool.utf8(descriptor));
+        out.u2(1); // attributes: Code
+        out.u2(pool.utf8("Code"));
+        out.u4(12 + code.size());
+        out.u2(maxStack).u2(maxLocals);
+        out.u4(code.size()).bytes(code);
+        out.u2(0); // exception table
+        out.u2(0); // attributes
+    }
+
+    /**
+     * Compiles the instructions of a method.
+     *
+     * @param entry the index of the instruction to enter the method at, with the values of its variables
+     *              in the array passed as the only argument, or -1 to enter at the first instruction
+     * @return the bytecode, or empty if it is too large for the branch offsets of the JVM
+     */
+    private Optional<ByteWriter> code(CheckedMethod checked, int entry) {
+        Method method = checked.method();
+        List<Instruction> instructions = method.instructions();
+        int[] offsets = new int[instructions.size()];
+        // the position of each branch opcode, followed by the index of its target instruction
+        List<int[]> branches = new ArrayList<>();
+        // the arguments of an invocation are reversed through the locals after the variables
+        int temporaries = method.slotCount();
+
+        ByteWriter code = new ByteWriter();
+        if (entry >= 0) {
+            // the array is in local 0, which receives the value of slot 0 last
+            for (int slot = method.slotCount() - 1; slot >= 0; slot--) {
+                code.u1(ALOAD_0);
+                constant(code, slot);
+                code.u1(IALOAD);
+                local(code, ISTORE_0, ISTORE, slot);
+            }
+            branch(code, branches, GOTO, entry);
+        }
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            offsets[pc] = code.size();
+            if (checked.entryDepths()[pc] < 0)
+                continue;
+            switch (instructions.get(pc)) {
+                case LoadInstruction load -> local(code, ILOAD_0, ILOAD, method.slot(load.variable()));
+                case StoreInstruction store -> local(code, ISTORE_0, ISTORE, method.slot(store.variable()));
+                case PushInstruction push -> constant(code, push.value());
+                case AdditionInstruction a -> exact(code, "addExact");
+                case SubtractionInstruction s -> exact(code, "subtractExact");
+                case MultiplicationInstruction m -> exact(code, "multiplyExact");
+                case DivisionInstruction d -> divide(code);
+                case CompareEqualInstruction eq -> branch(code, branches, IF_ICMPEQ, method.branchTarget(pc));
+                case CompareGreaterThanInstruction gt -> branch(code, branches, IF_ICMPGT, method.branchTarget(pc));
+                case GotoInstruction g -> branch(code, branches, GOTO, method.branchTarget(pc));
+                case ReturnInstruction r -> code.u1(IRETURN);
+                case InvokeInstruction invoke -> {
+                    int callee = program.methodIndex(invoke.methodName());
+                    int argumentCount = program.method(callee).arguments().size();
+                    for (int argument = 0; argument < argumentCount; argument++)
+                        local(code, ISTORE_0, ISTORE, temporaries + argument);
+                    for (int argument = 0; argument < argumentCount; argument++)
+                        local(code, ILOAD_0, ILOAD, temporaries + argument);
+                    code.u1(INVOKESTATIC).u2(pool.methodRef(CLASS_NAME, "m" + position(callee), descriptor(argumentCount)));
+                }
+                default -> throw new IllegalStateException("Not compilable: " + instructions.get(pc));
+            }
+        }
+        for (int[] branch : branches) {
+            int offset = offsets[branch[1]] - branch[0];
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                return Optional.empty();
+            code.patch2(branch[0] + 1, offset);
+        }
+        return code.size() <= 0xFFFF ? Optional.of(code) : Optional.empty();
+    }
+
+    private static void local(ByteWriter code, int shortOpcode, int opcode, int slot) {
+        if (slot <= 3)
+            code.u1(shortOpcode + slot);
+        else if (slot <= 0xFF)
+            code.u1(opcode).u1(slot);
+        else
+            code.u1(WIDE).u1(opcode).u2(slot);
+    }
+
+    private void constant(ByteWriter code, int value) {
+        if (value >= -1 && value <= 5)
+            code.u1(ICONST_0 + value);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            code.u1(BIPUSH).u1(value);
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            code.u1(SIPUSH).u2(value);
+        else
+            loadConstant(code, pool.integer(value));
+    }
+
+    private static void loadConstant(ByteWriter code, int index) {
+        if (index <= 0xFF)
+            code.u1(LDC).u1(index);
+        else
+            code.u1(LDC_W).u2(index);
+    }
+
+    private void exact(ByteWriter code, String name) {
+        code.u1(INVOKESTATIC).u2(pool.methodRef("java/lang/Math", name, "(II)I"));
+    }
+
+    /**
+     * Divides, throwing a new exception on division by zero (see {@link CalculateInstruction#DIVISION_BY_ZERO}).
+     */
+    private void divide(ByteWriter code) {
+        code.u1(DUP);
+        int check = code.size();
+        code.u1(IFNE).u2(0);
+        code.u1(NEW).u2(pool.classRef("java/lang/ArithmeticException"));
+        code.u1(DUP);
+        loadConstant(code, pool.string(CalculateInstruction.DIVISION_BY_ZERO));
+        code.u1(INVOKESPECIAL).u2(pool.methodRef("java/lang/ArithmeticException", "<init>", "(Ljava/lang/String;)V"));
+        code.u1(ATHROW);
+        code.patch2(check + 1, code.size() - check);
+        code.u1(IDIV);
+    }
+
+    private static void branch(ByteWriter code, List<int[]> branches, int opcode, int target) {
+        branches.add(new int[] {code.size(), target});
+        code.u1(opcode).u2(0);
+    }
+
+    private static String descriptor(int argumentCount) {
+        return "(" + "I".repeat(argumentCount) + ")I";
+    }
+
+    /**
+     * The constant pool of the class, adding each constant once.
+     */
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int CLASS = 7;
+        private static final int STRING = 8;
+        private static final int METHOD_REF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteWriter entries = new ByteWriter();
+        private final Map<List<Object>, Integer> indices = new HashMap<>();
+        // index 0 is not used
+        private int count = 1;
+
+        int utf8(String value) {
+            List<Object> key = List.of(UTF8, value);
+            Integer index = indices.get(key);
+            if (index == null) {
+                entries.u1(UTF8).utf8(value);
+                index = add(key);
+            }
+            return index;
+        }
+
+        int integer(int value) {
+            List<Object> key = List.of(INTEGER, value);
+            Integer index = indices.get(key);
+            if (index == null) {
+                entries.u1(INTEGER).u4(value);
+                index = add(key);
+            }
+            return index;
+        }
+
+        int classRef(String name) {
+            return reference(CLASS, utf8(name));
+        }
+
+        int string(String value) {
+            return reference(STRING, utf8(value));
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return reference(METHOD_REF, classRef(owner), reference(NAME_AND_TYPE, utf8(name), utf8(descriptor)));
+        }
+
+        /**
+         * Adds an entry referring to other entries, which must have been added before.
+         */
+        private int reference(int tag, int... references) {
+            List<Object> key = new ArrayList<>();
+            key.add(tag);
+            for (int reference : references)
+                key.add(reference);
+            Integer index = indices.get(key);
+            if (index == null) {
+                entries.u1(tag);
+                for (int reference : references)
+                    entries.u2(reference);
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int add(List<Object> key) {
+            indices.put(key, count);
+            return count++;
+        }
+
+        boolean isFull() {
+            return count > 0xFFFF;
+        }
+
+        void writeTo(ByteWriter out) {
+            out.u2(count).bytes(entries);
+        }
+    }
+}
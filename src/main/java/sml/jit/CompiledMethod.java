@@ -0,0 +1,23 @@
+package sml.jit;
+
+/**
+ * <p>A method of a program compiled to JVM bytecode by the {@link JitCompiler}.</p>
+ * Compiled methods only calculate: they never print, so invoking one has no effect other than returning a value.
+ *
+ * @author Queenie Lee
+ */
+public interface CompiledMethod {
+
+    /**
+     * Executes the method.
+     *
+     * @param arguments the argument values, in declaration order (the array may be longer than the argument list),
+     *                  or the values of all the variables by slot for a method entered at a loop header
+     *                  (see {@link JitCompiler#compileLoop})
+     * @return the returned value
+     * @throws ArithmeticException if a calculation overflows or divides by zero, with the message of the
+     *                             interpreter's error
+     * @throws StackOverflowError if the invocations nest too deeply for the JVM stack
+     */
+    int invoke(int[] arguments);
+}
@@ -0,0 +1,212 @@
+package sml.jit;
+
+import sml.Program;
+
+import java.lang.invoke.MethodHandles;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>The compiler tier of the {@link sml.Machine}: it compiles hot methods to JVM bytecode.</p>
+ * The compiler counts the invocations of each method of a program. When a method has been invoked
+ * threshold times, it is compiled together with the methods it invokes into a hidden class
+ * (see {@link MethodHandles.Lookup#defineHiddenClass}), so that the JVM can compile the SML code
+ * like Java code. A method that cannot be compiled (see {@link ClassGenerator}) keeps running in the interpreter.
+ * <p>
+ * The compiler also counts the backward branches taken by each branch instruction, so that a method invoked
+ * only a few times, but looping for long, is compiled as well. When a backward branch has been taken
+ * backEdgeThreshold times, the method is compiled with an entry at the loop header it branches to,
+ * and the machine continues the running loop in compiled code from the values of the variables of its frame
+ * (on-stack replacement). Short runs stay below both thresholds and never pay for a compilation.
+ * Hidden classes are unloaded with the compiler once it is no longer used.
+ * <p>
+ * A compiler belongs to one machine and is not safe for use by several threads.
+ *
+ * @author Queenie Lee
+ */
+public final class JitCompiler {
+    /**
+     * The default number of invocations after which a method is compiled.
+     */
+    public static final int DEFAULT_THRESHOLD = 1000;
+    /**
+     * The default number of times a backward branch is taken before its loop is compiled.
+     */
+    public static final int DEFAULT_BACK_EDGE_THRESHOLD = 10_000;
+
+    private final Program program;
+    private final int threshold;
+    private final int backEdgeThreshold;
+    private final int[] invocationCounts;
+    private final CompiledMethod[] compiled;
+    /**
+     * The number of backward branches taken by each instruction of each method (null for the methods
+     * without taken backward branch), and the loops compiled for each loop header of each method.
+     * A count is set to {@link Integer#MIN_VALUE} when its loop cannot be compiled.
+     */
+    private final int[][] backEdgeCounts;
+    private final CompiledMethod[][] loops;
+    /**
+     * The methods that could not be compiled, or whose compiled code failed, and stay in the interpreter.
+     */
+    private final BitSet interpreted;
+
+    /**
+     * @param program the program executed by the machine
+     * @param threshold the number of invocations after which a method is compiled
+     */
+    public JitCompiler(Program program, int threshold) {
+        this(program, threshold, DEFAULT_BACK_EDGE_THRESHOLD);
+    }
+
+    /**
+     * @param program the program executed by the machine
+     * @param threshold the number of invocations after which a method is compiled
+     * @param backEdgeThreshold the number of times a backward branch is taken before its loop is compiled
+     */
+    public JitCompiler(Program program, int threshold, int backEdgeThreshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("The compilation threshold must be positive: " + threshold);
+        if (backEdgeThreshold < 1)
+            throw new IllegalArgumentException("The back edge threshold must be positive: " + backEdgeThreshold);
+        this.program = Objects.requireNonNull(program);
+        this.threshold = threshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        int methodCount = program.methods().size();
+        this.invocationCounts = new int[methodCount];
+        this.compiled = new CompiledMethod[methodCount];
+        this.backEdgeCounts = new int[methodCount][];
+        this.loops = new CompiledMethod[methodCount][];
+        this.interpreted = new BitSet(methodCount);
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    public int backEdgeThreshold() {
+        return backEdgeThreshold;
+    }
+
+    /**
+     * Counts an invocation of a method, compiling the method when it becomes hot.
+     *
+     * @param methodIndex the index of the invoked method in the program
+     * @return the compiled method, or null if the method is executed by the interpreter
+     */
+    public CompiledMethod onInvoke(int methodIndex) {
+        CompiledMethod result = compiled[methodIndex];
+        if (result != null || interpreted.get(methodIndex))
+            return result;
+        if (++invocationCounts[methodIndex] < threshold)
+            return null;
+        Optional<CompiledMethod> compilation = compile(program, methodIndex);
+        if (compilation.isPresent())
+            compiled[methodIndex] = compilation.get();
+        else
+            interpreted.set(methodIndex);
+        return compiled[methodIndex];
+    }
+
+    /**
+     * Counts a backward branch taken in a method, compiling the loop when it becomes hot.
+     *
+     * @param methodIndex the index of the method in the program
+     * @param branch the index of the branch instruction
+     * @param header the index of the instruction the branch jumps to, the loop header
+     * @return the method compiled with its entry at the loop header, invoked with the values of all its
+     * variables, or null if the loop is executed by the interpreter
+     */
+    public CompiledMethod onBackEdge(int methodIndex, int branch, int header) {
+        if (interpreted.get(methodIndex))
+            return null;
+        CompiledMethod[] methodLoops = loops[methodIndex];
+        if (methodLoops != null && methodLoops[header] != null)
+            return methodLoops[header];
+        int[] counts = backEdgeCounts[methodIndex];
+        if (counts == null) {
+            counts = new int[program.method(methodIndex).instructions().size()];
+            backEdgeCounts[methodIndex] = counts;
+        }
+        if (++counts[branch] < backEdgeThreshold)
+            return null;
+        Optional<CompiledMethod> compilation = compileLoop(program, methodIndex, header);
+        if (compilation.isEmpty()) {
+            counts[branch] = Integer.MIN_VALUE;
+            return null;
+        }
+        if (methodLoops == null) {
+            methodLoops = new CompiledMethod[counts.length];
+            loops[methodIndex] = methodLoops;
+        }
+        methodLoops[header] = compilation.get();
+        return methodLoops[header];
+    }
+
+    /**
+     * Discards the compiled code of a method, which is executed by the interpreter from now on.
+     * The machine deoptimizes a method whose invocations nest too deeply for the JVM stack,
+     * as the interpreter keeps its frames on the heap.
+     *
+     * @param methodIndex the index of the method in the program
+     */
+    public void deoptimize(int methodIndex) {
+        compiled[methodIndex] = null;
+        loops[methodIndex] = null;
+        interpreted.set(methodIndex);
+    }
+
+    public boolean isCompiled(int methodIndex) {
+        return compiled[methodIndex] != null;
+    }
+
+    /**
+     * Returns whether a loop of a method has been compiled for on-stack replacement.
+     *
+     * @param methodIndex the index of the method in the program
+     * @param header the index of the loop header in the method
+     * @return true if the loop is executed in compiled code
+     */
+    public boolean isLoopCompiled(int methodIndex, int header) {
+        return loops[methodIndex] != null && loops[methodIndex][header] != null;
+    }
+
+    /**
+     * Compiles a method of a program and the methods it invokes.
+     *
+     * @param program the program
+     * @param methodIndex the index of the method in the program
+     * @return the compiled method, or empty if the method cannot be compiled
+     */
+    public static Optional<CompiledMethod> compile(Program program, int methodIndex) {
+        return define(ClassGenerator.generate(program, methodIndex));
+    }
+
+    /**
+     * Compiles a method of a program and the methods it invokes, entering the method at a loop header.
+     *
+     * @param program the program
+     * @param methodIndex the index of the method in the program
+     * @param header the index of the loop header in the method, where the operand stack must be empty
+     * @return the compiled method, invoked with the values of all the variables of the method,
+     * or empty if the method cannot be compiled
+     */
+    public static Optional<CompiledMethod> compileLoop(Program program, int methodIndex, int header) {
+        return define(ClassGenerator.generate(program, methodIndex, header));
+    }
+
+    private static Optional<CompiledMethod> define(Optional<byte[]> classFile) {
+        if (classFile.isEmpty())
+            return Optional.empty();
+        try {
+            Class<?> compiledClass = MethodHandles.lookup()
+                    .defineHiddenClass(classFile.get(), true)
+                    .lookupClass();
+            return Optional.of((CompiledMethod) compiledClass.getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            // a class rejected by the JVM, for example one exceeding a limit of the class file format
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package sml.optimizer;
+
+import sml.*;
+import sml.instruction.CalculateInstruction;
+import sml.instruction.StoreInstruction;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>The superinstruction of two operands followed by a calculation, and optionally a store of the result.</p>
+ * For example "load x; push 1; sub" or "push 1; load i; add; store i".
+ *
+ * @author Queenie Lee
+ */
+public final class FusedCalculateInstruction extends FusedInstruction {
+    public static final String OP_CODE = "fused_calculate";
+
+    private final Operand operand1;
+    private final Operand operand2;
+    private final CalculateInstruction calculation;
+    private final Variable.Identifier target;
+
+    /**
+     * @param operand1 the first operand
+     * @param operand2 the second operand
+     * @param calculation the calculation applied to the operands
+     * @param target the variable the result is stored in, or null to push the result
+     * @param components the fused instructions
+     */
+    FusedCalculateInstruction(Operand operand1, Operand operand2, CalculateInstruction calculation,
+                              Variable.Identifier target, List<Instruction> components) {
+        super(OP_CODE, components);
+        this.operand1 = operand1;
+        this.operand2 = operand2;
+        this.calculation = calculation;
+        this.target = target;
+    }
+
+    @Override
+    public int stackPushes() {
+        return target == null ? 1 : 0;
+    }
+
+    @Override
+    public Optional<Frame> execute(Machine machine) throws BadProgramError {
+        Frame frame = machine.frame();
+        int value1 = value(frame, operand1, 0);
+        int value2 = value(frame, operand2, operand1.isVariable() ? 1 : 0);
+        int result;
+        try {
+            result = calculation.apply(value1, value2);
+        } catch (ArithmeticException ex) {
+            throw new BadProgramError(ex.toString());
+        }
+        if (target == null)
+            frame.push(result);
+        else
+            frame.store(frame.operandSlot((operand1.isVariable() ? 1 : 0) + (operand2.isVariable() ? 1 : 0)), result);
+        return frame.advance().asOptional();
+    }
+
+    @Override
+    protected String getOperandsString() {
+        return operand1 + "; " + operand2 + "; " + calculation.opcode()
+                + (target == null ? "" : "; " + StoreInstruction.OP_CODE + " " + target.name());
+    }
+}
@@ -0,0 +1,52 @@
+package sml.optimizer;
+
+import sml.*;
+import sml.instruction.ComparisonInstruction;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>The superinstruction of two operands followed by a comparison, such as "load i; load n; if_cmpgt L1".</p>
+ *
+ * @author Queenie Lee
+ */
+public final class FusedCompareInstruction extends FusedInstruction {
+    public static final String OP_CODE = "fused_compare";
+
+    private final Operand operand1;
+    private final Operand operand2;
+    private final ComparisonInstruction comparison;
+
+    /**
+     * @param operand1 the first operand
+     * @param operand2 the second operand
+     * @param comparison the comparison applied to the operands
+     * @param components the fused instructions
+     */
+    FusedCompareInstruction(Operand operand1, Operand operand2, ComparisonInstruction comparison,
+                            List<Instruction> components) {
+        super(OP_CODE, components);
+        this.operand1 = operand1;
+        this.operand2 = operand2;
+        this.comparison = comparison;
+    }
+
+    @Override
+    public Optional<Label> optionalBranchLabel() {
+        return comparison.optionalBranchLabel();
+    }
+
+    @Override
+    public Optional<Frame> execute(Machine machine) throws BadProgramError {
+        Frame frame = machine.frame();
+        int value1 = value(frame, operand1, 0);
+        int value2 = value(frame, operand2, operand1.isVariable() ? 1 : 0);
+        return comparison.test(value1, value2) ? machine.branch(frame) : frame.advance().asOptional();
+    }
+
+    @Override
+    protected String getOperandsString() {
+        return operand1 + "; " + operand2 + "; " + comparison.opcode() + " " + comparison.branchLabel();
+    }
+}
@@ -0,0 +1,72 @@
+package sml.optimizer;
+
+import sml.*;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * <p>An abstract class for all superinstructions: instructions executing a short sequence of instructions at once.</p>
+ * A superinstruction is created by {@link Superinstructions} from the sequence it replaces (its components),
+ * and takes the label of the first component. Its operands are read directly from the frame's variables
+ * or are constants, instead of being pushed and popped, so executing it requires a single dispatch and
+ * no operand stack traffic. Errors are reported with the same messages and in the same order as the components.
+ * <p>
+ * Variable slots are assigned when the method is created (see {@link Method#operandSlot(int, int)}),
+ * as for the {@link sml.instruction.VariableInstruction}s.
+ * It is sealed, only allowing the classes mentioned after the permits clause to extend from this class.
+ *
+ * @author Queenie Lee
+ */
+public sealed abstract class FusedInstruction extends Instruction
+        permits FusedCalculateInstruction, FusedCompareInstruction, FusedStoreInstruction, FusedTeeInstruction {
+
+    private final List<Instruction> components;
+
+    /**
+     * @param opcode operation name
+     * @param components the fused instructions, of which only the first can have a label
+     */
+    protected FusedInstruction(String opcode, List<Instruction> components) {
+        super(components.getFirst().optionalLabel().orElse(null), opcode);
+        this.components = List.copyOf(components);
+    }
+
+    /**
+     * Returns the instructions this superinstruction replaces, in execution order.
+     *
+     * @return the fused instructions
+     */
+    public List<Instruction> components() {
+        return components;
+    }
+
+    /**
+     * Returns the stream of variables in the operands of the instruction, in the order of the components,
+     * so that a method keeps the same slots after fusion.
+     *
+     * @return the stream of variables
+     */
+    @Override
+    public Stream<Variable.Identifier> variables() {
+        return components.stream().flatMap(Instruction::variables);
+    }
+
+    /**
+     * Returns the value of an operand, as a load or push instruction would push it.
+     *
+     * @param frame the frame the instruction executes in
+     * @param operand the operand
+     * @param index the position of the operand's variable in {@link #variables()} (ignored for a constant)
+     * @return the value
+     * @throws BadProgramError if the variable does not contain a value
+     */
+    protected int value(Frame frame, Operand operand, int index) throws BadProgramError {
+        if (!operand.isVariable())
+            return operand.constant();
+        int slot = frame.operandSlot(index);
+        if (!frame.isAssigned(slot))
+            throw new BadProgramError("The variable " + operand.variable().name() + " does not contain a value.");
+        return frame.load(slot);
+    }
+}
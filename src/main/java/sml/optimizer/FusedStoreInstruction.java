@@ -0,0 +1,43 @@
+package sml.optimizer;
+
+import sml.*;
+import sml.instruction.StoreInstruction;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>The superinstruction of an operand followed by a store, such as "load f; store fm1" or "push 0; store i".</p>
+ *
+ * @author Queenie Lee
+ */
+public final class FusedStoreInstruction extends FusedInstruction {
+    public static final String OP_CODE = "fused_store";
+
+    private final Operand operand;
+    private final Variable.Identifier target;
+
+    /**
+     * @param operand the stored operand
+     * @param target the variable the operand is stored in
+     * @param components the fused instructions
+     */
+    FusedStoreInstruction(Operand operand, Variable.Identifier target, List<Instruction> components) {
+        super(OP_CODE, components);
+        this.operand = operand;
+        this.target = target;
+    }
+
+    @Override
+    public Optional<Frame> execute(Machine machine) throws BadProgramError {
+        Frame frame = machine.frame();
+        int value = value(frame, operand, 0);
+        frame.store(frame.operandSlot(operand.isVariable() ? 1 : 0), value);
+        return frame.advance().asOptional();
+    }
+
+    @Override
+    protected String getOperandsString() {
+        return operand + "; " + StoreInstruction.OP_CODE + " " + target.name();
+    }
+}
@@ -0,0 +1,53 @@
+package sml.optimizer;
+
+import sml.*;
+import sml.instruction.LoadInstruction;
+import sml.instruction.StoreInstruction;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>The superinstruction of a store followed by a load of the same variable, "store x; load x".</p>
+ * The value on top of the operand stack is stored in the variable and stays on the stack.
+ *
+ * @author Queenie Lee
+ */
+public final class FusedTeeInstruction extends FusedInstruction {
+    public static final String OP_CODE = "fused_tee";
+
+    private final Variable.Identifier variable;
+
+    /**
+     * @param store the store instruction
+     * @param load the load of the same variable, without a label
+     */
+    FusedTeeInstruction(StoreInstruction store, LoadInstruction load) {
+        super(OP_CODE, List.of(store, load));
+        this.variable = store.variable();
+    }
+
+    @Override
+    public int stackPops() {
+        return 1;
+    }
+
+    @Override
+    public int stackPushes() {
+        return 1;
+    }
+
+    @Override
+    public Optional<Frame> execute(Machine machine) throws BadProgramError {
+        Frame frame = machine.frame();
+        int value = frame.pop();
+        frame.store(frame.operandSlot(0), value);
+        frame.push(value);
+        return frame.advance().asOptional();
+    }
+
+    @Override
+    protected String getOperandsString() {
+        return StoreInstruction.OP_CODE + " " + variable.name() + "; " + LoadInstruction.OP_CODE + " " + variable.name();
+    }
+}
@@ -0,0 +1,46 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Variable;
+import sml.instruction.LoadInstruction;
+import sml.instruction.PushInstruction;
+
+import java.util.Optional;
+
+/**
+ * <p>An operand of a superinstruction: a value that a load or push instruction would push.</p>
+ * An operand is either a variable (loaded from its slot) or a constant.
+ *
+ * @param variable the variable, or null for a constant
+ * @param constant the value of a constant (0 for a variable)
+ *
+ * @author Queenie Lee
+ */
+record Operand(Variable.Identifier variable, int constant) {
+
+    /**
+     * Returns the operand pushed by an instruction.
+     *
+     * @param instruction any instruction
+     * @return the optional operand (empty unless the instruction is a load or push instruction)
+     */
+    static Optional<Operand> of(Instruction instruction) {
+        return switch (instruction) {
+            case LoadInstruction load -> Optional.of(new Operand(load.variable(), 0));
+            case PushInstruction push -> Optional.of(new Operand(null, push.value()));
+            default -> Optional.empty();
+        };
+    }
+
+    boolean isVariable() {
+        return variable != null;
+    }
+
+    /**
+     * Returns the operand as the instruction it was fused from, without the label.
+     */
+    @Override
+    public String toString() {
+        return isVariable() ? LoadInstruction.OP_CODE + " " + variable.name() : PushInstruction.OP_CODE + " " + constant;
+    }
+}
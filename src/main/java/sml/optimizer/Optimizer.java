@@ -0,0 +1,340 @@
+package sml.optimizer;
+
+import sml.FlowAnalysis;
+import sml.Instruction;
+import sml.Label;
+import sml.Method;
+import sml.instruction.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Rewrites the methods of a translated program into equivalent, faster methods.</p>
+ * The optimizer runs between the translator and the machine. It is configured by an optimization level:
+ * <ul>
+ *   <li>0: no optimization</li>
+ *   <li>1: peephole rewrites
+ *     <ul>
+ *       <li>constant folding: "push 2; push 3; mul" becomes "push 6", and a comparison of two constants
+ *           becomes a goto or disappears</li>
+ *       <li>algebraic identities: adding or subtracting 0, multiplying or dividing by 1</li>
+ *       <li>"store x; load x" becomes a single {@link FusedTeeInstruction}</li>
+ *     </ul></li>
+ *   <li>2: also jump threading (a branch to a goto branches to the goto's target, a goto to a return returns,
+ *       a goto to the next instruction disappears) and removal of unreachable instructions</li>
+ *   <li>3: also {@link Superinstructions}</li>
+ * </ul>
+ * The rewrites preserve the behaviour of the program, including its errors:
+ * <ul>
+ *   <li>a calculation is only folded if it does not overflow or divide by zero, so that the
+ *       {@link sml.BadProgramError} is still raised when the program runs</li>
+ *   <li>an identity is only removed where the operand stack is known to contain the other operand,
+ *       so that a stack underflow is still reported</li>
+ *   <li>a method with a branch to a missing label or an invocation of a missing method is left unchanged,
+ *       so that the error is still reported when the program is set</li>
+ *   <li>as for superinstructions, instructions with a label are only removed or merged when the label
+ *       can stay on an instruction at the same position</li>
+ * </ul>
+ * The stack depth and superinstruction rewrites can enable each other, so they are repeated until
+ * no rewrite applies. {@link sml.instruction.CalculateInstruction}s have no shift operation, so multiplications
+ * by other powers of two are kept.
+ *
+ * @author Queenie Lee
+ */
+public final class Optimizer {
+    /**
+     * The highest optimization level.
+     */
+    public static final int MAX_LEVEL = 3;
+
+    private final int level;
+
+    /**
+     * @param level the optimization level, from 0 (no optimization) to {@link #MAX_LEVEL}
+     */
+    public Optimizer(int level) {
+        if (level < 0 || level > MAX_LEVEL)
+            throw new IllegalArgumentException("The optimization level must be between 0 and " + MAX_LEVEL + ": " + level);
+        this.level = level;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    /**
+     * Optimizes the methods of a program.
+     *
+     * @param methods the methods of the program
+     * @return the optimized methods, in the same order
+     */
+    public List<Method> optimize(Collection<Method> methods) {
+        if (level == 0)
+            return List.copyOf(methods);
+        Map<Method.Identifier, Integer> argumentCounts = methods.stream()
+                .collect(Collectors.toMap(Method::name, m -> m.arguments().size(), (a, b) -> a));
+        return methods.stream()
+                .map(m -> optimize(m, argumentCounts))
+                .toList();
+    }
+
+    /**
+     * Optimizes a method.
+     *
+     * @param method the method
+     * @param argumentCounts the number of arguments of each method of the program
+     * @return the optimized method (the method itself if nothing could be rewritten)
+     */
+    Method optimize(Method method, Map<Method.Identifier, Integer> argumentCounts) {
+        if (!isResolved(method, argumentCounts))
+            return method;
+
+        Method result = method;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            List<Instruction> rewritten = simplify(result, argumentCounts);
+            if (rewritten != null) {
+                result = new Method(method.name(), method.arguments(), rewritten);
+                changed = true;
+            }
+            if (level >= 2) {
+                rewritten = threadJumps(result);
+                if (rewritten != null) {
+                    result = new Method(method.name(), method.arguments(), rewritten);
+                    changed = true;
+                }
+                rewritten = removeUnreachable(result);
+                if (rewritten != null) {
+                    result = new Method(method.name(), method.arguments(), rewritten);
+                    changed = true;
+                }
+            }
+        }
+        if (level >= 3)
+            result = Superinstructions.fuse(result);
+        // after the superinstructions, which can fuse the load of "store x; load x" with the instructions after it
+        List<Instruction> teed = tee(result);
+        if (teed != null)
+            result = new Method(method.name(), method.arguments(), teed);
+        return result;
+    }
+
+    /**
+     * Returns whether every branch label and invoked method of the method exists.
+     */
+    private static boolean isResolved(Method method, Map<Method.Identifier, Integer> argumentCounts) {
+        List<Instruction> instructions = method.instructions();
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            Instruction instruction = instructions.get(pc);
+            if (instruction.optionalBranchLabel().isPresent() && method.branchTarget(pc) < 0)
+                return false;
+            if (instruction instanceof InvokeInstruction invoke && !argumentCounts.containsKey(invoke.methodName()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Folds constants and removes identities.
+     *
+     * @return the rewritten instructions, or null if nothing was rewritten
+     */
+    private static List<Instruction> simplify(Method method, Map<Method.Identifier, Integer> argumentCounts) {
+        List<Instruction> instructions = method.instructions();
+        FlowAnalysis flow = FlowAnalysis.of(method, argumentCounts::get);
+        List<Instruction> result = new ArrayList<>(instructions.size());
+        boolean changed = false;
+        int pc = 0;
+        while (pc < instructions.size()) {
+            Instruction instruction = instructions.get(pc);
+            Label label = instruction.optionalLabel().orElse(null);
+            Instruction second = unlabelled(instructions, pc + 1);
+            Instruction third = unlabelled(instructions, pc + 2);
+
+            if (instruction instanceof PushInstruction push1 && second instanceof PushInstruction push2) {
+                if (third instanceof CalculateInstruction calculation) {
+                    try {
+                        result.add(new PushInstruction(label, calculation.apply(push1.value(), push2.value())));
+                        pc += 3;
+                        changed = true;
+                        continue;
+                    } catch (ArithmeticException ex) {
+                        // the error must be raised when the program runs
+                    }
+                }
+                if (third instanceof ComparisonInstruction comparison) {
+                    if (comparison.test(push1.value(), push2.value())) {
+                        result.add(new GotoInstruction(label, comparison.branchLabel()));
+                        pc += 3;
+                        changed = true;
+                        continue;
+                    }
+                    if (label == null) {
+                        pc += 3;
+                        changed = true;
+                        continue;
+                    }
+                }
+            }
+
+            if (label == null && instruction instanceof PushInstruction push) {
+                // "push 0; add" leaves x + 0 = x on the stack, provided that x is there
+                if (isIdentity(push.value(), second) && (!flow.isReachable(pc) || flow.minDepth(pc) >= 1)) {
+                    pc += 2;
+                    changed = true;
+                    continue;
+                }
+                // "push 0; load x; add" leaves 0 + x = x
+                if (second != null && Operand.of(second).isPresent() && isIdentity(push.value(), third)
+                        && (third instanceof AdditionInstruction || third instanceof MultiplicationInstruction)) {
+                    result.add(second);
+                    pc += 3;
+                    changed = true;
+                    continue;
+                }
+            }
+
+            result.add(instruction);
+            pc++;
+        }
+        return changed ? result : null;
+    }
+
+    /**
+     * Returns whether calculating with the constant as second operand leaves the first operand unchanged.
+     */
+    private static boolean isIdentity(int constant, Instruction calculation) {
+        return switch (calculation) {
+            case AdditionInstruction a -> constant == 0;
+            case SubtractionInstruction s -> constant == 0;
+            case MultiplicationInstruction m -> constant == 1;
+            case DivisionInstruction d -> constant == 1;
+            case null, default -> false;
+        };
+    }
+
+    /**
+     * Redirects branches to gotos to the final target, replaces gotos to returns by returns,
+     * and removes gotos to the next instruction.
+     *
+     * @return the rewritten instructions, or null if nothing was rewritten
+     */
+    private static List<Instruction> threadJumps(Method method) {
+        List<Instruction> instructions = method.instructions();
+        Set<Label> branchLabels = instructions.stream()
+                .flatMap(instruction -> instruction.optionalBranchLabel().stream())
+                .collect(Collectors.toSet());
+        List<Instruction> result = new ArrayList<>(instructions.size());
+        boolean changed = false;
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            Instruction instruction = instructions.get(pc);
+            Label label = instruction.optionalLabel().orElse(null);
+            Optional<Label> branchLabel = instruction.optionalBranchLabel();
+            if (branchLabel.isEmpty()) {
+                result.add(instruction);
+                continue;
+            }
+
+            // follow the chain of gotos, stopping at a loop of gotos
+            Label finalLabel = branchLabel.get();
+            int target = method.branchTarget(pc);
+            Set<Integer> visited = new HashSet<>();
+            while (instructions.get(target) instanceof GotoInstruction next && visited.add(target)) {
+                finalLabel = next.branchLabel();
+                target = method.branchTarget(target);
+            }
+
+            Instruction rewritten = instruction;
+            if (instruction instanceof GotoInstruction && instructions.get(target) instanceof ReturnInstruction)
+                rewritten = new ReturnInstruction(label);
+            else if (!finalLabel.equals(branchLabel.get()))
+                rewritten = withBranchLabel(instruction, label, finalLabel);
+
+            // the label of the goto can only be lost if no branch refers to it
+            if (rewritten instanceof GotoInstruction && target == pc + 1
+                    && (label == null || !branchLabels.contains(label))) {
+                changed = true;
+                continue;
+            }
+            changed |= rewritten != instruction;
+            result.add(rewritten);
+        }
+        return changed ? result : null;
+    }
+
+    private static Instruction withBranchLabel(Instruction instruction, Label label, Label branchLabel) {
+        return switch (instruction) {
+            case GotoInstruction g -> new GotoInstruction(label, branchLabel);
+            case CompareEqualInstruction eq -> new CompareEqualInstruction(label, branchLabel);
+            case CompareGreaterThanInstruction gt -> new CompareGreaterThanInstruction(label, branchLabel);
+            default -> instruction;
+        };
+    }
+
+    /**
+     * Removes the instructions that cannot be reached from the first instruction.
+     *
+     * @return the reachable instructions, or null if every instruction is reachable
+     */
+    private static List<Instruction> removeUnreachable(Method method) {
+        List<Instruction> instructions = method.instructions();
+        BitSet reachable = new BitSet(instructions.size());
+        Deque<Integer> worklist = new ArrayDeque<>();
+        reachable.set(0);
+        worklist.push(0);
+        while (!worklist.isEmpty()) {
+            int pc = worklist.pop();
+            if (instructions.get(pc).fallsThrough() && pc + 1 < instructions.size() && !reachable.get(pc + 1)) {
+                reachable.set(pc + 1);
+                worklist.push(pc + 1);
+            }
+            int target = method.branchTarget(pc);
+            if (target >= 0 && !reachable.get(target)) {
+                reachable.set(target);
+                worklist.push(target);
+            }
+        }
+        if (reachable.cardinality() == instructions.size())
+            return null;
+        return reachable.stream()
+                .mapToObj(instructions::get)
+                .toList();
+    }
+
+    /**
+     * Replaces "store x; load x" by a {@link FusedTeeInstruction}.
+     *
+     * @return the rewritten instructions, or null if nothing was rewritten
+     */
+    private static List<Instruction> tee(Method method) {
+        List<Instruction> instructions = method.instructions();
+        List<Instruction> result = new ArrayList<>(instructions.size());
+        boolean changed = false;
+        int pc = 0;
+        while (pc < instructions.size()) {
+            Instruction instruction = instructions.get(pc);
+            if (instruction instanceof StoreInstruction store
+                    && unlabelled(instructions, pc + 1) instanceof LoadInstruction load
+                    && load.variable().equals(store.variable())) {
+                result.add(new FusedTeeInstruction(store, load));
+                pc += 2;
+                changed = true;
+            } else {
+                result.add(instruction);
+                pc++;
+            }
+        }
+        return changed ? result : null;
+    }
+
+    /**
+     * Returns the instruction at the given index if it exists and has no label, or null.
+     */
+    private static Instruction unlabelled(List<Instruction> instructions, int pc) {
+        if (pc >= instructions.size() || instructions.get(pc).optionalLabel().isPresent())
+            return null;
+        return instructions.get(pc);
+    }
+}
@@ -0,0 +1,129 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Method;
+import sml.instruction.CalculateInstruction;
+import sml.instruction.ComparisonInstruction;
+import sml.instruction.StoreInstruction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * <p>Fuses common sequences of instructions into superinstructions.</p>
+ * An operand is a load or a push instruction. The pass replaces, from the start of each method:
+ * <ul>
+ *   <li>two operands, a calculation and a store of the result: "push 1; load i; add; store i"
+ *       ({@link FusedCalculateInstruction})</li>
+ *   <li>two operands and a calculation: "load x; push 1; sub" ({@link FusedCalculateInstruction})</li>
+ *   <li>two operands and a comparison: "load i; load n; if_cmpgt L1" ({@link FusedCompareInstruction})</li>
+ *   <li>an operand and a store: "load f; store fm1" ({@link FusedStoreInstruction})</li>
+ * </ul>
+ * A label must stay on the first instruction of a sequence: a sequence is only fused if none of its other
+ * instructions has a label, so every branch still targets the start of an instruction.
+ * <p>
+ * The fused method has the same slots and behaviour as the original one, including its errors.
+ * The bytecode {@link sml.bytecode.Linker} expands superinstructions back into their components (see {@link #expand}).
+ *
+ * @author Queenie Lee
+ */
+public final class Superinstructions {
+
+    private Superinstructions() {
+    }
+
+    /**
+     * Fuses the instruction sequences of each method.
+     *
+     * @param methods the methods of a program
+     * @return the methods with superinstructions, in the same order
+     */
+    public static List<Method> fuse(Collection<Method> methods) {
+        return methods.stream()
+                .map(Superinstructions::fuse)
+                .toList();
+    }
+
+    /**
+     * Fuses the instruction sequences of a method.
+     *
+     * @param method the method
+     * @return the method with superinstructions (the method itself if no sequence could be fused)
+     */
+    public static Method fuse(Method method) {
+        List<Instruction> instructions = method.instructions();
+        List<Instruction> fused = new ArrayList<>(instructions.size());
+        int pc = 0;
+        while (pc < instructions.size()) {
+            Optional<FusedInstruction> superinstruction = fuseAt(instructions, pc);
+            if (superinstruction.isPresent()) {
+                fused.add(superinstruction.get());
+                pc += superinstruction.get().components().size();
+            } else {
+                fused.add(instructions.get(pc));
+                pc++;
+            }
+        }
+        if (fused.size() == instructions.size())
+            return method;
+        return new Method(method.name(), method.arguments(), fused);
+    }
+
+    /**
+     * Returns the longest superinstruction for the sequence starting at the given instruction, if any.
+     */
+    private static Optional<FusedInstruction> fuseAt(List<Instruction> instructions, int pc) {
+        Optional<Operand> operand1 = Operand.of(instructions.get(pc));
+        if (operand1.isEmpty())
+            return Optional.empty();
+
+        Optional<Operand> operand2 = unlabelled(instructions, pc + 1).flatMap(Operand::of);
+        if (operand2.isPresent()) {
+            Optional<Instruction> third = unlabelled(instructions, pc + 2);
+            if (third.isPresent() && third.get() instanceof CalculateInstruction calculation) {
+                if (unlabelled(instructions, pc + 3).orElse(null) instanceof StoreInstruction store)
+                    return Optional.of(new FusedCalculateInstruction(operand1.get(), operand2.get(), calculation,
+                            store.variable(), instructions.subList(pc, pc + 4)));
+                return Optional.of(new FusedCalculateInstruction(operand1.get(), operand2.get(), calculation,
+                        null, instructions.subList(pc, pc + 3)));
+            }
+            if (third.isPresent() && third.get() instanceof ComparisonInstruction comparison)
+                return Optional.of(new FusedCompareInstruction(operand1.get(), operand2.get(), comparison,
+                        instructions.subList(pc, pc + 3)));
+        }
+
+        if (unlabelled(instructions, pc + 1).orElse(null) instanceof StoreInstruction store)
+            return Optional.of(new FusedStoreInstruction(operand1.get(), store.variable(),
+                    instructions.subList(pc, pc + 2)));
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the instruction at the given index if it exists and has no label, so it can be part of a sequence.
+     */
+    private static Optional<Instruction> unlabelled(List<Instruction> instructions, int pc) {
+        if (pc >= instructions.size() || instructions.get(pc).optionalLabel().isPresent())
+            return Optional.empty();
+        return Optional.of(instructions.get(pc));
+    }
+
+    /**
+     * Replaces the superinstructions of a method by their components.
+     *
+     * @param method the method
+     * @return the method without superinstructions (the method itself if it has none)
+     */
+    public static Method expand(Method method) {
+        if (method.instructions().stream().noneMatch(FusedInstruction.class::isInstance))
+            return method;
+        List<Instruction> expanded = method.instructions().stream()
+                .flatMap(instruction -> instruction instanceof FusedInstruction fused
+                        ? fused.components().stream()
+                        : Stream.of(instruction))
+                .toList();
+        return new Method(method.name(), method.arguments(), expanded);
+    }
+}
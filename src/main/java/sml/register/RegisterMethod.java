@@ -0,0 +1,135 @@
+package sml.register;
+
+import sml.Method;
+import sml.Variable;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A method translated into register code.</p>
+ * The registers of a frame are laid out in three consecutive ranges:
+ * <ul>
+ *   <li>the arguments (in declaration order) and local variables, in the slots of the SML method</li>
+ *   <li>the temporaries, one for each position of the operand stack of the SML method</li>
+ *   <li>the constants, loaded when the frame is entered</li>
+ * </ul>
+ * so that every operand of an instruction is a register.
+ *
+ * @author Queenie Lee
+ */
+public final class RegisterMethod {
+    private final Method.Identifier name;
+    private final int argumentCount;
+    private final List<Variable.Identifier> slots;
+    private final int temporaryCount;
+    private final int[] constants;
+    private final boolean tracksAssignment;
+    private final int[] code;
+
+    RegisterMethod(Method.Identifier name, int argumentCount, List<Variable.Identifier> slots, int temporaryCount,
+                   int[] constants, boolean tracksAssignment, int[] code) {
+        this.name = Objects.requireNonNull(name);
+        this.argumentCount = argumentCount;
+        this.slots = List.copyOf(slots);
+        this.temporaryCount = temporaryCount;
+        this.constants = constants;
+        this.tracksAssignment = tracksAssignment;
+        this.code = code;
+    }
+
+    public Method.Identifier name() {
+        return name;
+    }
+
+    public int argumentCount() {
+        return argumentCount;
+    }
+
+    public int slotCount() {
+        return slots.size();
+    }
+
+    public Variable.Identifier slotName(int slot) {
+        return slots.get(slot);
+    }
+
+    /**
+     * Returns the first constant register.
+     */
+    public int constantBase() {
+        return slots.size() + temporaryCount;
+    }
+
+    /**
+     * Returns the values of the constant registers. The array is shared, not copied, and must not be modified.
+     */
+    int[] constants() {
+        return constants;
+    }
+
+    public int registerCount() {
+        return constantBase() + constants.length;
+    }
+
+    /**
+     * Returns whether the method loads a variable that may have no value, so that the frame must record
+     * which variables have been assigned (see {@link RegisterOpcode#LOAD_CHECKED}).
+     */
+    public boolean tracksAssignment() {
+        return tracksAssignment;
+    }
+
+    /**
+     * Returns the code array. It is shared, not copied, and must not be modified.
+     *
+     * @return the code array of the method
+     */
+    public int[] code() {
+        return code;
+    }
+
+    /**
+     * Returns the number of instructions of the code.
+     */
+    public int instructionCount() {
+        int count = 0;
+        for (int pc = 0; pc < code.length; pc += 1 + RegisterOpcode.operandCount(code[pc]))
+            count++;
+        return count;
+    }
+
+    /**
+     * Returns a string representation of the code, one instruction per line, each prefixed with its offset
+     * in the code array. Variables are shown by name, temporaries as t0, t1, ... and constants as #value.
+     *
+     * @return a disassembly of the method
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("@" + name + ":");
+        for (int pc = 0; pc < code.length; pc += 1 + RegisterOpcode.operandCount(code[pc])) {
+            int opcode = code[pc];
+            sb.append("\n").append(pc).append(": ").append(RegisterOpcode.name(opcode));
+            for (int operand = 1; operand <= RegisterOpcode.operandCount(opcode); operand++) {
+                sb.append(operand == 1 ? " " : ", ");
+                boolean isRegister = switch (opcode) {
+                    case RegisterOpcode.IF_EQ, RegisterOpcode.IF_GT -> operand < 3;
+                    case RegisterOpcode.CALL, RegisterOpcode.TAIL_CALL -> operand > 1;
+                    case RegisterOpcode.GOTO, RegisterOpcode.FAIL_END -> false;
+                    default -> true;
+                };
+                sb.append(isRegister ? register(code[pc + operand]) : String.valueOf(code[pc + operand]));
+            }
+        }
+        return sb.toString();
+    }
+
+    private String register(int register) {
+        if (register < slots.size())
+            return slots.get(register).toString();
+        if (register < constantBase())
+            return "t" + (register - slots.size());
+        return "#" + constants[register - constantBase()];
+    }
+}
@@ -0,0 +1,57 @@
+package sml.register;
+
+/**
+ * <p>The operation codes of the register code.</p>
+ * Each instruction is encoded inline in the <b>int[]</b> code array of a {@link RegisterMethod}: the opcode
+ * followed by its operands. Operands named r, a and b are register numbers relative to the frame
+ * (see {@link RegisterMethod} for the layout of the registers), branch targets are code offsets and
+ * methods are method indices.
+ *
+ * @author Queenie Lee
+ */
+public final class RegisterOpcode {
+    public static final int MOVE = 0;          // MOVE r, a              r = a
+    public static final int LOAD_CHECKED = 1;  // LOAD_CHECKED r, a      r = a, failing if variable a has no value
+    public static final int STORE_TRACKED = 2; // STORE_TRACKED r, a     r = a, recording that variable r has a value
+    public static final int ADD = 3;           // ADD r, a, b            r = a + b
+    public static final int SUB = 4;           // SUB r, a, b
+    public static final int MUL = 5;           // MUL r, a, b
+    public static final int DIV = 6;           // DIV r, a, b
+    public static final int IF_EQ = 7;         // IF_EQ a, b, target
+    public static final int IF_GT = 8;         // IF_GT a, b, target
+    public static final int GOTO = 9;          // GOTO target
+    public static final int CALL = 10;         // CALL method-index, a, r   arguments in a, a - 1, ..., result in r
+    public static final int TAIL_CALL = 11;    // TAIL_CALL method-index, a arguments in a, a - 1, ...
+    public static final int RETURN = 12;       // RETURN a
+    public static final int PRINT = 13;        // PRINT a
+    public static final int FAIL_UNDERFLOW = 14; // the operand stack of the SML method would not contain enough values
+    public static final int FAIL_END = 15;     // FAIL_END n             the SML method of n instructions would run past its last instruction
+
+    private static final String[] NAMES = {
+            "move", "load_checked", "store_tracked", "add", "sub", "mul", "div",
+            "if_eq", "if_gt", "goto", "call", "tail_call", "return", "print",
+            "fail_underflow", "fail_end"
+    };
+
+    private RegisterOpcode() {
+    }
+
+    /**
+     * Returns the number of operands that follow the given opcode in the code array.
+     *
+     * @param opcode operation code
+     * @return the number of inline operands
+     */
+    public static int operandCount(int opcode) {
+        return switch (opcode) {
+            case ADD, SUB, MUL, DIV, IF_EQ, IF_GT, CALL -> 3;
+            case MOVE, LOAD_CHECKED, STORE_TRACKED, TAIL_CALL -> 2;
+            case GOTO, RETURN, PRINT, FAIL_END -> 1;
+            default -> 0;
+        };
+    }
+
+    public static String name(int opcode) {
+        return NAMES[opcode];
+    }
+}
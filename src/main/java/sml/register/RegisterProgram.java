@@ -0,0 +1,31 @@
+package sml.register;
+
+import java.util.List;
+
+/**
+ * <p>A program whose methods have all been translated into register code.</p>
+ * Methods are referred to by their index in the {@link sml.Program}.
+ *
+ * @author Queenie Lee
+ */
+public final class RegisterProgram {
+    private final List<RegisterMethod> methods;
+    private final int mainIndex;
+
+    RegisterProgram(List<RegisterMethod> methods, int mainIndex) {
+        this.methods = List.copyOf(methods);
+        this.mainIndex = mainIndex;
+    }
+
+    public RegisterMethod method(int index) {
+        return methods.get(index);
+    }
+
+    public List<RegisterMethod> methods() {
+        return methods;
+    }
+
+    public int mainIndex() {
+        return mainIndex;
+    }
+}
@@ -0,0 +1,350 @@
+package sml.register;
+
+import sml.*;
+import sml.instruction.*;
+import sml.optimizer.Superinstructions;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Translates the stack code of the methods of a program into three-address register code.</p>
+ * Variables keep their slots as registers, and each position of the operand stack becomes a temporary register,
+ * which is possible because the stack has the same depth whenever control flow merges in the methods this
+ * translator accepts. Pushes and loads emit no instruction: the translator keeps a virtual stack recording which
+ * register holds each stack value (a constant, a variable or the temporary of the position), and the instruction
+ * consuming the value reads that register directly. For example
+ * <pre>
+ *     push 1; load i; add; store i        becomes     add i, #1, i
+ *     load i; load n; if_cmpgt L27        becomes     if_gt i, n, L27
+ * </pre>
+ * The virtual stack is written to the temporaries (flushed) before branches and at branch targets, so that every
+ * path reaching an instruction leaves the stack values in the same registers, and a variable is copied to its
+ * temporary before being overwritten while its old value is still on the stack.
+ * <p>
+ * The register code behaves exactly like the stack code, including its errors:
+ * <ul>
+ *   <li>a load of a variable that may have no value (it is not assigned on every path) is checked, other loads
+ *       need no check</li>
+ *   <li>the depth of the stack is known at each instruction, so an instruction popping more values than the
+ *       stack contains is translated into a failure</li>
+ *   <li>running past the last instruction fails like in the interpreter</li>
+ * </ul>
+ * A program with a method whose stack depths differ where control flow merges, or with an instruction unknown
+ * to the translator, is not translated.
+ *
+ * @author Queenie Lee
+ */
+public final class RegisterTranslator {
+    private final Method method;
+    private final Program program;
+    private final List<Instruction> instructions;
+
+    /**
+     * The depth of the operand stack on entry to each instruction, or -1 if the instruction cannot be reached.
+     */
+    private final int[] depths;
+    private int maxDepth;
+    /**
+     * The load instructions whose variable has a value on every path.
+     */
+    private final BitSet assignedLoads = new BitSet();
+    /**
+     * The variables loaded by a checked load, whose stores must be recorded.
+     */
+    private final BitSet trackedSlots = new BitSet();
+    private final BitSet branchTargets = new BitSet();
+
+    private final Map<Integer, Integer> constants = new LinkedHashMap<>();
+    private int[] code = new int[32];
+    private int size;
+    private final int[] offsets;
+    /**
+     * The position of each branch target operand, followed by the index of the target instruction.
+     */
+    private final List<int[]> fixups = new ArrayList<>();
+
+    /**
+     * The register holding each value of the operand stack, and the depth of the stack.
+     */
+    private int[] stack;
+    private int depth;
+    /**
+     * Whether the instruction being translated can be reached by falling through.
+     */
+    private boolean live;
+    /**
+     * The position of the last emitted instruction if it is a calculation, whose result can be written
+     * directly to the variable a store assigns it to.
+     */
+    private int lastCalculation = -1;
+
+    private RegisterTranslator(Method method, Program program) {
+        this.method = method;
+        this.program = program;
+        this.instructions = method.instructions();
+        this.depths = new int[instructions.size()];
+        this.offsets = new int[instructions.size()];
+    }
+
+    /**
+     * Translates the methods of a program.
+     *
+     * @param program the program, including the method "main"
+     * @return the translated program, or empty if a method cannot be translated
+     * @throws MethodNotFoundException if "main" does not exist
+     */
+    public static Optional<RegisterProgram> translate(Program program) {
+        int mainIndex = program.methodIndex(new Method.Identifier("@main"));
+        List<RegisterMethod> methods = new ArrayList<>();
+        for (Method method : program.methods()) {
+            Optional<RegisterMethod> translated = translate(method, program);
+            if (translated.isEmpty())
+                return Optional.empty();
+            methods.add(translated.get());
+        }
+        return Optional.of(new RegisterProgram(methods, mainIndex));
+    }
+
+    /**
+     * Translates a method of a program. Superinstructions are translated as the instructions they replace.
+     *
+     * @param method the method
+     * @param program the program containing the method
+     * @return the translated method, or empty if it cannot be translated
+     */
+    public static Optional<RegisterMethod> translate(Method method, Program program) {
+        return new RegisterTranslator(Superinstructions.expand(method), program).translate();
+    }
+
+    private Optional<RegisterMethod> translate() {
+        FlowAnalysis flow = FlowAnalysis.of(method, program::argumentCount);
+        if (!flow.isBalanced())
+            return Optional.empty();
+        for (int pc = 0; pc < instructions.size(); pc++)
+            depths[pc] = flow.minDepth(pc);
+        maxDepth = flow.maxStackDepth().orElseThrow();
+        findAssignedLoads(flow);
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            if (method.branchTarget(pc) >= 0)
+                branchTargets.set(method.branchTarget(pc));
+        }
+
+        stack = new int[maxDepth];
+        depth = 0;
+        live = true;
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            if (branchTargets.get(pc)) {
+                if (live)
+                    flush();
+                // every path reaching a branch target has written the stack to the temporaries
+                live = depths[pc] >= 0;
+                depth = Math.max(depths[pc], 0);
+                for (int position = 0; position < depth; position++)
+                    stack[position] = temporary(position);
+                lastCalculation = -1;
+            }
+            offsets[pc] = size;
+            if (!live)
+                continue;
+            if (!translate(pc))
+                return Optional.empty();
+        }
+        if (live)
+            emit(RegisterOpcode.FAIL_END, instructions.size());
+        for (int[] fixup : fixups)
+            code[fixup[0]] = offsets[fixup[1]];
+
+        List<Variable.Identifier> slots = IntStream.range(0, method.slotCount())
+                .mapToObj(method::slotVariable)
+                .toList();
+        int[] constantValues = constants.keySet().stream().mapToInt(Integer::intValue).toArray();
+        return Optional.of(new RegisterMethod(method.name(), method.arguments().size(), slots, maxDepth,
+                constantValues, !trackedSlots.isEmpty(), Arrays.copyOf(code, size)));
+    }
+
+    /**
+     * Finds the loads of variables that have a value on every path reaching them.
+     */
+    private void findAssignedLoads(FlowAnalysis flow) {
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            if (flow.isReachable(pc) && instructions.get(pc) instanceof LoadInstruction load) {
+                int slot = method.slot(load.variable());
+                if (flow.isAssigned(pc, slot))
+                    assignedLoads.set(pc);
+                else
+                    trackedSlots.set(slot);
+            }
+        }
+    }
+
+    /**
+     * Translates a reachable instruction.
+     *
+     * @return false if the instruction is unknown to the translator
+     */
+    private boolean translate(int pc) {
+        int previousCalculation = lastCalculation;
+        lastCalculation = -1;
+        switch (instructions.get(pc)) {
+            case PushInstruction push -> stack[depth++] = constant(push.value());
+            case LoadInstruction load -> {
+                int slot = method.slot(load.variable());
+                if (!assignedLoads.get(pc))
+                    emit(RegisterOpcode.LOAD_CHECKED, temporary(depth), slot);
+                stack[depth] = assignedLoads.get(pc) ? slot : temporary(depth);
+                depth++;
+            }
+            case StoreInstruction store -> {
+                if (depth < 1) {
+                    fail();
+                    break;
+                }
+                int slot = method.slot(store.variable());
+                int source = stack[--depth];
+                boolean copied = copyBeforeOverwriting(slot);
+                if (!copied && !trackedSlots.get(slot) && source == temporary(depth) && previousCalculation >= 0)
+                    code[previousCalculation + 1] = slot;
+                else
+                    emit(trackedSlots.get(slot) ? RegisterOpcode.STORE_TRACKED : RegisterOpcode.MOVE, slot, source);
+            }
+            case CalculateInstruction calculation -> {
+                if (depth < 2) {
+                    fail();
+                    break;
+                }
+                int b = stack[--depth];
+                int a = stack[--depth];
+                lastCalculation = emit(opcode(calculation), temporary(depth), a, b);
+                stack[depth] = temporary(depth);
+                depth++;
+            }
+            case ComparisonInstruction comparison -> {
+                if (depth < 2) {
+                    fail();
+                    break;
+                }
+                int b = stack[--depth];
+                int a = stack[--depth];
+                flush();
+                int opcode = comparison instanceof CompareEqualInstruction ? RegisterOpcode.IF_EQ : RegisterOpcode.IF_GT;
+                branch(emit(opcode, a, b, 0) + 3, method.branchTarget(pc));
+            }
+            case GotoInstruction g -> {
+                flush();
+                branch(emit(RegisterOpcode.GOTO, 0) + 1, method.branchTarget(pc));
+                live = false;
+            }
+            case InvokeInstruction invoke -> {
+                int callee = program.methodIndex(invoke.methodName());
+                int argumentCount = program.method(callee).arguments().size();
+                if (depth < argumentCount) {
+                    fail();
+                    break;
+                }
+                // the arguments are passed in their temporaries, the first argument in the highest
+                for (int position = depth - argumentCount; position < depth; position++)
+                    toTemporary(position);
+                int firstArgument = argumentCount > 0 ? temporary(depth - 1) : 0;
+                depth -= argumentCount;
+                if (method.isTailCall(pc)) {
+                    emit(RegisterOpcode.TAIL_CALL, callee, firstArgument);
+                    live = false;
+                } else {
+                    emit(RegisterOpcode.CALL, callee, firstArgument, temporary(depth));
+                    stack[depth] = temporary(depth);
+                    depth++;
+                }
+            }
+            case PrintInstruction p -> {
+                if (depth < 1) {
+                    fail();
+                    break;
+                }
+                emit(RegisterOpcode.PRINT, stack[--depth]);
+            }
+            case ReturnInstruction r -> {
+                if (depth < 1) {
+                    fail();
+                    break;
+                }
+                emit(RegisterOpcode.RETURN, stack[depth - 1]);
+                live = false;
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int opcode(CalculateInstruction calculation) {
+        return switch (calculation) {
+            case AdditionInstruction a -> RegisterOpcode.ADD;
+            case SubtractionInstruction s -> RegisterOpcode.SUB;
+            case MultiplicationInstruction m -> RegisterOpcode.MUL;
+            case DivisionInstruction d -> RegisterOpcode.DIV;
+        };
+    }
+
+    private int temporary(int position) {
+        return method.slotCount() + position;
+    }
+
+    private int constant(int value) {
+        return method.slotCount() + maxDepth + constants.computeIfAbsent(value, v -> constants.size());
+    }
+
+    /**
+     * Writes the stack values to their temporaries.
+     */
+    private void flush() {
+        for (int position = 0; position < depth; position++)
+            toTemporary(position);
+    }
+
+    private void toTemporary(int position) {
+        if (stack[position] != temporary(position)) {
+            emit(RegisterOpcode.MOVE, temporary(position), stack[position]);
+            stack[position] = temporary(position);
+        }
+    }
+
+    /**
+     * Copies the stack values read from a variable to their temporaries, before the variable is overwritten.
+     *
+     * @return true if a value was copied
+     */
+    private boolean copyBeforeOverwriting(int slot) {
+        boolean copied = false;
+        for (int position = 0; position < depth; position++) {
+            if (stack[position] == slot) {
+                toTemporary(position);
+                copied = true;
+            }
+        }
+        return copied;
+    }
+
+    private void fail() {
+        emit(RegisterOpcode.FAIL_UNDERFLOW);
+        live = false;
+    }
+
+    private void branch(int operandPosition, int target) {
+        fixups.add(new int[] {operandPosition, target});
+    }
+
+    /**
+     * Appends an instruction to the code.
+     *
+     * @return the position of the instruction
+     */
+    private int emit(int... instruction) {
+        if (size + instruction.length > code.length)
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + instruction.length));
+        System.arraycopy(instruction, 0, code, size, instruction.length);
+        size += instruction.length;
+        return size - instruction.length;
+    }
+}
@@ -0,0 +1,198 @@
+package sml.register;
+
+import sml.BadProgramError;
+import sml.OutputSink;
+import sml.instruction.CalculateInstruction;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import static sml.register.RegisterOpcode.*;
+
+/**
+ * <p>Executes a program translated into register code (see {@link RegisterTranslator}).</p>
+ * The registers of all the frames are kept in one array: the frame of an invoked method starts right after
+ * the registers of its invoker, and its constants are copied in when it is entered. An invocation copies the
+ * arguments from the temporaries of the invoker into the first registers of the new frame; the invoker, the
+ * offset it resumes at and the base of its registers are kept on a call stack of int arrays. The result register
+ * of an invocation is read back from the operand of the invoking instruction when the invoked method returns.
+ * An invocation in tail position reuses the registers of the current frame.
+ * <p>
+ * Errors are reported with the same messages as the instruction interpreter in {@link sml.Machine}.
+ * A VM is not safe for use by several threads.
+ *
+ * @author Queenie Lee
+ */
+public final class RegisterVM {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final RegisterProgram program;
+    private final OutputSink output;
+
+    private int[] registers = new int[INITIAL_CAPACITY * 8];
+    /**
+     * Whether each variable register has a value, maintained only in the frames of the methods
+     * that track assignment.
+     */
+    private boolean[] assigned = new boolean[INITIAL_CAPACITY * 8];
+    private int[] invokers = new int[INITIAL_CAPACITY];
+    private int[] returnOffsets = new int[INITIAL_CAPACITY];
+    private int[] bases = new int[INITIAL_CAPACITY];
+    private int[] arguments = new int[8];
+
+    public RegisterVM(RegisterProgram program, OutputSink output) {
+        this.program = program;
+        this.output = output;
+    }
+
+    /**
+     * Executes the program starting from method "main".
+     *
+     * @throws BadProgramError if the program fails while running
+     */
+    public void execute() throws BadProgramError {
+        int methodIndex = program.mainIndex();
+        RegisterMethod method = program.method(methodIndex);
+        int[] code = method.code();
+        int base = 0;
+        int depth = 0;
+        int pc = 0;
+        enter(method, base);
+        int[] r = registers;
+        try {
+            while (true) {
+                switch (code[pc]) {
+                    case MOVE -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]];
+                        pc += 3;
+                    }
+                    case LOAD_CHECKED -> {
+                        int variable = code[pc + 2];
+                        if (!assigned[base + variable])
+                            throw new BadProgramError("The variable " + method.slotName(variable).name()
+                                    + " does not contain a value.");
+                        r[base + code[pc + 1]] = r[base + variable];
+                        pc += 3;
+                    }
+                    case STORE_TRACKED -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]];
+                        assigned[base + code[pc + 1]] = true;
+                        pc += 3;
+                    }
+                    case ADD -> {
+                        r[base + code[pc + 1]] = Math.addExact(r[base + code[pc + 2]], r[base + code[pc + 3]]);
+                        pc += 4;
+                    }
+                    case SUB -> {
+                        r[base + code[pc + 1]] = Math.subtractExact(r[base + code[pc + 2]], r[base + code[pc + 3]]);
+                        pc += 4;
+                    }
+                    case MUL -> {
+                        r[base + code[pc + 1]] = Math.multiplyExact(r[base + code[pc + 2]], r[base + code[pc + 3]]);
+                        pc += 4;
+                    }
+                    case DIV -> {
+                        int divisor = r[base + code[pc + 3]];
+                        if (divisor == 0)
+                            throw CalculateInstruction.divisionByZero();
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] / divisor;
+                        pc += 4;
+                    }
+                    case IF_EQ -> pc = r[base + code[pc + 1]] == r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                    case IF_GT -> pc = r[base + code[pc + 1]] > r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                    case GOTO -> pc = code[pc + 1];
+                    case CALL -> {
+                        int invokedIndex = code[pc + 1];
+                        RegisterMethod invoked = program.method(invokedIndex);
+                        int invokedBase = base + method.registerCount();
+                        r = ensureCapacity(invokedBase + invoked.registerCount());
+                        // the arguments are in the temporaries of the invoker, the first argument in the highest
+                        int first = base + code[pc + 2];
+                        for (int slot = 0; slot < invoked.argumentCount(); slot++)
+                            r[invokedBase + slot] = r[first - slot];
+                        if (depth == invokers.length) {
+                            invokers = Arrays.copyOf(invokers, depth * 2);
+                            returnOffsets = Arrays.copyOf(returnOffsets, depth * 2);
+                            bases = Arrays.copyOf(bases, depth * 2);
+                        }
+                        invokers[depth] = methodIndex;
+                        returnOffsets[depth] = pc + 4;
+                        bases[depth] = base;
+                        depth++;
+                        methodIndex = invokedIndex;
+                        method = invoked;
+                        code = invoked.code();
+                        base = invokedBase;
+                        enter(invoked, base);
+                        pc = 0;
+                    }
+                    case TAIL_CALL -> {
+                        int invokedIndex = code[pc + 1];
+                        RegisterMethod invoked = program.method(invokedIndex);
+                        int argumentCount = invoked.argumentCount();
+                        // the arguments may overlap the registers they are copied to
+                        if (argumentCount > arguments.length)
+                            arguments = new int[argumentCount];
+                        int first = base + code[pc + 2];
+                        for (int slot = 0; slot < argumentCount; slot++)
+                            arguments[slot] = r[first - slot];
+                        r = ensureCapacity(base + invoked.registerCount());
+                        System.arraycopy(arguments, 0, r, base, argumentCount);
+                        methodIndex = invokedIndex;
+                        method = invoked;
+                        code = invoked.code();
+                        enter(invoked, base);
+                        pc = 0;
+                    }
+                    case RETURN -> {
+                        int value = r[base + code[pc + 1]];
+                        if (depth == 0)
+                            return;
+                        depth--;
+                        methodIndex = invokers[depth];
+                        method = program.method(methodIndex);
+                        code = method.code();
+                        base = bases[depth];
+                        pc = returnOffsets[depth];
+                        // the result register is the last operand of the invoking instruction
+                        r[base + code[pc - 1]] = value;
+                    }
+                    case PRINT -> {
+                        output.print(r[base + code[pc + 1]]);
+                        pc += 2;
+                    }
+                    case FAIL_UNDERFLOW -> throw new BadProgramError("Not enough values on the stack.");
+                    case FAIL_END -> {
+                        Objects.checkIndex(code[pc + 1], code[pc + 1]);
+                        throw new AssertionError("Unreachable");
+                    }
+                    default -> throw new IllegalStateException("Unknown opcode " + code[pc] + " at offset " + pc);
+                }
+            }
+        } catch (ArithmeticException ex) {
+            throw new BadProgramError(ex.toString());
+        }
+    }
+
+    /**
+     * Loads the constants of a method into the frame starting at the given base, and marks its local variables
+     * as having no value if the method tracks assignment.
+     */
+    private void enter(RegisterMethod method, int base) {
+        int[] constants = method.constants();
+        System.arraycopy(constants, 0, registers, base + method.constantBase(), constants.length);
+        if (method.tracksAssignment()) {
+            Arrays.fill(assigned, base, base + method.argumentCount(), true);
+            Arrays.fill(assigned, base + method.argumentCount(), base + method.slotCount(), false);
+        }
+    }
+
+    private int[] ensureCapacity(int size) {
+        if (size > registers.length) {
+            int capacity = Math.max(registers.length * 2, size);
+            registers = Arrays.copyOf(registers, capacity);
+            assigned = Arrays.copyOf(assigned, capacity);
+        }
+        return registers;
+    }
+}
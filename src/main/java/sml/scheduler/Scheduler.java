@@ -0,0 +1,208 @@
+package sml.scheduler;
+
+import sml.Machine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Executes many programs on a fixed number of carrier threads, in time slices.</p>
+ * Each submitted {@link Machine} executes a quantum of instructions (see {@link Machine#execute(int)}) and is
+ * then put back at the end of the run queue of its carrier, so a long program gives way to the others after
+ * every slice. Each carrier takes the oldest machine of its own queue, and steals the oldest machine of another
+ * queue when its own is empty; new machines are spread over the queues in turn. Idle carriers wait for a
+ * machine to be queued.
+ * <p>
+ * The priority of a machine is the number of quanta it executes in a slice, so that the programs share the
+ * carriers in proportion to their priorities. Slices are executed by the instruction interpreter whatever the
+ * engine of the machine, as compiled code cannot be stopped at the end of a slice: no program holds a carrier
+ * for longer than its slice.
+ * <p>
+ * A machine must not be used by another thread while it is scheduled. The carrier threads are daemon threads,
+ * and the number of threads does not depend on the number of machines.
+ *
+ * @author Queenie Lee
+ */
+public final class Scheduler implements AutoCloseable {
+    public static final int DEFAULT_QUANTUM = 10_000;
+    public static final int DEFAULT_PRIORITY = 1;
+    public static final int MAX_PRIORITY = 100;
+
+    private record Task(Machine machine, int slice, CompletableFuture<Machine> result) {
+    }
+
+    private final int quantum;
+    private final Thread[] carriers;
+    private final List<ConcurrentLinkedDeque<Task>> queues;
+    /**
+     * The number of queued tasks not yet claimed by a carrier: a carrier acquires a permit before
+     * it takes a task from the queues.
+     */
+    private final Semaphore queued = new Semaphore(0);
+    private final AtomicInteger nextQueue = new AtomicInteger();
+    private final Set<CompletableFuture<Machine>> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Creates a scheduler with a carrier per available processor and the default quantum.
+     */
+    public Scheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM);
+    }
+
+    /**
+     * @param carrierCount the number of carrier threads
+     * @param quantum the number of instructions a machine executes per quantum
+     * @throws IllegalArgumentException if the number of carriers or the quantum is not positive
+     */
+    public Scheduler(int carrierCount, int quantum) {
+        if (carrierCount <= 0)
+            throw new IllegalArgumentException("The number of carriers must be positive: " + carrierCount);
+        if (quantum <= 0)
+            throw new IllegalArgumentException("The quantum must be positive: " + quantum);
+        this.quantum = quantum;
+        List<ConcurrentLinkedDeque<Task>> queues = new ArrayList<>(carrierCount);
+        for (int idx = 0; idx < carrierCount; idx++)
+            queues.add(new ConcurrentLinkedDeque<>());
+        this.queues = List.copyOf(queues);
+        this.carriers = new Thread[carrierCount];
+        for (int idx = 0; idx < carrierCount; idx++) {
+            int carrier = idx;
+            carriers[idx] = new Thread(() -> run(carrier), "sml-carrier-" + idx);
+            carriers[idx].setDaemon(true);
+            carriers[idx].start();
+        }
+    }
+
+    /**
+     * Schedules a machine with the default priority.
+     *
+     * @see #submit(Machine, int)
+     */
+    public CompletableFuture<Machine> submit(Machine machine) {
+        return submit(machine, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Schedules a machine whose program has been set, to execute it until it ends.
+     *
+     * @param machine the machine
+     * @param priority the number of quanta the machine executes in a slice, from 1 to {@link #MAX_PRIORITY}
+     * @return a future completed with the machine when its program has ended (normally or with a fault),
+     *         or completed exceptionally if the machine threw an exception. Cancelling the future stops the
+     *         program at the end of its current slice.
+     * @throws IllegalArgumentException if the priority is out of range
+     * @throws RejectedExecutionException if the scheduler is closed
+     */
+    public CompletableFuture<Machine> submit(Machine machine, int priority) {
+        Objects.requireNonNull(machine);
+        if (priority < 1 || priority > MAX_PRIORITY)
+            throw new IllegalArgumentException("The priority must be between 1 and " + MAX_PRIORITY + ": " + priority);
+        int slice = (int) Math.min((long) quantum * priority, Integer.MAX_VALUE);
+        Task task = new Task(machine, slice, new CompletableFuture<>());
+        // the task is pending before the scheduler is checked, so close either waits for it or rejects it
+        pending.add(task.result());
+        if (closed) {
+            pending.remove(task.result());
+            throw new RejectedExecutionException("The scheduler is closed");
+        }
+        enqueue(Math.floorMod(nextQueue.getAndIncrement(), queues.size()), task);
+        return task.result();
+    }
+
+    private void enqueue(int queue, Task task) {
+        queues.get(queue).addLast(task);
+        queued.release();
+    }
+
+    private void run(int carrier) {
+        while (true) {
+            try {
+                queued.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Task task = take(carrier);
+            if (task.result().isDone()) {
+                // cancelled by the submitter
+                pending.remove(task.result());
+                continue;
+            }
+            boolean ended;
+            try {
+                ended = task.machine().execute(task.slice());
+            } catch (RuntimeException | Error e) {
+                pending.remove(task.result());
+                task.result().completeExceptionally(e);
+                continue;
+            }
+            if (ended) {
+                pending.remove(task.result());
+                task.result().complete(task.machine());
+            } else {
+                enqueue(carrier, task);
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest task of the queue of the carrier, or else steals the oldest task of another queue.
+     * The carrier holds a permit, so a task is queued that no other carrier has claimed.
+     */
+    private Task take(int carrier) {
+        Task task = queues.get(carrier).pollFirst();
+        while (task == null) {
+            int start = ThreadLocalRandom.current().nextInt(queues.size());
+            for (int idx = 0; idx < queues.size() && task == null; idx++)
+                task = queues.get((start + idx) % queues.size()).pollFirst();
+            if (task == null)
+                Thread.onSpinWait();
+        }
+        return task;
+    }
+
+    /**
+     * @return the number of carrier threads
+     */
+    public int carrierCount() {
+        return carriers.length;
+    }
+
+    /**
+     * Stops accepting machines, waits for the scheduled programs to end or be cancelled and stops the carrier threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        while (!pending.isEmpty()) {
+            for (CompletableFuture<?> result : pending.toArray(CompletableFuture[]::new)) {
+                result.handle((machine, e) -> null).join();
+                // a cancelled program is done, although a carrier may still hold it until its slice ends
+                pending.remove(result);
+            }
+        }
+        for (Thread carrier : carriers)
+            carrier.interrupt();
+        boolean interrupted = false;
+        for (Thread carrier : carriers) {
+            while (carrier.isAlive()) {
+                try {
+                    carrier.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
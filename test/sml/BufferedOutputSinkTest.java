@@ -0,0 +1,71 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferedOutputSinkTest {
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    void formatsValuesLikeStringValueOf() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutputSink sink = new BufferedOutputSink(Channels.newChannel(out), 1024);
+        int[] values = {0, 7, -7, 10, 89, -100, 123456789, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        StringBuilder expected = new StringBuilder();
+        for (int value : values) {
+            sink.print(value);
+            expected.append(value).append(NL);
+        }
+
+        assertEquals("", out.toString()); // nothing is written before the sink is flushed
+        sink.flush();
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    void flushesWhenTheBufferIsFull() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutputSink sink = new BufferedOutputSink(Channels.newChannel(out), 16);
+        sink.print(1);
+        sink.print(2);
+        sink.print(3);
+        sink.print(4);
+
+        assertTrue(out.toString().startsWith("1" + NL + "2" + NL)); // written without an explicit flush
+        sink.flush();
+        assertEquals("1" + NL + "2" + NL + "3" + NL + "4" + NL, out.toString());
+    }
+
+    @Test
+    void writesToAFile() throws IOException {
+        Path file = Files.createTempFile("sml", ".out");
+        try (BufferedOutputSink sink = BufferedOutputSink.toFile(file)) {
+            sink.print(42);
+            sink.print(-1);
+        }
+        assertEquals("42" + NL + "-1" + NL, Files.readString(file));
+        Files.delete(file);
+    }
+
+    @Test
+    void sinkThatDoesNotOwnItsChannelLeavesItOpen() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(out);
+        BufferedOutputSink sink = new BufferedOutputSink(channel, 16, false);
+        sink.print(7);
+
+        sink.close();
+
+        assertEquals("7" + NL, out.toString());
+        assertTrue(channel.isOpen());
+    }
+}
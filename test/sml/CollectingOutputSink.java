@@ -0,0 +1,27 @@
+package sml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An output sink keeping the printed values, so that tests check them without capturing the standard output.
+ */
+public final class CollectingOutputSink implements OutputSink {
+    private final List<Integer> values = new ArrayList<>();
+
+    @Override
+    public void print(int value) {
+        values.add(value);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * @return the printed values, in the order they were printed
+     */
+    public List<Integer> values() {
+        return values;
+    }
+}
@@ -0,0 +1,113 @@
+package sml;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import sml.instruction.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.*;
+
+/**
+ * Executes the same programs with every engine of the machine.
+ */
+public class EngineTest {
+    /**
+     * Executes the program and returns the printed values.
+     */
+    private static List<Integer> execute(Machine.Engine engine, Method... methods) {
+        CollectingOutputSink output = new CollectingOutputSink();
+        Machine machine = new Machine();
+        machine.setEngine(engine);
+        machine.setOutput(output);
+        machine.setProgram(List.of(methods));
+        machine.execute();
+        return output.values();
+    }
+
+    /**
+     * Executes a failing program and returns the report of its fault.
+     */
+    private static String fault(Machine.Engine engine, Method... methods) {
+        return StandardOutput.capture(() -> execute(engine, methods));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void recursiveProgram(Machine.Engine engine) {
+        assertEquals(List.of(987), execute(engine, mainPrinting("@fib", 15), fib()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void argumentsArePassedInDeclarationOrder(Machine.Engine engine) {
+        Method sub = new Method(new Method.Identifier("@sub"),
+                List.of(new Variable.Identifier("a"), new Variable.Identifier("b")),
+                List.of(new LoadInstruction(null, "a"),
+                        new LoadInstruction(null, "b"),
+                        new SubtractionInstruction(null),
+                        new ReturnInstruction(null)));
+        // @swap(a, b) invokes @sub(b, a) in tail position: its arguments overlap the variables they replace
+        Method swap = new Method(new Method.Identifier("@swap"),
+                List.of(new Variable.Identifier("a"), new Variable.Identifier("b")),
+                List.of(new LoadInstruction(null, "a"),
+                        new LoadInstruction(null, "b"),
+                        new InvokeInstruction(null, new Method.Identifier("@sub")),
+                        new ReturnInstruction(null)));
+        Method m = main(new PushInstruction(null, 3),
+                new PushInstruction(null, 10),
+                new InvokeInstruction(null, new Method.Identifier("@sub")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 3),
+                new PushInstruction(null, 10),
+                new InvokeInstruction(null, new Method.Identifier("@swap")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+
+        assertEquals(List.of(7, -7), execute(engine, m, sub, swap));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void deepRecursionKeepsItsFramesOffTheJavaStack(Machine.Engine engine) {
+        assertEquals(List.of(200_000), execute(engine, mainPrinting("@depth", 200_000), depth()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void tailRecursionRunsInConstantFrames(Machine.Engine engine) {
+        assertEquals(List.of(1250025000), execute(engine, mainPrinting("@sum", 50_000, 0), sum()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void loadingVariableWithoutValue(Machine.Engine engine) {
+        assertEquals("There is a problem with your program.\nThe variable Pete does not contain a value.\n",
+                fault(engine, main(new LoadInstruction(null, "Pete"), new ReturnInstruction(null))));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void stackTooSmall(Machine.Engine engine) {
+        assertEquals("There is a problem with your program.\nNot enough values on the stack.\n",
+                fault(engine, main(new PushInstruction(null, 3), new AdditionInstruction(null), new ReturnInstruction(null))));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void overflow(Machine.Engine engine) {
+        assertEquals("There is a problem with your program.\njava.lang.ArithmeticException: integer overflow\n",
+                fault(engine, main(new PushInstruction(null, Integer.MAX_VALUE), new PushInstruction(null, 2),
+                        new MultiplicationInstruction(null), new ReturnInstruction(null))));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void divideByZero(Machine.Engine engine) {
+        assertEquals("There is a problem with your program.\njava.lang.ArithmeticException: / by zero\n",
+                fault(engine, main(new PushInstruction(null, 3), new PushInstruction(null, 0),
+                        new DivisionInstruction(null), new ReturnInstruction(null))));
+    }
+}
@@ -0,0 +1,83 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.instruction.*;
+
+import java.util.List;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlowAnalysisTest {
+
+    @Test
+    void invokePopsTheArgumentsOfTheInvokedMethod() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(),
+                List.of(new PushInstruction(null, 1),
+                        new PushInstruction(null, 2),
+                        new InvokeInstruction(null, new Method.Identifier("@add")),
+                        new ReturnInstruction(null)));
+
+        FlowAnalysis flow = FlowAnalysis.of(m, name -> 2);
+
+        assertEquals(2, flow.pops(2));
+        assertEquals(1, flow.minDepth(3));
+        assertTrue(flow.isBalanced());
+        assertEquals(OptionalInt.of(2), flow.maxStackDepth());
+    }
+
+    @Test
+    void depthsDifferWhereBranchesMerge() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new LoadInstruction(null, "n"),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new PushInstruction(null, 1),
+                        new PushInstruction(new Label("L1"), 2),
+                        new ReturnInstruction(null)));
+
+        FlowAnalysis flow = FlowAnalysis.of(m, name -> 0);
+
+        assertEquals(0, flow.minDepth(4));
+        assertEquals(1, flow.maxDepth(4));
+        assertFalse(flow.isBalanced());
+    }
+
+    @Test
+    void variablesAreAssignedOnEveryPath() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new PushInstruction(null, 1),
+                        new StoreInstruction(null, "x"),
+                        new LoadInstruction(new Label("L1"), "x"),
+                        new ReturnInstruction(null)));
+
+        FlowAnalysis flow = FlowAnalysis.of(m, name -> 0);
+
+        assertTrue(flow.isAssigned(0, m.slot(new Variable.Identifier("n"))));
+        assertTrue(flow.isAssigned(4, m.slot(new Variable.Identifier("n"))));
+        assertFalse(flow.isAssigned(5, m.slot(new Variable.Identifier("x"))));
+    }
+
+    @Test
+    void pathsEndAtAFailingInstruction() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(),
+                List.of(new PushInstruction(null, 1),
+                        new AdditionInstruction(null),
+                        new ReturnInstruction(null),
+                        new PushInstruction(null, 1)));
+
+        FlowAnalysis flow = FlowAnalysis.of(m, name -> 0);
+
+        assertTrue(flow.isReachable(1));
+        assertFalse(flow.isReachable(2));
+        assertFalse(flow.isReachable(3));
+        assertFalse(flow.fallsOffEnd());
+    }
+}
@@ -0,0 +1,72 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.instruction.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramePoolTest {
+    private static final Method SMALL = new Method(new Method.Identifier("@small"),
+            List.of(new Variable.Identifier("x")),
+            List.of(new LoadInstruction(null, "x"),
+                    new ReturnInstruction(null)));
+
+    private static final Method LARGE = new Method(new Method.Identifier("@large"),
+            List.of(new Variable.Identifier("a"), new Variable.Identifier("b")),
+            List.of(new LoadInstruction(null, "a"),
+                    new LoadInstruction(null, "b"),
+                    new LoadInstruction(null, "a"),
+                    new AdditionInstruction(null),
+                    new AdditionInstruction(null),
+                    new StoreInstruction(null, "c"),
+                    new LoadInstruction(null, "c"),
+                    new ReturnInstruction(null)));
+
+    @Test
+    void releasedFrameIsReusedAsNew() throws BadProgramError {
+        FramePool pool = new FramePool();
+        Frame invoker = pool.acquire(SMALL, 0, 1, null);
+        Frame frame = pool.acquire(LARGE, 1, 3, invoker);
+        frame.store(0, 1);
+        frame.store(2, 3);
+        frame.push(4);
+        frame.advance();
+        pool.release(frame);
+
+        Frame reused = pool.acquire(SMALL, 0, 1, invoker);
+
+        assertSame(frame, reused);
+        assertSame(SMALL, reused.method());
+        assertEquals(0, reused.programCounter());
+        assertEquals(0, reused.stackSize());
+        assertFalse(reused.isAssigned(0));
+        assertSame(invoker, reused.invoker().orElseThrow());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    void reusedFrameGrowsForALargerMethod() throws BadProgramError {
+        FramePool pool = new FramePool();
+        pool.release(pool.acquire(SMALL, 0, 1, null));
+
+        Frame frame = pool.acquire(LARGE, 1, 3, null);
+        for (int slot = 0; slot < LARGE.slotCount(); slot++)
+            frame.store(slot, slot);
+        for (int i = 0; i < 3; i++)
+            frame.push(i);
+
+        assertEquals(2, frame.load(2));
+        assertTrue(frame.invoker().isEmpty());
+    }
+
+    @Test
+    void poolKeepsABoundedNumberOfFrames() {
+        FramePool pool = new FramePool();
+        for (int i = 0; i < FramePool.CAPACITY + 10; i++)
+            pool.release(new Frame(SMALL, null));
+
+        assertEquals(FramePool.CAPACITY, pool.size());
+    }
+}
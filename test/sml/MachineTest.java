@@ -3,14 +3,14 @@ package sml;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import sml.instruction.LoadInstruction;
-import sml.instruction.PrintInstruction;
-import sml.instruction.PushInstruction;
-import sml.instruction.StoreInstruction;
+import sml.instruction.*;
 
-import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.*;
 
 public class MachineTest {
     private Machine machine;
@@ -39,4 +39,340 @@ public class MachineTest {
 
         assertEquals("Machine: Program: [main -> Method main (m, n):  push 70, L9: store m, ...], Frame: Optional[main, l 1]", machine.toString());
     }
+
+    @Test
+    void listenerObservesInvokeReturnAndFault() {
+        List<String> events = new ArrayList<>();
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 5),
+                        new InvokeInstruction(null, new Method.Identifier("@id")),
+                        new PushInstruction(null, 0),
+                        new DivisionInstruction(null),
+                        new ReturnInstruction(null)));
+        Method id = new Method(new Method.Identifier("@id"),
+                List.of(new Variable.Identifier("x")),
+                List.of(new LoadInstruction(null, "x"),
+                        new ReturnInstruction(null)));
+        machine.setProgram(List.of(m, id));
+        machine.setListener(new ExecutionListener() {
+            @Override
+            public void beforeInstruction(Frame frame, Instruction instruction) {
+                events.add(instruction.opcode());
+            }
+
+            @Override
+            public void onInvoke(Frame frame) {
+                events.add("invoke " + frame.method().name());
+            }
+
+            @Override
+            public void onReturn(Frame frame, int value) {
+                events.add("return " + value);
+            }
+
+            @Override
+            public void onFault(Frame frame, BadProgramError error) {
+                events.add("fault " + frame.programCounter());
+            }
+        });
+
+        machine.execute();
+
+        assertEquals(List.of("invoke main", "push", "invoke", "invoke id", "load", "return", "return 5",
+                "push", "div", "fault 3"), events);
+    }
+
+    @Test
+    void listenerIsNotGivenRecycledFramesAfterReturnsAndTailCalls() {
+        List<String> events = new ArrayList<>();
+        machine.setProgram(List.of(mainPrinting("@sum", 3, 0), sum()));
+        machine.setOutput(new CollectingOutputSink());
+        machine.setListener(new ExecutionListener() {
+            @Override
+            public void afterInstruction(Frame frame, Instruction instruction) {
+                if (instruction instanceof InvokeInstruction || instruction instanceof ReturnInstruction)
+                    events.add(instruction.opcode() + " in " + frame.method().name() + " at " + frame.programCounter());
+            }
+        });
+
+        machine.execute();
+
+        // only the invocation of sum by main, whose frame is still in use, is observed: the tail calls of sum
+        // restart its frame, and the returns recycle the frames of sum and main
+        assertEquals(List.of("invoke in main at 2"), events);
+    }
+
+    @Test
+    void oneProgramRunsOnManyMachinesAtOnce() throws Exception {
+        // @count(n): adds n to a running total n times, exercising add, sub, comparisons, load and store
+        Method count = new Method(new Method.Identifier("@count"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new PushInstruction(null, 0),
+                        new StoreInstruction(null, "total"),
+                        new LoadInstruction(null, "n"),
+                        new StoreInstruction(null, "i"),
+                        new LoadInstruction(new Label("L1"), "i"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L2")),
+                        new LoadInstruction(null, "total"),
+                        new LoadInstruction(null, "n"),
+                        new AdditionInstruction(null),
+                        new StoreInstruction(null, "total"),
+                        new LoadInstruction(null, "i"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new StoreInstruction(null, "i"),
+                        new GotoInstruction(null, new Label("L1")),
+                        new LoadInstruction(new Label("L2"), "total"),
+                        new ReturnInstruction(null)));
+        Method main = new Method(new Method.Identifier("@main"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new InvokeInstruction(null, new Method.Identifier("@count")),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        Program program = new Program(List.of(main, count));
+
+        int machines = 8;
+        List<Thread> threads = new ArrayList<>();
+        CollectingOutputSink[] outputs = new CollectingOutputSink[machines];
+        for (int i = 0; i < machines; i++) {
+            int n = 300 + i;
+            CollectingOutputSink output = new CollectingOutputSink();
+            outputs[i] = output;
+            threads.add(Thread.ofPlatform().start(() -> {
+                Machine m = new Machine();
+                m.setOutput(output);
+                m.setProgram(program);
+                m.frame().store(0, n);
+                m.execute();
+            }));
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int i = 0; i < machines; i++)
+            assertEquals(List.of((300 + i) * (300 + i)), outputs[i].values());
+    }
+
+    @Test
+    void pureMethodsAreMemoized() {
+        CollectingOutputSink output = new CollectingOutputSink();
+        List<String> invoked = new ArrayList<>();
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 30),
+                        new InvokeInstruction(null, new Method.Identifier("@fib")),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        machine.setProgram(List.of(m, fib()));
+        machine.setMemoCache(new MemoCache(100, MemoCache.Eviction.LRU));
+        machine.setOutput(output);
+        machine.setListener(new ExecutionListener() {
+            @Override
+            public void onInvoke(Frame frame) {
+                invoked.add(frame.method().name().name());
+            }
+        });
+
+        machine.execute();
+
+        assertEquals(List.of(1346269), output.values());
+        // main and fib(30) down to fib(0) are each executed once, every other invocation is found in the cache
+        assertEquals(32, invoked.size());
+        assertEquals(31, machine.memoCache().orElseThrow().misses());
+        assertEquals(28, machine.memoCache().orElseThrow().hits());
+    }
+
+    @Test
+    void printingMethodsAreNotPure() {
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 3),
+                        new InvokeInstruction(null, new Method.Identifier("@show")),
+                        new ReturnInstruction(null)));
+        Method show = new Method(new Method.Identifier("@show"),
+                List.of(new Variable.Identifier("x")),
+                List.of(new LoadInstruction(null, "x"),
+                        new PrintInstruction(null),
+                        new LoadInstruction(null, "x"),
+                        new InvokeInstruction(null, new Method.Identifier("@fib")),
+                        new ReturnInstruction(null)));
+        Method caller = new Method(new Method.Identifier("@caller"),
+                List.of(),
+                List.of(new PushInstruction(null, 1),
+                        new InvokeInstruction(null, new Method.Identifier("@show")),
+                        new ReturnInstruction(null)));
+        Program program = new Program(List.of(m, show, caller, fib()));
+
+        assertTrue(program.isPure(fib()) && program.isPure(program.method(new Method.Identifier("@fib")).orElseThrow()));
+        assertFalse(program.isPure(show));
+        assertFalse(program.isPure(caller));
+        assertFalse(program.isPure(m));
+    }
+
+    private static Method parity(String name, String other, int zeroValue) {
+        return new Method(new Method.Identifier(name),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier(other)),
+                        new ReturnInstruction(null),
+                        new PushInstruction(new Label("L1"), zeroValue),
+                        new ReturnInstruction(null)));
+    }
+
+    /**
+     * Runs the program, returning the printed values, and records the longest chain of frames in depth[0].
+     */
+    private List<Integer> runCountingFrames(int[] depth) {
+        CollectingOutputSink output = new CollectingOutputSink();
+        machine.setOutput(output);
+        machine.setListener(new ExecutionListener() {
+            @Override
+            public void onInvoke(Frame frame) {
+                int frames = 1;
+                for (Frame f = frame; f.invoker().isPresent(); f = f.invoker().get())
+                    frames++;
+                depth[0] = Math.max(depth[0], frames);
+            }
+        });
+        machine.execute();
+        return output.values();
+    }
+
+    @Test
+    void tailRecursionRunsInConstantFrames() {
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 0),
+                        new PushInstruction(null, 50000),
+                        new InvokeInstruction(null, new Method.Identifier("@sum")),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        machine.setProgram(List.of(m, sum()));
+        int[] depth = {0};
+
+        assertEquals(List.of(1250025000), runCountingFrames(depth));
+        assertEquals(2, depth[0]);
+    }
+
+    @Test
+    void mutualTailCallsReplaceTheInvokerFrame() {
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 100001),
+                        new InvokeInstruction(null, new Method.Identifier("@even")),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        machine.setProgram(List.of(m, parity("@even", "@odd", 1), parity("@odd", "@even", 0)));
+        int[] depth = {0};
+
+        assertEquals(List.of(0), runCountingFrames(depth));
+        assertEquals(2, depth[0]);
+    }
+
+    @Test
+    void tailCallFromMainEndsTheProgramOnReturn() {
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 0),
+                        new PushInstruction(null, 3),
+                        new InvokeInstruction(null, new Method.Identifier("@sum")),
+                        new ReturnInstruction(null)));
+        machine.setProgram(List.of(m, sum()));
+        int[] depth = {0};
+
+        assertEquals(List.of(), runCountingFrames(depth));
+        assertEquals(1, depth[0]);
+        assertNull(machine.frame());
+    }
+
+    @Test
+    void framesOfReturnedMethodsAreReused() {
+        Set<Frame> frames = Collections.newSetFromMap(new IdentityHashMap<>());
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 15),
+                        new InvokeInstruction(null, new Method.Identifier("@fib")),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        machine.setProgram(List.of(m, fib()));
+        machine.setOutput(new BufferedOutputSink(Channels.newChannel(new ByteArrayOutputStream()), 64));
+        machine.setListener(new ExecutionListener() {
+            @Override
+            public void onInvoke(Frame frame) {
+                frames.add(frame);
+            }
+        });
+
+        machine.execute();
+
+        // fib(15) is invoked 1973 times, but never more than 15 frames are in use at once, besides the frame of main
+        assertTrue(frames.size() <= 16, "distinct frames: " + frames.size());
+    }
+
+    @Test
+    void missingMethodIsReportedWhenProgramIsSet() {
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 1),
+                        new PrintInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier("@nowhere")),
+                        new ReturnInstruction(null)));
+
+        MethodNotFoundException ex = assertThrows(MethodNotFoundException.class, () -> machine.setProgram(List.of(m)));
+        assertEquals("Method not found: nowhere", ex.getMessage());
+    }
+
+    @Test
+    void invocationsAreBoundToMethodIndices() {
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 5),
+                        new InvokeInstruction(null, new Method.Identifier("@fib")),
+                        new ReturnInstruction(null)));
+        Program program = new Program(List.of(fib(), m));
+
+        assertEquals(1, program.methodIndex(new Method.Identifier("@main")));
+        assertEquals(0, program.callee(1, 1));
+        assertEquals(-1, program.callee(1, 0));
+        assertEquals(0, program.callee(0, 8));
+        assertEquals(0, program.callee(0, 12));
+    }
+
+    @Test
+    void programIsExecutedInSlices() {
+        CollectingOutputSink output = new CollectingOutputSink();
+        Method m = new Method(new Method.Identifier("@main"),
+                List.of(),
+                List.of(new PushInstruction(null, 10),
+                        new InvokeInstruction(null, new Method.Identifier("@fib")),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        Machine machine = new Machine();
+        machine.setOutput(output);
+        machine.setProgram(List.of(m, fib()));
+
+        int slices = 1;
+        while (!machine.execute(100))
+            slices++;
+
+        assertEquals(List.of(89), output.values());
+        // fib(10) executes 177 frames of at least 7 instructions
+        assertTrue(slices > 12, "slices: " + slices);
+        assertTrue(machine.execute(100));
+        assertThrows(IllegalArgumentException.class, () -> machine.execute(0));
+    }
 }
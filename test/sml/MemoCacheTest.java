@@ -0,0 +1,62 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.instruction.*;
+
+import java.util.List;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoCacheTest {
+    private static final Method M = new Method(new Method.Identifier("@m"),
+            List.of(new Variable.Identifier("x")), List.of(new LoadInstruction(null, "x"), new ReturnInstruction(null)));
+
+    private static MemoCache.Key key(int argument) {
+        return new MemoCache.Key(M, new int[] {argument});
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        MemoCache cache = new MemoCache(4, MemoCache.Eviction.LRU);
+
+        assertEquals(OptionalInt.empty(), cache.lookup(key(1)));
+        cache.put(key(1), 10);
+        assertEquals(OptionalInt.of(10), cache.lookup(key(1)));
+        assertEquals(OptionalInt.of(10), cache.lookup(key(1)));
+
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals("MemoCache: 1/4 LRU, 2 hits, 1 misses", cache.toString());
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        MemoCache cache = new MemoCache(2, MemoCache.Eviction.LRU);
+        cache.put(key(1), 10);
+        cache.put(key(2), 20);
+        cache.lookup(key(1));
+        cache.put(key(3), 30);
+
+        assertEquals(OptionalInt.of(10), cache.lookup(key(1)));
+        assertEquals(OptionalInt.empty(), cache.lookup(key(2)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void oldestIsEvicted() {
+        MemoCache cache = new MemoCache(2, MemoCache.Eviction.FIFO);
+        cache.put(key(1), 10);
+        cache.put(key(2), 20);
+        cache.lookup(key(1));
+        cache.put(key(3), 30);
+
+        assertEquals(OptionalInt.empty(), cache.lookup(key(1)));
+        assertEquals(OptionalInt.of(20), cache.lookup(key(2)));
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new MemoCache(0, MemoCache.Eviction.LRU));
+    }
+}
@@ -3,14 +3,12 @@ package sml;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import sml.instruction.LoadInstruction;
-import sml.instruction.PrintInstruction;
-import sml.instruction.PushInstruction;
-import sml.instruction.ReturnInstruction;
+import sml.instruction.*;
 
 import java.util.List;
+import java.util.OptionalInt;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class MethodTest {
 
@@ -25,4 +23,101 @@ public class MethodTest {
                 List.of(ins0, ins1, ins2));
         assertEquals("Method test (m, n):  load m, L9: push 70, ...", m.toString());
     }
+
+    @Test
+    void slotsPlaceArgumentsBeforeLocalVariables() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(new Variable.Identifier("m"), new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new StoreInstruction(null, "y"),
+                        new LoadInstruction(null, "x"),
+                        new StoreInstruction(null, "y"),
+                        new ReturnInstruction(null)));
+        assertEquals(4, m.slotCount());
+        assertEquals(0, m.slot(new Variable.Identifier("m")));
+        assertEquals(1, m.slot(new Variable.Identifier("n")));
+        assertEquals(2, m.slot(new Variable.Identifier("y")));
+        assertEquals(3, m.slot(new Variable.Identifier("x")));
+        assertEquals(new Variable.Identifier("x"), m.slotVariable(3));
+    }
+
+    @Test
+    void sharedInstructionHasTheSlotsOfEachMethod() {
+        Instruction load = new LoadInstruction(null, "x");
+        Method m1 = new Method(new Method.Identifier("@first"),
+                List.of(new Variable.Identifier("x")),
+                List.of(load, new ReturnInstruction(null)));
+        Method m2 = new Method(new Method.Identifier("@second"),
+                List.of(new Variable.Identifier("a"), new Variable.Identifier("x")),
+                List.of(new PushInstruction(null, 1), load, new ReturnInstruction(null)));
+
+        assertEquals(0, m1.operandSlot(0, 0));
+        assertEquals(1, m2.operandSlot(1, 0));
+    }
+
+    @Test
+    void maxStackDepthFollowsBranches() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new CompareGreaterThanInstruction(null, new Label("L1")),
+                        new PushInstruction(null, 1),
+                        new ReturnInstruction(null),
+                        new LoadInstruction(new Label("L1"), "n"),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 2),
+                        new MultiplicationInstruction(null),
+                        new AdditionInstruction(null),
+                        new ReturnInstruction(null)));
+        assertEquals(OptionalInt.of(3), m.maxStackDepth(name -> 0));
+    }
+
+    @Test
+    void maxStackDepthIsUnboundedWhenALoopGrowsTheStack() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(),
+                List.of(new PushInstruction(new Label("L1"), 1),
+                        new GotoInstruction(null, new Label("L1"))));
+        assertEquals(OptionalInt.empty(), m.maxStackDepth(name -> 0));
+    }
+
+    @Test
+    void maxStackDepthCountsTheArgumentsOfInvokedMethods() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(),
+                List.of(new PushInstruction(new Label("L1"), 1),
+                        new PushInstruction(null, 2),
+                        new InvokeInstruction(null, new Method.Identifier("@add")),
+                        new StoreInstruction(null, "x"),
+                        new GotoInstruction(null, new Label("L1"))));
+        assertEquals(OptionalInt.of(2), m.maxStackDepth(name -> 2));
+        assertEquals(OptionalInt.empty(), m.maxStackDepth(name -> 0));
+    }
+
+    @Test
+    void invokeFollowedByReturnIsATailCall() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(),
+                List.of(new InvokeInstruction(null, new Method.Identifier("@a")),
+                        new PrintInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier("@b")),
+                        new ReturnInstruction(new Label("L1"))));
+        assertFalse(m.isTailCall(0));
+        assertFalse(m.isTailCall(1));
+        assertTrue(m.isTailCall(2));
+        assertFalse(m.isTailCall(3));
+    }
+
+    @Test
+    void branchTargetsAreResolvedFromLabels() {
+        Method m = new Method(new Method.Identifier("@test"),
+                List.of(),
+                List.of(new GotoInstruction(null, new Label("L2")),
+                        new GotoInstruction(new Label("L1"), new Label("L3")),
+                        new ReturnInstruction(new Label("L2"))));
+        assertEquals(2, m.branchTarget(0));
+        assertEquals(-1, m.branchTarget(1));
+        assertEquals(-1, m.branchTarget(2));
+    }
 }
@@ -0,0 +1,82 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.*;
+
+public class ProfilerTest {
+
+    private static Profiler profile(Method... methods) {
+        Profiler profiler = new Profiler();
+        Machine machine = new Machine();
+        machine.setOutput(new CollectingOutputSink());
+        machine.setListener(profiler);
+        machine.setProgram(List.of(methods));
+        machine.execute();
+        return profiler;
+    }
+
+    @Test
+    void countsInstructionsCallsAndFrameDepth() {
+        // fib(3) invokes fib 4 more times, 2 of the 5 invocations recursing, at most 3 frames deep
+        Profiler profiler = profile(mainPrinting("@fib", 3), fib());
+        String report = report(profiler);
+
+        assertEquals(5 + 2 * 13 + 3 * 5, profiler.executedInstructions());
+        assertEquals(4, profiler.maxFrameDepth());
+        assertTrue(report.matches("(?s).*\\nfib +5 +41 +41 .*"), report);
+        assertTrue(report.matches("(?s).*\\nmain +1 +5 +46 .*"), report);
+        assertTrue(report.matches("(?s).*\\nfib\\.L7 +2 .*"), report);
+        assertTrue(report.matches("(?s).*\\nfib:8 -> fib +2 .*"), report);
+        assertTrue(report.matches("(?s).*\\nmain:1 -> fib +1 .*"), report);
+    }
+
+    @Test
+    void opcodesAreSortedByExecutions() {
+        String json = json(profile(mainPrinting("@fib", 3), fib()));
+
+        assertTrue(json.startsWith("{\"instructions\":46,\"maxFrameDepth\":4,\"methods\":[{\"name\":\"fib\",\"calls\":5,"),
+                json);
+        assertTrue(json.contains("\"opcodes\":[{\"name\":\"push\",\"count\":14},{\"name\":\"load\",\"count\":9},"),
+                json);
+    }
+
+    @Test
+    void tailCallsReplaceTheFrameOfTheInvoker() {
+        Profiler profiler = profile(mainPrinting("@tailCountdown", 1000), tailCountdown());
+
+        assertEquals(2, profiler.maxFrameDepth());
+        assertTrue(report(profiler).matches("(?s).*\\ntailCountdown +1001 +7005 .*"), report(profiler));
+    }
+
+    @Test
+    void slicesAreProfiledLikeAWholeExecution() {
+        Profiler profiler = new Profiler();
+        Machine machine = new Machine();
+        machine.setOutput(new CollectingOutputSink());
+        machine.setListener(profiler);
+        machine.setProgram(List.of(mainPrinting("@fib", 3), fib()));
+        int slices = 1;
+        while (!machine.execute(7))
+            slices++;
+
+        assertEquals(7, slices);
+        assertEquals(46, profiler.executedInstructions());
+        assertTrue(report(profiler).matches("(?s).*\\nfib +5 +41 +41 .*"), report(profiler));
+    }
+
+    private static String report(Profiler profiler) {
+        StringBuilder report = new StringBuilder();
+        profiler.writeText(report);
+        return report.toString();
+    }
+
+    private static String json(Profiler profiler) {
+        StringBuilder json = new StringBuilder();
+        profiler.writeJson(json);
+        return json.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package sml;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sml.instruction.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SMLInstructionFactoryTest {
+    private SMLInstructionFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        factory = new SMLInstructionFactory(List.of(
+                AdditionInstruction.class, CompareGreaterThanInstruction.class, InvokeInstruction.class,
+                LoadInstruction.class, PushInstruction.class, ReturnInstruction.class));
+    }
+
+    private Instruction create(Label label, String... words) throws BadProgramError {
+        return factory.createInstruction(label, new ArrayList<>(List.of(words)));
+    }
+
+    @Test
+    void createsInstructionsWithConvertedParameters() throws BadProgramError {
+        assertEquals(new PushInstruction(new Label("L1"), -12), create(new Label("L1"), "push", "-12"));
+        assertEquals(new LoadInstruction(null, "x"), create(null, "load", "x"));
+        assertEquals(new CompareGreaterThanInstruction(null, new Label("L7")), create(null, "if_cmpgt", "L7"));
+        assertEquals(new InvokeInstruction(null, new Method.Identifier("@fib")), create(null, "invoke", "@fib"));
+        assertEquals(new AdditionInstruction(null), create(null, "add"));
+    }
+
+    @Test
+    void unknownOrEmptyOpcodeCreatesNothing() throws BadProgramError {
+        assertNull(create(null, "mod"));
+        assertNull(create(null, ""));
+    }
+
+    @Test
+    void wrongNumberOfParameters() {
+        BadProgramError ex = assertThrows(BadProgramError.class, () -> create(null, "push"));
+        assertTrue(ex.getMessage().startsWith("There is no constructor that matches the number of arguments"));
+        assertThrows(BadProgramError.class, () -> create(null, "return", "1"));
+    }
+
+    @Test
+    void parameterOfWrongType() {
+        BadProgramError ex = assertThrows(BadProgramError.class, () -> create(null, "push", "ten"));
+        assertTrue(ex.getMessage().startsWith("Unable to build the Instruction sml.instruction.PushInstruction."));
+        assertThrows(BadProgramError.class, () -> create(null, "invoke", "fib"));
+    }
+}
@@ -0,0 +1,87 @@
+package sml;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sml.instruction.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SMLTranslatorTest {
+    private static final InstructionFactory FACTORY = new SMLInstructionFactory(List.of(
+            AdditionInstruction.class, LoadInstruction.class, PrintInstruction.class,
+            PushInstruction.class, ReturnInstruction.class));
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("program", ".sml");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private Collection<Method> translate(boolean parallel, String text) throws IOException, BadProgramError {
+        Files.writeString(file, text);
+        SMLTranslator translator = new SMLTranslator(FACTORY);
+        translator.setParallel(parallel);
+        return translator.readAndTranslate(file.toString());
+    }
+
+    /**
+     * A program with enough methods to be split into several parallel tasks.
+     */
+    private static String program(int methodCount, int faultyMethod) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < methodCount; i++) {
+            text.append("@m").append(i).append(": a, b\n")
+                    .append("   load a\n")
+                    .append(i == faultyMethod ? "   push x\n" : "   push " + i + "\n")
+                    .append("L1: add\n")
+                    .append("   return\n");
+        }
+        return text.toString();
+    }
+
+    @Test
+    void parallelTranslationKeepsSourceOrder() throws IOException, BadProgramError {
+        String text = program(500, -1);
+
+        List<Method> sequential = new ArrayList<>(translate(false, text));
+        List<Method> parallel = new ArrayList<>(translate(true, text));
+
+        assertEquals(500, parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).name(), parallel.get(i).name());
+            assertEquals(sequential.get(i).arguments(), parallel.get(i).arguments());
+            assertEquals(sequential.get(i).instructions(), parallel.get(i).instructions());
+        }
+    }
+
+    @Test
+    void parallelTranslationReportsTheFirstError() {
+        String text = program(500, 130) + "@bad: n\n   push y\n   return\n";
+
+        BadProgramError ex = assertThrows(BadProgramError.class, () -> translate(true, text));
+        BadProgramError expected = assertThrows(BadProgramError.class, () -> translate(false, text));
+        assertEquals(expected.getMessage(), ex.getMessage());
+    }
+
+    @Test
+    void instructionsOutsideMethodsAreRejectedInBothModes() {
+        String text = "   push 1\n" + program(3, -1);
+
+        assertThrows(IllegalArgumentException.class, () -> translate(false, text));
+        assertThrows(IllegalArgumentException.class, () -> translate(true, text));
+    }
+}
@@ -0,0 +1,72 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.instruction.*;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.*;
+
+public class SamplerTest {
+    @Test
+    void stacksAreFoldedOutermostFirst() {
+        Method m = main(new PushInstruction(null, 1), new InvokeInstruction(null, new Method.Identifier("@countdown")));
+        Frame mainFrame = new Frame(m, null).advance();
+        Frame inner = new Frame(countdown(), mainFrame).advance().advance();
+        Sampler sampler = new Sampler();
+
+        sampler.sample(inner);
+        sampler.sample(inner);
+        sampler.sample(mainFrame);
+
+        StringBuilder out = new StringBuilder();
+        sampler.writeFolded(out);
+        assertEquals("main:1;countdown:2 2\nmain:1 1\n", out.toString());
+        assertEquals(3, sampler.samples());
+    }
+
+    @Test
+    void deepStacksKeepTheirInnermostFrames() {
+        Method m = main(new ReturnInstruction(null));
+        Frame frame = new Frame(m, null);
+        for (int idx = 1; idx < Sampler.MAX_FRAMES + 10; idx++)
+            frame = new Frame(countdown(), frame);
+        Sampler sampler = new Sampler();
+
+        sampler.sample(frame);
+
+        String stack = sampler.stacks().keySet().iterator().next();
+        assertTrue(stack.startsWith(Sampler.TRUNCATED + ";countdown:0;"), stack);
+        assertEquals(Sampler.MAX_FRAMES + 1, stack.split(";").length);
+    }
+
+    @Test
+    void runningProgramIsSampled() {
+        Method m = main(new PushInstruction(null, 3_000_000),
+                new InvokeInstruction(null, new Method.Identifier("@countdown")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+        Sampler sampler = new Sampler(Duration.ofMillis(1));
+        CollectingOutputSink output = new CollectingOutputSink();
+        Machine machine = new Machine();
+        machine.setSampler(sampler);
+        machine.setOutput(output);
+        machine.setProgram(List.of(m, countdown()));
+
+        machine.execute();
+
+        assertEquals(List.of(0), output.values());
+        assertTrue(sampler.samples() > 0);
+        assertEquals(sampler.samples(), sampler.stacks().values().stream().mapToLong(Long::longValue).sum());
+        for (String stack : sampler.stacks().keySet())
+            assertTrue(stack.matches("main:\\d+(;countdown:\\d+)?"), stack);
+    }
+
+    @Test
+    void intervalMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new Sampler(Duration.ZERO));
+    }
+}
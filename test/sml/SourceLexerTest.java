@@ -0,0 +1,86 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceLexerTest {
+
+    private static SourceLexer lexer(String text) {
+        return new SourceLexer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<List<String>> lines(SourceLexer lexer) {
+        List<List<String>> lines = new ArrayList<>();
+        while (lexer.nextLine()) {
+            List<String> words = new ArrayList<>();
+            for (int i = 0; i < lexer.wordCount(); i++)
+                words.add(lexer.word(i));
+            lines.add(words);
+        }
+        return lines;
+    }
+
+    @Test
+    void splitsLinesAndWords() {
+        SourceLexer lexer = lexer("@main:\r\n  push   1\n\nL1:\tload n \rreturn");
+
+        assertEquals(List.of(
+                List.of("@main:"),
+                List.of("push", "1"),
+                List.of(),
+                List.of("L1:", "load", "n"),
+                List.of("return")), lines(lexer));
+    }
+
+    @Test
+    void repeatedWordsAreTheSameString() {
+        SourceLexer lexer = lexer("load n\nload n\n");
+
+        lexer.nextLine();
+        String load = lexer.word(0);
+        lexer.nextLine();
+        assertSame(load, lexer.word(0));
+    }
+
+    @Test
+    void labelsAndSeparatorsAreStripped() {
+        SourceLexer lexer = lexer("@fib: a, b");
+
+        lexer.nextLine();
+        assertTrue(lexer.wordEndsWith(0, ':'));
+        assertEquals("@fib", lexer.wordWithoutLastCharacter(0));
+        assertTrue(lexer.wordEndsWith(1, ','));
+        assertEquals("a", lexer.wordWithoutLastCharacter(1));
+        assertFalse(lexer.wordEndsWith(2, ','));
+    }
+
+    @Test
+    void nonAsciiLinesAreDecoded() {
+        SourceLexer lexer = lexer("load größe\u2028print\nstore x\u2000y");
+
+        assertEquals(List.of(
+                List.of("load", "größe"),
+                List.of("print"),
+                List.of("store", "x", "y")), lines(lexer));
+    }
+
+    @Test
+    void splitsAtMethodHeaders() {
+        SourceLexer lexer = lexer("@a:\nreturn\n @b: x\nreturn\n@c:\nreturn\nL1: push 1\n");
+
+        List<SourceLexer> parts = lexer.split(2);
+
+        assertEquals(2, parts.size());
+        assertEquals(List.of(List.of("@a:"), List.of("return"), List.of("@b:", "x"), List.of("return")),
+                lines(parts.get(0)));
+        assertEquals(List.of(List.of("@c:"), List.of("return"), List.of("L1:", "push", "1")),
+                lines(parts.get(1)));
+        assertFalse(lexer.nextLine());
+    }
+}
@@ -0,0 +1,29 @@
+package sml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Captures the standard output, where the machine reports the faults of a program.
+ * Tests checking printed values use a {@link CollectingOutputSink} instead.
+ */
+public final class StandardOutput {
+
+    private StandardOutput() {
+    }
+
+    /**
+     * Runs the action with the standard output redirected, and returns what it wrote.
+     */
+    public static String capture(Runnable action) {
+        PrintStream original = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            action.run();
+        } finally {
+            System.setOut(original);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,165 @@
+package sml;
+
+import sml.instruction.*;
+
+import java.util.List;
+
+/**
+ * The methods shared by the tests of the machine and its engines.
+ */
+public final class TestPrograms {
+
+    private TestPrograms() {
+    }
+
+    public static Method main(Instruction... instructions) {
+        return new Method(new Method.Identifier("@main"), List.of(), List.of(instructions));
+    }
+
+    /**
+     * A method "main" printing the value returned by the given method for the given arguments, then returning 0.
+     */
+    public static Method mainPrinting(String invoked, int... arguments) {
+        Instruction[] instructions = new Instruction[arguments.length + 4];
+        // the first argument is pushed last
+        for (int idx = 0; idx < arguments.length; idx++)
+            instructions[idx] = new PushInstruction(null, arguments[arguments.length - 1 - idx]);
+        instructions[arguments.length] = new InvokeInstruction(null, new Method.Identifier(invoked));
+        instructions[arguments.length + 1] = new PrintInstruction(null);
+        instructions[arguments.length + 2] = new PushInstruction(null, 0);
+        instructions[arguments.length + 3] = new ReturnInstruction(null);
+        return main(instructions);
+    }
+
+    /**
+     * @fib(n): the n-th Fibonacci number, with fib(0) = fib(1) = 1.
+     */
+    public static Method fib() {
+        return new Method(new Method.Identifier("@fib"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new CompareGreaterThanInstruction(null, new Label("L7")),
+                        new PushInstruction(null, 1),
+                        new ReturnInstruction(null),
+                        new LoadInstruction(new Label("L7"), "n"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier("@fib")),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 2),
+                        new SubtractionInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier("@fib")),
+                        new AdditionInstruction(null),
+                        new ReturnInstruction(null)));
+    }
+
+    /**
+     * @depth(n): returns n by recursing n times, without tail calls.
+     */
+    public static Method depth() {
+        return new Method(new Method.Identifier("@depth"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier("@depth")),
+                        new PushInstruction(null, 1),
+                        new AdditionInstruction(null),
+                        new ReturnInstruction(null),
+                        new PushInstruction(new Label("L1"), 0),
+                        new ReturnInstruction(null)));
+    }
+
+    /**
+     * @sum(n, acc): adds n, n - 1, ..., 1 to acc with a tail-recursive invocation.
+     */
+    public static Method sum() {
+        return new Method(new Method.Identifier("@sum"),
+                List.of(new Variable.Identifier("n"), new Variable.Identifier("acc")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new LoadInstruction(null, "acc"),
+                        new LoadInstruction(null, "n"),
+                        new AdditionInstruction(null),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier("@sum")),
+                        new ReturnInstruction(null),
+                        new LoadInstruction(new Label("L1"), "acc"),
+                        new ReturnInstruction(null)));
+    }
+
+    /**
+     * @countdown(n): counts n down to 0 in a loop and returns 0.
+     */
+    public static Method countdown() {
+        return new Method(new Method.Identifier("@countdown"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(new Label("L1"), "n"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L2")),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new StoreInstruction(null, "n"),
+                        new GotoInstruction(null, new Label("L1")),
+                        new PushInstruction(new Label("L2"), 0),
+                        new ReturnInstruction(null)));
+    }
+
+    /**
+     * @tailCountdown(n): returns 0 by invoking itself in tail position n times.
+     */
+    public static Method tailCountdown() {
+        return new Method(new Method.Identifier("@tailCountdown"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new InvokeInstruction(null, new Method.Identifier("@tailCountdown")),
+                        new ReturnInstruction(null),
+                        new PushInstruction(new Label("L1"), 0),
+                        new ReturnInstruction(null)));
+    }
+
+    /**
+     * @fib2(n): the n-th Fibonacci number computed in a loop, as in resources/test2.sml.
+     */
+    public static Method fib2() {
+        return new Method(new Method.Identifier("@fib2"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new PushInstruction(null, 1),
+                        new StoreInstruction(null, "fm2"),
+                        new PushInstruction(null, 1),
+                        new StoreInstruction(null, "fm1"),
+                        new PushInstruction(null, 2),
+                        new StoreInstruction(null, "i"),
+                        new LoadInstruction(new Label("L6"), "i"),
+                        new LoadInstruction(null, "n"),
+                        new CompareGreaterThanInstruction(null, new Label("L27")),
+                        new LoadInstruction(null, "fm2"),
+                        new LoadInstruction(null, "fm1"),
+                        new AdditionInstruction(null),
+                        new StoreInstruction(null, "f"),
+                        new LoadInstruction(null, "fm1"),
+                        new StoreInstruction(null, "fm2"),
+                        new LoadInstruction(null, "f"),
+                        new StoreInstruction(null, "fm1"),
+                        new PushInstruction(null, 1),
+                        new LoadInstruction(null, "i"),
+                        new AdditionInstruction(null),
+                        new StoreInstruction(null, "i"),
+                        new GotoInstruction(null, new Label("L6")),
+                        new LoadInstruction(new Label("L27"), "fm1"),
+                        new ReturnInstruction(null)));
+    }
+}
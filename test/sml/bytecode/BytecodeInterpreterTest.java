@@ -0,0 +1,130 @@
+package sml.bytecode;
+
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.*;
+
+public class BytecodeInterpreterTest {
+    @Test
+    void linkResolvesOperands() {
+        Method m = main(new PushInstruction(null, 7),
+                new StoreInstruction(null, "x"),
+                new GotoInstruction(null, new Label("L1")),
+                new PrintInstruction(null),
+                new LoadInstruction(new Label("L1"), "x"),
+                new ReturnInstruction(null));
+
+        LinkedMethod linked = Linker.link(List.of(m)).method(0);
+
+        assertArrayEquals(new int[] {
+                Opcode.PUSH, 7,
+                Opcode.STORE, 0,
+                Opcode.GOTO, 7,
+                Opcode.PRINT,
+                Opcode.LOAD, 0,
+                Opcode.RETURN}, linked.code());
+    }
+
+    @Test
+    void recursiveProgram() throws BadProgramError {
+        Method m = main(new PushInstruction(null, 10),
+                new InvokeInstruction(null, new Method.Identifier("@fib")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 1),
+                new ReturnInstruction(null));
+
+        CollectingOutputSink output = new CollectingOutputSink();
+        new BytecodeInterpreter(Linker.link(List.of(m, fib())), output).execute();
+
+        assertEquals(List.of(89), output.values());
+    }
+
+    @Test
+    void tailCallsAreLinkedAndExecutedInPlace() throws BadProgramError {
+        Method m = main(new PushInstruction(null, 0),
+                new PushInstruction(null, 50000),
+                new InvokeInstruction(null, new Method.Identifier("@sum")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+        LinkedProgram program = Linker.link(List.of(m, sum()));
+
+        assertEquals(Opcode.INVOKE, program.method(0).code()[4]);
+        assertEquals(Opcode.TAIL_INVOKE, program.method(1).code()[16]);
+
+        CollectingOutputSink output = new CollectingOutputSink();
+        new BytecodeInterpreter(program, output).execute();
+
+        assertEquals(List.of(1250025000), output.values());
+    }
+
+    @Test
+    void argumentsArePoppedInDeclarationOrder() throws BadProgramError {
+        Method sub = new Method(new Method.Identifier("@sub"),
+                List.of(new Variable.Identifier("a"), new Variable.Identifier("b")),
+                List.of(new LoadInstruction(null, "a"),
+                        new LoadInstruction(null, "b"),
+                        new SubtractionInstruction(null),
+                        new ReturnInstruction(null)));
+        Method m = main(new PushInstruction(null, 3),
+                new PushInstruction(null, 10),
+                new InvokeInstruction(null, new Method.Identifier("@sub")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+
+        CollectingOutputSink output = new CollectingOutputSink();
+        new BytecodeInterpreter(Linker.link(List.of(m, sub)), output).execute();
+
+        assertEquals(List.of(7), output.values());
+    }
+
+    @Test
+    void missingLabelIsReportedWhenLinking() {
+        Method m = main(new GotoInstruction(null, new Label("L2")), new ReturnInstruction(null));
+
+        LabelNotFoundException ex = assertThrows(LabelNotFoundException.class, () -> Linker.link(List.of(m)));
+        assertEquals("Label L2 not found in main", ex.getMessage());
+    }
+
+    @Test
+    void missingMethodIsReportedWhenLinking() {
+        Method m = main(new InvokeInstruction(null, new Method.Identifier("@nowhere")), new ReturnInstruction(null));
+
+        MethodNotFoundException ex = assertThrows(MethodNotFoundException.class, () -> Linker.link(List.of(m)));
+        assertEquals("Method not found: nowhere", ex.getMessage());
+    }
+
+    @Test
+    void loadingVariableWithoutValue() {
+        Method m = main(new LoadInstruction(null, "Pete"), new ReturnInstruction(null));
+        BytecodeInterpreter interpreter = new BytecodeInterpreter(Linker.link(List.of(m)), new CollectingOutputSink());
+
+        BadProgramError ex = assertThrows(BadProgramError.class, interpreter::execute);
+        assertEquals("The variable Pete does not contain a value.", ex.getMessage());
+    }
+
+    @Test
+    void stackTooSmall() {
+        Method m = main(new PushInstruction(null, 3), new AdditionInstruction(null), new ReturnInstruction(null));
+        BytecodeInterpreter interpreter = new BytecodeInterpreter(Linker.link(List.of(m)), new CollectingOutputSink());
+
+        BadProgramError ex = assertThrows(BadProgramError.class, interpreter::execute);
+        assertEquals("Not enough values on the stack.", ex.getMessage());
+    }
+
+    @Test
+    void divideByZero() {
+        Method m = main(new PushInstruction(null, 3), new PushInstruction(null, 0),
+                new DivisionInstruction(null), new ReturnInstruction(null));
+        BytecodeInterpreter interpreter = new BytecodeInterpreter(Linker.link(List.of(m)), new CollectingOutputSink());
+
+        BadProgramError ex = assertThrows(BadProgramError.class, interpreter::execute);
+        assertTrue(ex.getMessage().contains("/ by zero"));
+    }
+}
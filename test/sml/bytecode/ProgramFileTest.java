@@ -0,0 +1,162 @@
+package sml.bytecode;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgramFileTest {
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("program", ProgramFile.EXTENSION);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static List<Method> program() {
+        Method main = new Method(new Method.Identifier("@main"), List.of(),
+                List.of(new PushInstruction(null, 3),
+                        new PushInstruction(null, 10),
+                        new InvokeInstruction(null, new Method.Identifier("@count")),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        Method count = new Method(new Method.Identifier("@count"),
+                List.of(new Variable.Identifier("n"), new Variable.Identifier("step")),
+                List.of(new PushInstruction(null, 0),
+                        new StoreInstruction(null, "total"),
+                        new LoadInstruction(new Label("L1"), "n"),
+                        new PushInstruction(null, 0),
+                        new CompareGreaterThanInstruction(null, new Label("L2")),
+                        new LoadInstruction(null, "total"),
+                        new ReturnInstruction(null),
+                        new LoadInstruction(new Label("L2"), "total"),
+                        new PushInstruction(null, 1),
+                        new AdditionInstruction(null),
+                        new StoreInstruction(null, "total"),
+                        new LoadInstruction(null, "n"),
+                        new LoadInstruction(null, "step"),
+                        new SubtractionInstruction(null),
+                        new StoreInstruction(null, "n"),
+                        new GotoInstruction(null, new Label("L1"))));
+        return List.of(main, count);
+    }
+
+    @Test
+    void writtenProgramIsReadBack() throws IOException {
+        List<Method> methods = program();
+
+        ProgramFile.write(methods, file);
+        List<Method> read = ProgramFile.read(file);
+
+        assertEquals(methods.size(), read.size());
+        for (int i = 0; i < methods.size(); i++) {
+            assertEquals(methods.get(i).name(), read.get(i).name());
+            assertEquals(methods.get(i).arguments(), read.get(i).arguments());
+            assertEquals(methods.get(i).instructions(), read.get(i).instructions());
+        }
+    }
+
+    @Test
+    void readProgramRuns() throws IOException {
+        ProgramFile.write(program(), file);
+        RecordingOutputSink output = new RecordingOutputSink();
+
+        Machine machine = new Machine();
+        machine.setOutput(output);
+        machine.setProgram(file);
+        machine.execute();
+
+        assertEquals(List.of(4), output.values);
+    }
+
+    @Test
+    void missingLabelIsReportedWhenWriting() {
+        Method main = new Method(new Method.Identifier("@main"), List.of(),
+                List.of(new GotoInstruction(null, new Label("L9")), new ReturnInstruction(null)));
+
+        assertThrows(LabelNotFoundException.class, () -> ProgramFile.write(List.of(main), file));
+    }
+
+    @Test
+    void corruptContentIsRejected() throws IOException {
+        ProgramFile.write(program(), file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        IOException ex = assertThrows(IOException.class, () -> ProgramFile.read(file));
+        assertTrue(ex.getMessage().endsWith("is corrupt: its content does not match its hash"));
+    }
+
+    @Test
+    void otherVersionIsRejected() throws IOException {
+        ProgramFile.write(program(), file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putShort(4, (short) (ProgramFile.VERSION + 1));
+        Files.write(file, bytes);
+
+        IOException ex = assertThrows(IOException.class, () -> ProgramFile.read(file));
+        assertTrue(ex.getMessage().contains("has version " + (ProgramFile.VERSION + 1)));
+    }
+
+    @Test
+    void countsExceedingTheFileAreRejected() throws Exception {
+        for (int poolSize : new int[] {Integer.MAX_VALUE, -1}) {
+            ProgramFile.write(program(), file);
+            writeWithPoolSize(poolSize);
+
+            IOException ex = assertThrows(IOException.class, () -> ProgramFile.read(file));
+            assertTrue(ex.getMessage().contains("is corrupt: count " + poolSize + " at offset 44"), ex.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the size of the string pool, the first value of the body, and the hash of the body to match.
+     */
+    private void writeWithPoolSize(int poolSize) throws Exception {
+        byte[] bytes = Files.readAllBytes(file);
+        int bodyOffset = 12 + 32;
+        ByteBuffer.wrap(bytes).putInt(bodyOffset, poolSize);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(Arrays.copyOfRange(bytes, bodyOffset, bytes.length));
+        System.arraycopy(hash, 0, bytes, 12, hash.length);
+        Files.write(file, bytes);
+    }
+
+    @Test
+    void sourceTextIsRejected() throws IOException {
+        Files.writeString(file, "@main:\n push 1\n print\n push 0\n return\n".repeat(4));
+
+        IOException ex = assertThrows(IOException.class, () -> ProgramFile.read(file));
+        assertTrue(ex.getMessage().endsWith("is not a compiled SML program"));
+    }
+
+    private static final class RecordingOutputSink implements OutputSink {
+        final List<Integer> values = new java.util.ArrayList<>();
+
+        @Override
+        public void print(int value) {
+            values.add(value);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
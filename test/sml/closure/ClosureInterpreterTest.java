@@ -0,0 +1,61 @@
+package sml.closure;
+
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+import sml.optimizer.Superinstructions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.main;
+
+/**
+ * The behaviour shared with the other engines is tested by {@link sml.EngineTest}.
+ */
+public class ClosureInterpreterTest {
+    /**
+     * Executes the program compiled into closures and returns the printed values.
+     */
+    private static List<Integer> execute(Method... methods) throws BadProgramError {
+        CollectingOutputSink output = new CollectingOutputSink();
+        new ClosureInterpreter(ClosureCompiler.compile(new Program(List.of(methods))), output).execute();
+        return output.values();
+    }
+
+    @Test
+    void longMethodsAreChainedInShortRuns() throws BadProgramError {
+        List<Instruction> instructions = new ArrayList<>();
+        instructions.add(new PushInstruction(null, 0));
+        for (int idx = 0; idx < 100_000; idx++) {
+            instructions.add(new PushInstruction(null, 1));
+            instructions.add(new AdditionInstruction(null));
+        }
+        instructions.add(new PrintInstruction(null));
+        instructions.add(new PushInstruction(null, 0));
+        instructions.add(new ReturnInstruction(null));
+
+        assertEquals(List.of(100000), execute(new Method(new Method.Identifier("@main"), List.of(), instructions)));
+    }
+
+    @Test
+    void superinstructionsAreCompiledAsTheInstructionsTheyReplace() throws BadProgramError {
+        Method m = main(new PushInstruction(null, 0),
+                new StoreInstruction(null, "i"),
+                new PushInstruction(new Label("L1"), 1),
+                new LoadInstruction(null, "i"),
+                new AdditionInstruction(null),
+                new StoreInstruction(null, "i"),
+                new LoadInstruction(null, "i"),
+                new PushInstruction(null, 5),
+                new CompareGreaterThanInstruction(null, new Label("L2")),
+                new GotoInstruction(null, new Label("L1")),
+                new LoadInstruction(new Label("L2"), "i"),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+
+        assertEquals(List.of(6), execute(Superinstructions.fuse(m)));
+    }
+}
@@ -55,23 +55,19 @@ public class ComparisonInstructionTest {
 
     private static Stream<Arguments> argumentsForMissingLabel() {
         return Stream.of(
-                Arguments.of(new CompareEqualInstruction(null, new Label ("L1")), 10, 10, "L1"),
-                Arguments.of(new CompareGreaterThanInstruction(null, new Label ("L1")), 10, -10, "L1")
+                Arguments.of(new CompareEqualInstruction(null, new Label ("L1")), "L1"),
+                Arguments.of(new CompareGreaterThanInstruction(null, new Label ("L1")), "L1")
         );
     }
     @ParameterizedTest
     @MethodSource("argumentsForMissingLabel")
-    void missingLabelComparisonInstructions (Instruction ins0, int value1, int value2, String label) {
+    void missingLabelComparisonInstructions (Instruction ins0, String label) {
         Instruction ins1 = new PrintInstruction(null);
         Instruction ins2 = new ReturnInstruction(null);
         Method m = new Method(new Method.Identifier("@main"),
                 List.of(), List.of(ins0, ins1, ins2));
-        machine.setProgram(List.of(m));
-
-        machine.frame().push(value1);
-        machine.frame().push(value2);
-
-        LabelNotFoundException ex = assertThrows(LabelNotFoundException.class, () ->  ins0.execute(machine));
+        // the label is checked when the program is set
+        LabelNotFoundException ex = assertThrows(LabelNotFoundException.class, () -> machine.setProgram(List.of(m)));
         assertEquals("Label " + label + " not found in main", ex.getMessage());
     }
 }
@@ -46,8 +46,7 @@ class GotoInstructionTest {
 
         Method m = new Method(new Method.Identifier("@main"),
                 List.of(), List.of(ins0, ins1));
-        machine.setProgram(List.of(m));
-        LabelNotFoundException ex = assertThrows(LabelNotFoundException.class, () ->  ins0.execute(machine));
+        LabelNotFoundException ex = assertThrows(LabelNotFoundException.class, () -> machine.setProgram(List.of(m)));
         assertEquals("Label L2 not found in main", ex.getMessage());
     }
 }
\ No newline at end of file
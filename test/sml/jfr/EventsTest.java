@@ -0,0 +1,102 @@
+package sml.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.main;
+
+public class EventsTest {
+    private static Method twice() {
+        return new Method(new Method.Identifier("@twice"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 2),
+                        new MultiplicationInstruction(null),
+                        new ReturnInstruction(null)));
+    }
+
+    /**
+     * Executes the program while recording the given events, and returns the recorded events.
+     */
+    private static List<RecordedEvent> record(List<Method> methods, OutputSink output, String... eventNames)
+            throws IOException {
+        Path file = Files.createTempFile("sml", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : eventNames)
+                recording.enable(name);
+            recording.start();
+            Machine machine = new Machine();
+            machine.setOutput(output);
+            machine.setProgram(methods);
+            machine.execute();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void invocationsAndReturnsAreRecorded() throws IOException {
+        List<Method> methods = List.of(main(new PushInstruction(null, 21),
+                new InvokeInstruction(null, new Method.Identifier("@twice")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null)), twice());
+
+        CollectingOutputSink output = new CollectingOutputSink();
+        List<RecordedEvent> events = record(methods, output, "sml.Invoke", "sml.Return");
+
+        assertEquals(List.of(42), output.values());
+        List<String> invoked = events.stream().filter(e -> e.getEventType().getName().equals("sml.Invoke"))
+                .map(e -> e.getString("method") + ":" + e.getInt("depth")).toList();
+        assertEquals(List.of("main:1", "twice:2"), invoked);
+        List<String> returned = events.stream().filter(e -> e.getEventType().getName().equals("sml.Return"))
+                .map(e -> e.getString("method") + ":" + e.getInt("depth") + "=" + e.getInt("value")).toList();
+        assertEquals(List.of("twice:2=42", "main:1=0"), returned);
+    }
+
+    @Test
+    void faultIsRecordedWithItsInstruction() throws IOException {
+        List<Method> methods = List.of(main(new PushInstruction(null, 3),
+                new PushInstruction(null, 0),
+                new DivisionInstruction(null),
+                new ReturnInstruction(null)));
+
+        List<RecordedEvent> events = record(methods, new CollectingOutputSink(), "sml.Fault");
+
+        RecordedEvent fault = events.stream().filter(e -> e.getEventType().getName().equals("sml.Fault"))
+                .findFirst().orElseThrow();
+        assertEquals("main", fault.getString("method"));
+        assertEquals(2, fault.getInt("instruction"));
+        assertEquals("java.lang.ArithmeticException: / by zero", fault.getString("message"));
+    }
+
+    @Test
+    void throughputIsSampledWhenEnabled() throws IOException {
+        List<Method> methods = List.of(main(new PushInstruction(null, 21),
+                new InvokeInstruction(null, new Method.Identifier("@twice")),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null)), twice());
+
+        CollectingOutputSink output = new CollectingOutputSink();
+        List<RecordedEvent> events = record(methods, output, "sml.Throughput");
+
+        assertEquals(List.of(42), output.values());
+        long instructions = events.stream().filter(e -> e.getEventType().getName().equals("sml.Throughput"))
+                .mapToLong(e -> e.getLong("instructions")).sum();
+        assertEquals(9, instructions);
+    }
+}
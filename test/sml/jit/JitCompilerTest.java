@@ -0,0 +1,221 @@
+package sml.jit;
+
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.fib;
+import static sml.TestPrograms.depth;
+import static sml.TestPrograms.mainPrinting;
+
+public class JitCompilerTest {
+
+    /**
+     * @loopSum(n): returns n + (n - 1) + ... + 1 in a loop whose header is instruction 2.
+     */
+    private static Method loopSum() {
+        return new Method(new Method.Identifier("@loopSum"),
+                List.of(new Variable.Identifier("n")),
+                List.of(new PushInstruction(null, 0),
+                        new StoreInstruction(null, "s"),
+                        new LoadInstruction(new Label("L1"), "n"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L2")),
+                        new LoadInstruction(null, "s"),
+                        new LoadInstruction(null, "n"),
+                        new AdditionInstruction(null),
+                        new StoreInstruction(null, "s"),
+                        new LoadInstruction(null, "n"),
+                        new PushInstruction(null, 1),
+                        new SubtractionInstruction(null),
+                        new StoreInstruction(null, "n"),
+                        new GotoInstruction(null, new Label("L1")),
+                        new LoadInstruction(new Label("L2"), "s"),
+                        new ReturnInstruction(null)));
+    }
+
+    private static Method binary(String name, Instruction calculation) {
+        return new Method(new Method.Identifier(name),
+                List.of(new Variable.Identifier("a"), new Variable.Identifier("b")),
+                List.of(new LoadInstruction(null, "a"),
+                        new LoadInstruction(null, "b"),
+                        calculation,
+                        new ReturnInstruction(null)));
+    }
+
+    private static Optional<CompiledMethod> compile(Program program, String name) {
+        return JitCompiler.compile(program, program.methodIndex(new Method.Identifier(name)));
+    }
+
+    /**
+     * Runs the program on the JIT engine, returning the printed values followed by the error message, if any.
+     */
+    private static List<String> runJit(Machine machine, List<Method> methods, int threshold) {
+        List<String> errors = new ArrayList<>();
+        CollectingOutputSink output = new CollectingOutputSink();
+        machine.setEngine(Machine.Engine.JIT);
+        machine.setJitThreshold(threshold);
+        machine.setOutput(output);
+        machine.setListener(new ExecutionListener() {
+            @Override
+            public void onFault(Frame frame, BadProgramError error) {
+                errors.add(error.getMessage());
+            }
+        });
+        machine.setProgram(methods);
+        machine.execute();
+        // a fault ends the program, so its message follows every printed value
+        List<String> events = new ArrayList<>();
+        output.values().forEach(value -> events.add(String.valueOf(value)));
+        events.addAll(errors);
+        return events;
+    }
+
+    @Test
+    void compiledMethodReturnsTheValueOfTheInterpreter() {
+        Program program = new Program(List.of(mainPrinting("@fib", 20), fib()));
+
+        CompiledMethod compiled = compile(program, "@fib").orElseThrow();
+
+        assertEquals(10946, compiled.invoke(new int[] {20}));
+        assertEquals(1, compiled.invoke(new int[] {-5}));
+    }
+
+    @Test
+    void argumentsArePassedInDeclarationOrder() {
+        // @caller(x) invokes @diff with 1 on top of the stack, its first argument: 1 - x
+        Method caller = new Method(new Method.Identifier("@caller"),
+                List.of(new Variable.Identifier("x")),
+                List.of(new LoadInstruction(null, "x"),
+                        new PushInstruction(null, 1),
+                        new InvokeInstruction(null, new Method.Identifier("@diff")),
+                        new ReturnInstruction(null)));
+        Program program = new Program(List.of(mainPrinting("@caller", 5), caller,
+                binary("@diff", new SubtractionInstruction(null))));
+
+        assertEquals(7, compile(program, "@diff").orElseThrow().invoke(new int[] {10, 3}));
+        assertEquals(-4, compile(program, "@caller").orElseThrow().invoke(new int[] {5}));
+    }
+
+    @Test
+    void largeConstantsAndManyVariablesAreCompiled() {
+        List<Instruction> instructions = new ArrayList<>();
+        for (int idx = 0; idx < 300; idx++) {
+            instructions.add(new PushInstruction(null, 100_000 + idx));
+            instructions.add(new StoreInstruction(null, "v" + idx));
+        }
+        instructions.add(new LoadInstruction(null, "v299"));
+        instructions.add(new LoadInstruction(null, "v0"));
+        instructions.add(new SubtractionInstruction(null));
+        instructions.add(new ReturnInstruction(null));
+        Method many = new Method(new Method.Identifier("@many"), List.of(), instructions);
+        Program program = new Program(List.of(mainPrinting("@many"), many));
+
+        assertEquals(299, compile(program, "@many").orElseThrow().invoke(new int[0]));
+    }
+
+    @Test
+    void methodsThatMayNotBehaveLikeTheInterpreterAreNotCompiled() {
+        Method prints = new Method(new Method.Identifier("@prints"),
+                List.of(new Variable.Identifier("x")),
+                List.of(new LoadInstruction(null, "x"),
+                        new PrintInstruction(null),
+                        new LoadInstruction(null, "x"),
+                        new ReturnInstruction(null)));
+        Method invokesPrints = new Method(new Method.Identifier("@invokesPrints"),
+                List.of(),
+                List.of(new PushInstruction(null, 1),
+                        new InvokeInstruction(null, new Method.Identifier("@prints")),
+                        new ReturnInstruction(null)));
+        Method unassigned = new Method(new Method.Identifier("@unassigned"),
+                List.of(new Variable.Identifier("x")),
+                List.of(new LoadInstruction(null, "x"),
+                        new PushInstruction(null, 0),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new PushInstruction(null, 1),
+                        new StoreInstruction(null, "y"),
+                        new LoadInstruction(new Label("L1"), "y"),
+                        new ReturnInstruction(null)));
+        Method underflow = new Method(new Method.Identifier("@underflow"),
+                List.of(),
+                List.of(new PushInstruction(null, 1),
+                        new AdditionInstruction(null),
+                        new ReturnInstruction(null)));
+        Method fallsOff = new Method(new Method.Identifier("@fallsOff"),
+                List.of(),
+                List.of(new PushInstruction(null, 1)));
+        Program program = new Program(List.of(mainPrinting("@prints", 1), prints, invokesPrints, unassigned,
+                underflow, fallsOff));
+
+        assertTrue(compile(program, "@prints").isEmpty());
+        assertTrue(compile(program, "@invokesPrints").isEmpty());
+        assertTrue(compile(program, "@unassigned").isEmpty());
+        assertTrue(compile(program, "@underflow").isEmpty());
+        assertTrue(compile(program, "@fallsOff").isEmpty());
+    }
+
+    @Test
+    void jitEngineCompilesHotMethods() {
+        Machine machine = new Machine();
+        List<Method> methods = List.of(mainPrinting("@fib", 15), fib());
+
+        assertEquals(List.of("987"), runJit(machine, methods, 10));
+        assertTrue(machine.jit().orElseThrow().isCompiled(1));
+        assertFalse(machine.jit().orElseThrow().isCompiled(0));
+    }
+
+    @Test
+    void errorsOfCompiledMethodsAreReportedLikeTheInterpreter() {
+        List<Method> overflow = List.of(mainPrinting("@mul", Integer.MAX_VALUE, 2),
+                binary("@mul", new MultiplicationInstruction(null)));
+        List<Method> divisionByZero = List.of(mainPrinting("@div", 7, 0),
+                binary("@div", new DivisionInstruction(null)));
+
+        assertEquals(List.of("java.lang.ArithmeticException: integer overflow"), runJit(new Machine(), overflow, 1));
+        assertEquals(List.of("java.lang.ArithmeticException: / by zero"), runJit(new Machine(), divisionByZero, 1));
+    }
+
+    @Test
+    void compiledLoopContinuesFromTheValuesOfTheVariables() {
+        Program program = new Program(List.of(mainPrinting("@loopSum", 10), loopSum()));
+
+        // n = 4 and s = 10 after the first iterations of @loopSum(10)
+        CompiledMethod loop = JitCompiler.compileLoop(program, 1, 2).orElseThrow();
+
+        assertEquals(20, loop.invoke(new int[] {4, 10}));
+        // the operand stack is not empty in the middle of the loop
+        assertTrue(JitCompiler.compileLoop(program, 1, 6).isEmpty());
+    }
+
+    @Test
+    void longRunningLoopIsCompiledOnTheStack() {
+        Machine machine = new Machine();
+        machine.setBackEdgeThreshold(100);
+        List<Method> methods = List.of(mainPrinting("@loopSum", 50_000), loopSum());
+
+        // @loopSum is invoked once: only its loop becomes hot
+        assertEquals(List.of("1250025000"), runJit(machine, methods, JitCompiler.DEFAULT_THRESHOLD));
+        assertFalse(machine.jit().orElseThrow().isCompiled(1));
+        assertTrue(machine.jit().orElseThrow().isLoopCompiled(1, 2));
+    }
+
+    @Test
+    void deepRecursionFallsBackToTheInterpreter() throws InterruptedException {
+        Machine machine = new Machine();
+        List<String> printed = new ArrayList<>();
+        // a small JVM stack overflows in the compiled code, the interpreter keeps its frames on the heap
+        Thread thread = new Thread(null,
+                () -> printed.addAll(runJit(machine, List.of(mainPrinting("@depth", 100_000), depth()), 1)),
+                "jit", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertEquals(List.of("100000"), printed);
+        assertFalse(machine.jit().orElseThrow().isCompiled(1));
+    }
+}
@@ -0,0 +1,135 @@
+package sml.optimizer;
+
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.main;
+
+public class OptimizerTest {
+
+    private static List<String> optimized(int level, Method method) {
+        return new Optimizer(level).optimize(List.of(method)).getFirst().instructions().stream()
+                .map(Instruction::toString)
+                .map(String::strip)
+                .toList();
+    }
+
+    @Test
+    void constantsAreFolded() {
+        Method m = main(new PushInstruction(null, 2),
+                new PushInstruction(null, 3),
+                new AdditionInstruction(null),
+                new PushInstruction(null, 4),
+                new MultiplicationInstruction(null),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+
+        assertEquals(List.of("push 20", "print", "push 0", "return"), optimized(1, m));
+    }
+
+    @Test
+    void failingCalculationsAreNotFolded() {
+        Method m = main(new PushInstruction(null, 7),
+                new PushInstruction(null, 0),
+                new DivisionInstruction(null),
+                new PushInstruction(null, Integer.MAX_VALUE),
+                new PushInstruction(null, 1),
+                new AdditionInstruction(null),
+                new ReturnInstruction(null));
+
+        assertEquals(List.of("push 7", "push 0", "div", "push 2147483647", "push 1", "add", "return"),
+                optimized(1, m));
+    }
+
+    @Test
+    void comparisonsOfConstantsBecomeGotos() {
+        Method m = main(new PushInstruction(null, 1),
+                new PushInstruction(null, 1),
+                new CompareEqualInstruction(null, new Label("L1")),
+                new PushInstruction(null, 1),
+                new PushInstruction(null, 2),
+                new CompareGreaterThanInstruction(null, new Label("L1")),
+                new PushInstruction(new Label("L1"), 0),
+                new ReturnInstruction(null));
+
+        assertEquals(List.of("goto L1", "L1: push 0", "return"), optimized(1, m));
+        // the goto to the next instruction is removed
+        assertEquals(List.of("L1: push 0", "return"), optimized(2, m));
+    }
+
+    @Test
+    void identitiesAreRemovedOnlyWhenTheStackHoldsTheOperand() {
+        Method m = main(new PushInstruction(null, 1),
+                new MultiplicationInstruction(null),
+                new LoadInstruction(null, "x"),
+                new PushInstruction(null, 0),
+                new AdditionInstruction(null),
+                new PushInstruction(null, 1),
+                new LoadInstruction(null, "y"),
+                new MultiplicationInstruction(null),
+                new ReturnInstruction(null));
+
+        // the first multiplication fails on an empty stack, so it is kept
+        assertEquals(List.of("push 1", "mul", "load x", "load y", "return"), optimized(1, m));
+    }
+
+    @Test
+    void jumpsAreThreaded() {
+        Method m = main(new LoadInstruction(null, "x"),
+                new PushInstruction(null, 0),
+                new CompareEqualInstruction(null, new Label("L1")),
+                new GotoInstruction(null, new Label("L2")),
+                new GotoInstruction(new Label("L1"), new Label("L3")),
+                new PushInstruction(new Label("L2"), 1),
+                new PrintInstruction(null),
+                new GotoInstruction(new Label("L3"), new Label("L4")),
+                new LoadInstruction(new Label("L4"), "x"),
+                new ReturnInstruction(null));
+
+        assertEquals(List.of("load x", "push 0", "if_cmpeq L4", "L2: push 1", "print", "L4: load x", "return"),
+                optimized(2, m));
+    }
+
+    @Test
+    void gotoToReturnReturns() {
+        Method m = main(new PushInstruction(null, 1),
+                new GotoInstruction(null, new Label("L1")),
+                new PrintInstruction(null),
+                new ReturnInstruction(new Label("L1")));
+
+        assertEquals(List.of("push 1", "return"), optimized(2, m));
+    }
+
+    @Test
+    void storeFollowedByLoadIsTeed() {
+        Method m = main(new PushInstruction(null, 5),
+                new StoreInstruction(null, "x"),
+                new LoadInstruction(null, "x"),
+                new PrintInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+
+        assertEquals(List.of("push 5", "fused_tee store x; load x", "print", "push 0", "return"), optimized(1, m));
+    }
+
+    @Test
+    void unresolvedMethodsAreLeftUnchanged() {
+        Method m = main(new PushInstruction(null, 2),
+                new PushInstruction(null, 3),
+                new AdditionInstruction(null),
+                new GotoInstruction(null, new Label("L9")),
+                new ReturnInstruction(null));
+
+        assertSame(m, new Optimizer(3).optimize(List.of(m)).getFirst());
+    }
+
+    @Test
+    void levelMustExist() {
+        assertThrows(IllegalArgumentException.class, () -> new Optimizer(4));
+    }
+}
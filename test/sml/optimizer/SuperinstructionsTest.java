@@ -0,0 +1,103 @@
+package sml.optimizer;
+
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.bytecode.Linker;
+import sml.instruction.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.fib2;
+import static sml.TestPrograms.main;
+
+public class SuperinstructionsTest {
+    /**
+     * Executes the program and returns the printed values, followed by the report of its fault if it fails.
+     */
+    private static String run(List<Method> methods) {
+        CollectingOutputSink output = new CollectingOutputSink();
+        Machine machine = new Machine();
+        machine.setOutput(output);
+        machine.setProgram(methods);
+        String report = StandardOutput.capture(machine::execute);
+        return output.values() + "\n" + report;
+    }
+
+    @Test
+    void loopIsFused() {
+        Method fused = Superinstructions.fuse(fib2());
+
+        assertEquals(11, fused.instructions().size());
+        assertEquals(List.of("fused_store", "fused_store", "fused_store", "fused_compare", "fused_calculate",
+                        "fused_store", "fused_store", "fused_calculate", "goto", "load", "return"),
+                fused.instructions().stream().map(Instruction::opcode).toList());
+        assertEquals("L6: fused_compare load i; load n; if_cmpgt L27", fused.instructions().get(3).toString());
+        for (int slot = 0; slot < fib2().slotCount(); slot++)
+            assertEquals(fib2().slotVariable(slot), fused.slotVariable(slot));
+        assertEquals(fib2(), Superinstructions.expand(fused));
+    }
+
+    @Test
+    void fusedProgramPrintsTheSameValues() {
+        Method m = main(new PushInstruction(null, 30),
+                new InvokeInstruction(null, new Method.Identifier("@fib2")),
+                new PrintInstruction(null),
+                new LoadInstruction(null, "x"),
+                new PushInstruction(null, 3),
+                new SubtractionInstruction(null),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+        List<Method> methods = List.of(m, fib2());
+
+        String expected = run(methods);
+        assertTrue(expected.startsWith("[1346269]\n"));
+        // the load of the unassigned variable x fails in both programs
+        assertEquals(expected, run(Superinstructions.fuse(methods)));
+    }
+
+    @Test
+    void labelInsideASequencePreventsFusion() {
+        Method m = main(new LoadInstruction(null, "x"),
+                new PushInstruction(new Label("L1"), 1),
+                new LoadInstruction(null, "y"),
+                new AdditionInstruction(null),
+                new StoreInstruction(null, "x"),
+                new GotoInstruction(null, new Label("L1")));
+
+        Method fused = Superinstructions.fuse(m);
+
+        assertEquals(List.of("load", "fused_calculate", "goto"),
+                fused.instructions().stream().map(Instruction::opcode).toList());
+        assertEquals(1, fused.branchTarget(2));
+    }
+
+    @Test
+    void errorsAreReportedAsByTheComponents() {
+        Method m = main(new PushInstruction(null, 7),
+                new PushInstruction(null, 0),
+                new DivisionInstruction(null),
+                new ReturnInstruction(null));
+
+        String expected = run(List.of(m));
+        assertTrue(expected.contains("java.lang.ArithmeticException: / by zero"));
+        assertEquals(expected, run(Superinstructions.fuse(List.of(m))));
+    }
+
+    @Test
+    void linkerExpandsSuperinstructions() {
+        Method m = main(new PushInstruction(null, 10),
+                new InvokeInstruction(null, new Method.Identifier("@fib2")),
+                new ReturnInstruction(null));
+
+        assertArrayEquals(Linker.link(List.of(m, fib2())).method(1).code(),
+                Linker.link(Superinstructions.fuse(List.of(m, fib2()))).method(1).code());
+    }
+
+    @Test
+    void fusedMethodsStayPure() {
+        Program program = new Program(Superinstructions.fuse(List.of(fib2())));
+
+        assertTrue(program.isPure(program.method(0)));
+    }
+}
@@ -0,0 +1,102 @@
+package sml.register;
+
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+import sml.optimizer.Superinstructions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.fib2;
+import static sml.TestPrograms.main;
+
+public class RegisterTranslatorTest {
+
+    private static RegisterMethod translate(Method method, Method... others) {
+        List<Method> methods = new ArrayList<>(List.of(others));
+        methods.add(method);
+        return RegisterTranslator.translate(method, new Program(methods)).orElseThrow();
+    }
+
+    @Test
+    void loadsAndPushesBecomeOperands() {
+        RegisterMethod translated = translate(fib2(), main(new PushInstruction(null, 10),
+                new InvokeInstruction(null, new Method.Identifier("@fib2")),
+                new ReturnInstruction(null)));
+
+        assertEquals("""
+                @fib2:
+                0: move fm2, #1
+                3: move fm1, #1
+                6: move i, #2
+                9: if_gt i, n, 29
+                13: add f, fm2, fm1
+                17: move fm2, fm1
+                20: move fm1, f
+                23: add i, #1, i
+                27: goto 9
+                29: return fm1""", translated.toString());
+        // the loop executes 6 instructions instead of 16
+        assertEquals(10, translated.instructionCount());
+        assertFalse(translated.tracksAssignment());
+    }
+
+    @Test
+    void variableOnTheStackIsCopiedBeforeBeingOverwritten() {
+        // push x, then overwrite x before adding the old value
+        RegisterMethod translated = translate(main(new PushInstruction(null, 5),
+                new StoreInstruction(null, "x"),
+                new LoadInstruction(null, "x"),
+                new PushInstruction(null, 1),
+                new StoreInstruction(null, "x"),
+                new LoadInstruction(null, "x"),
+                new AdditionInstruction(null),
+                new ReturnInstruction(null)));
+
+        assertEquals("""
+                @main:
+                0: move x, #5
+                3: move t0, x
+                6: move x, #1
+                9: add t0, t0, x
+                13: return t0""", translated.toString());
+    }
+
+    @Test
+    void loadsOfVariablesThatMayHaveNoValueAreChecked() {
+        Method method = new Method(new Method.Identifier("@main"), List.of(),
+                List.of(new PushInstruction(null, 0),
+                        new PushInstruction(null, 1),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new PushInstruction(null, 1),
+                        new StoreInstruction(null, "y"),
+                        new LoadInstruction(new Label("L1"), "y"),
+                        new ReturnInstruction(null)));
+
+        RegisterMethod translated = translate(method);
+
+        assertTrue(translated.tracksAssignment());
+        assertTrue(translated.toString().contains("store_tracked y, #1"));
+        assertTrue(translated.toString().contains("load_checked t0, y"));
+    }
+
+    @Test
+    void superinstructionsAreTranslatedAsTheInstructionsTheyReplace() {
+        Method main = main(new PushInstruction(null, 10),
+                new InvokeInstruction(null, new Method.Identifier("@fib2")),
+                new ReturnInstruction(null));
+
+        assertEquals(translate(fib2(), main).toString(), translate(Superinstructions.fuse(fib2()), main).toString());
+    }
+
+    @Test
+    void programWithInconsistentStackDepthsIsNotTranslated() {
+        // the loop pushes one more value on every iteration
+        Method growing = main(new PushInstruction(new Label("L1"), 1),
+                new GotoInstruction(null, new Label("L1")));
+
+        assertTrue(RegisterTranslator.translate(new Program(List.of(growing))).isEmpty());
+    }
+}
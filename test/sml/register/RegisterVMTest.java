@@ -0,0 +1,49 @@
+package sml.register;
+
+import org.junit.jupiter.api.Test;
+import sml.*;
+import sml.instruction.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.*;
+
+/**
+ * The behaviour shared with the other engines is tested by {@link sml.EngineTest}.
+ */
+public class RegisterVMTest {
+    @Test
+    void translatedProgramRunsOnTheVM() throws BadProgramError {
+        RegisterProgram program = RegisterTranslator.translate(new Program(List.of(mainPrinting("@fib", 10), fib())))
+                .orElseThrow();
+
+        CollectingOutputSink output = new CollectingOutputSink();
+        new RegisterVM(program, output).execute();
+
+        assertEquals(List.of(89), output.values());
+    }
+
+    @Test
+    void programThatCannotBeTranslatedRunsOnTheInterpreter() {
+        // the stack is one value deeper after the loop when it is entered from the branch
+        Method m = main(new PushInstruction(null, 1),
+                new PushInstruction(null, 0),
+                new PushInstruction(null, 0),
+                new CompareEqualInstruction(null, new Label("L1")),
+                new PushInstruction(null, 2),
+                new PrintInstruction(new Label("L1")),
+                new PushInstruction(null, 0),
+                new ReturnInstruction(null));
+        CollectingOutputSink output = new CollectingOutputSink();
+        Machine machine = new Machine();
+        machine.setEngine(Machine.Engine.REGISTER);
+        machine.setOutput(output);
+        machine.setProgram(List.of(m));
+
+        machine.execute();
+
+        assertTrue(machine.program().registers().isEmpty());
+        assertEquals(List.of(1), output.values());
+    }
+}
@@ -0,0 +1,137 @@
+package sml.scheduler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import sml.*;
+import sml.instruction.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.TestPrograms.countdown;
+
+public class SchedulerTest {
+    /**
+     * A program counting n down and printing n.
+     */
+    private static Program program(int n) {
+        Method main = new Method(new Method.Identifier("@main"), List.of(),
+                List.of(new PushInstruction(null, n),
+                        new InvokeInstruction(null, new Method.Identifier("@countdown")),
+                        new PushInstruction(null, n),
+                        new AdditionInstruction(null),
+                        new PrintInstruction(null),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        return new Program(List.of(main, countdown()));
+    }
+
+    private static Machine machine(Program program, OutputSink output) {
+        Machine machine = new Machine();
+        machine.setProgram(program);
+        machine.setOutput(output);
+        return machine;
+    }
+
+    @Test
+    void manyProgramsShareTheCarriers() {
+        int machines = 1000;
+        List<CollectingOutputSink> outputs = new ArrayList<>();
+        List<CompletableFuture<Machine>> results = new ArrayList<>();
+        try (Scheduler scheduler = new Scheduler(2, 50)) {
+            for (int idx = 0; idx < machines; idx++) {
+                outputs.add(new CollectingOutputSink());
+                results.add(scheduler.submit(machine(program(idx), outputs.get(idx))));
+            }
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+            assertEquals(2, scheduler.carrierCount());
+        }
+
+        for (int idx = 0; idx < machines; idx++)
+            assertEquals(List.of(idx), outputs.get(idx).values());
+    }
+
+    @Test
+    void shortProgramIsNotStarvedByLongOne() {
+        try (Scheduler scheduler = new Scheduler(1, 100)) {
+            CompletableFuture<Machine> longProgram = scheduler.submit(machine(program(10_000_000), new CollectingOutputSink()));
+            CompletableFuture<Machine> shortProgram = scheduler.submit(machine(program(10), new CollectingOutputSink()));
+
+            shortProgram.join();
+
+            assertFalse(longProgram.isDone());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Machine.Engine.class)
+    void endlessProgramIsPreemptedWithEveryEngine(Machine.Engine engine) {
+        Method main = new Method(new Method.Identifier("@main"), List.of(),
+                List.of(new PushInstruction(null, 1),
+                        new StoreInstruction(null, "x"),
+                        new LoadInstruction(new Label("L1"), "x"),
+                        new LoadInstruction(null, "x"),
+                        new CompareEqualInstruction(null, new Label("L1")),
+                        new PushInstruction(null, 0),
+                        new ReturnInstruction(null)));
+        Machine endless = new Machine();
+        endless.setEngine(engine);
+        // a compiled loop would never give the carrier back
+        endless.setBackEdgeThreshold(1);
+        endless.setProgram(List.of(main));
+
+        try (Scheduler scheduler = new Scheduler(1, 100)) {
+            CompletableFuture<Machine> endlessProgram = scheduler.submit(endless);
+            CompletableFuture<Machine> shortProgram = scheduler.submit(machine(program(10), new CollectingOutputSink()));
+
+            shortProgram.join();
+
+            assertFalse(endlessProgram.isDone());
+            endlessProgram.cancel(false);
+        }
+    }
+
+    @Test
+    void higherPriorityProgramEndsFirst() {
+        try (Scheduler scheduler = new Scheduler(1, 100)) {
+            CompletableFuture<Machine> low = scheduler.submit(machine(program(200_000), new CollectingOutputSink()), 1);
+            CompletableFuture<Machine> high = scheduler.submit(machine(program(200_000), new CollectingOutputSink()), 4);
+
+            high.join();
+
+            assertFalse(low.isDone());
+        }
+    }
+
+    @Test
+    void failingProgramEndsWithItsFault() {
+        Method main = new Method(new Method.Identifier("@main"), List.of(),
+                List.of(new PushInstruction(null, 3),
+                        new PushInstruction(null, 0),
+                        new DivisionInstruction(null),
+                        new ReturnInstruction(null)));
+        Machine machine = new Machine();
+        machine.setProgram(List.of(main));
+
+        String report = StandardOutput.capture(() -> {
+            try (Scheduler scheduler = new Scheduler(1, 100)) {
+                assertSame(machine, scheduler.submit(machine).join());
+            }
+        });
+
+        assertEquals("There is a problem with your program.\njava.lang.ArithmeticException: / by zero\n", report);
+    }
+
+    @Test
+    void closedSchedulerRejectsPrograms() {
+        Scheduler scheduler = new Scheduler(1, 100);
+        scheduler.close();
+
+        assertThrows(RejectedExecutionException.class, () -> scheduler.submit(machine(program(1), new CollectingOutputSink())));
+        assertThrows(IllegalArgumentException.class, () -> new Scheduler(0, 100));
+    }
+}